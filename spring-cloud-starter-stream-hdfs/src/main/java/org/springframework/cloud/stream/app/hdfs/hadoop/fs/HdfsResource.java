@@ -27,8 +27,10 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Decompressor;
 import org.springframework.core.io.ContextResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.WritableResource;
@@ -50,6 +52,7 @@ class HdfsResource implements ContextResource, WritableResource {
 	private boolean exists;
 	private final FileStatus status;
 	private final CompressionCodecFactory codecsFactory;
+	private int readBufferSize;
 
 	/**
 	 * Instantiates a new hdfs resource.
@@ -133,7 +136,9 @@ class HdfsResource implements ContextResource, WritableResource {
 
 	@Override
 	public Resource createRelative(String relativePath) throws IOException {
-		return new HdfsResource(location, relativePath, fs, codecsFactory);
+		HdfsResource resource = new HdfsResource(location, relativePath, fs, codecsFactory);
+		resource.setReadBufferSize(readBufferSize);
+		return resource;
 	}
 
 	@Override
@@ -196,17 +201,25 @@ class HdfsResource implements ContextResource, WritableResource {
 	@Override
 	public InputStream getInputStream() throws IOException {
 		if (exists) {
-			InputStream stream = fs.open(path);
+			InputStream stream = (readBufferSize > 0 ? fs.open(path, readBufferSize) : fs.open(path));
 
 			if (codecsFactory != null) {
 				CompressionCodec codec = codecsFactory.getCodec(path);
 				if (codec != null) {
-					// the pool is not used since the returned inputstream needs to be decorated
-					// to return the decompressor on close which can mask the actual stream
-					// it's also unclear whether the pool is actually useful or not
-					// Decompressor decompressor = CodecPool.getDecompressor(codec);
-					// stream = (decompressor != null ? codec.createInputStream(stream, decompressor) : codec.createInputStream(stream));
-					stream = codec.createInputStream(stream);
+					// decorate the stream to return a pooled decompressor on close
+					Decompressor decompressor = CodecPool.getDecompressor(codec);
+					if (decompressor != null) {
+						try {
+							stream = new PooledDecompressorInputStream(codec.createInputStream(stream, decompressor),
+									decompressor);
+						} catch (IOException ex) {
+							CodecPool.returnDecompressor(decompressor);
+							stream.close();
+							throw ex;
+						}
+					} else {
+						stream = codec.createInputStream(stream);
+					}
 				}
 			}
 
@@ -264,6 +277,16 @@ class HdfsResource implements ContextResource, WritableResource {
 		}
 	}
 
+	/**
+	 * Sets the buffer size used to open a stream. Non-positive
+	 * value uses a default of the file system.
+	 *
+	 * @param readBufferSize the read buffer size
+	 */
+	void setReadBufferSize(int readBufferSize) {
+		this.readBufferSize = readBufferSize;
+	}
+
 	/**
 	 * Returns the path.
 	 *
@@ -67,6 +67,7 @@ public class HdfsResourceLoader extends DefaultResourceLoader implements Resourc
 
 	private volatile boolean useCodecs = true;
 	private volatile CompressionCodecFactory codecsFactory;
+	private volatile int readBufferSize;
 
 	/** Flag telling if path without prefix is routed to hdfs */
 	private volatile boolean handleNoprefix = true;
@@ -140,7 +141,9 @@ public class HdfsResourceLoader extends DefaultResourceLoader implements Resourc
 	@Override
 	protected Resource getResourceByPath(String path) {
 		if (handleNoprefix) {
-			return new HdfsResource(stripLeadingTilde(path), fs, codecs());
+			HdfsResource resource = new HdfsResource(stripLeadingTilde(path), fs, codecs());
+			resource.setReadBufferSize(readBufferSize);
+			return resource;
 		} else {
 			return super.getResourceByPath(path);
 		}
@@ -241,6 +244,16 @@ public class HdfsResourceLoader extends DefaultResourceLoader implements Resourc
 		this.useCodecs = useCodecs;
 	}
 
+	/**
+	 * Sets the buffer size used when opening streams of resources. Non-positive
+	 * value, which is a default, uses the buffer size configured for the file system.
+	 *
+	 * @param readBufferSize the read buffer size in bytes
+	 */
+	public void setReadBufferSize(int readBufferSize) {
+		this.readBufferSize = readBufferSize;
+	}
+
 	/**
 	 * Sets the resource pattern resolver.
 	 *
@@ -316,7 +329,9 @@ public class HdfsResourceLoader extends DefaultResourceLoader implements Resourc
 		Set<Path> matchingFiles = retrieveMatchingFiles(rootDir, subPattern);
 		Set<Resource> result = new LinkedHashSet<Resource>(matchingFiles.size());
 		for (Path path : matchingFiles) {
-			result.add(new HdfsResource(path, fs, codecs()));
+			HdfsResource resource = new HdfsResource(path, fs, codecs());
+			resource.setReadBufferSize(readBufferSize);
+			result.add(resource);
 		}
 		return result;
 	}
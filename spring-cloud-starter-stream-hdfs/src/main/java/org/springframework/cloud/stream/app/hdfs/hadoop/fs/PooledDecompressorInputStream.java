@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.fs;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.Decompressor;
+
+/**
+ * Decompressing input stream returning a decompressor borrowed from a
+ * {@link CodecPool} when closed. Decompressor is returned only once even
+ * if a stream is closed multiple times.
+ *
+ */
+class PooledDecompressorInputStream extends FilterInputStream {
+
+	private Decompressor decompressor;
+
+	/**
+	 * Instantiates a new pooled decompressor input stream.
+	 *
+	 * @param in the decompressing stream using a decompressor
+	 * @param decompressor the pooled decompressor
+	 */
+	PooledDecompressorInputStream(InputStream in, Decompressor decompressor) {
+		super(in);
+		this.decompressor = decompressor;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			synchronized (this) {
+				if (decompressor != null) {
+					CodecPool.returnDecompressor(decompressor);
+					decompressor = null;
+				}
+			}
+		}
+	}
+
+}
@@ -17,11 +17,13 @@ package org.springframework.cloud.stream.app.hdfs.hadoop.store;
 
 import java.io.Closeable;
 import java.io.Flushable;
+import java.io.IOException;
+import java.util.Collection;
 
 /**
  * A {@code DataStoreWriter} is an extension of {@code DataWriter}
  * adding methods from {@code Flushable} and {@code Closeable}
- * interfaces.
+ * interfaces together with a batch write operation.
  *
  * @author Janne Valkealahti
  *
@@ -29,4 +31,15 @@ import java.io.Flushable;
  */
 public interface DataStoreWriter<T> extends DataWriter<T>, Flushable, Closeable {
 
+	/**
+	 * Write a batch of entities. Implementations are expected to handle
+	 * a batch as a single unit of work meaning that locking, write position
+	 * updates and rollover checks happen once per batch instead of once
+	 * per entity.
+	 *
+	 * @param entities the entities to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeAll(Collection<T> entities) throws IOException;
+
 }
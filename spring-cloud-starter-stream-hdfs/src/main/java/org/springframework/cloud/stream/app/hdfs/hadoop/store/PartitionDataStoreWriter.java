@@ -16,6 +16,7 @@
 package org.springframework.cloud.stream.app.hdfs.hadoop.store;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
 
@@ -42,4 +43,14 @@ public interface PartitionDataStoreWriter<T,K> extends DataStoreWriter<T> {
 	 */
 	void write(T entity, K partitionKey) throws IOException;
 
+	/**
+	 * Write a batch of entities with explicit partitioning keys. A key
+	 * at a given index is used for an entity at the same index.
+	 *
+	 * @param entities the entities to write
+	 * @param partitionKeys the partition keys
+	 * @throws IOException if an I/O error occurs
+	 */
+	void writeAll(List<T> entities, List<K> partitionKeys) throws IOException;
+
 }
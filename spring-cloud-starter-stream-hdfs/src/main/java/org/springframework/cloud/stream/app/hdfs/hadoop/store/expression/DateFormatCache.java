@@ -0,0 +1,292 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of date formatters used by partition expressions. Formatters are
+ * kept per pattern so that nothing needs to be created per evaluation.
+ * <p>
+ * Patterns whose {@link SimpleDateFormat} semantics are known to match
+ * {@link DateTimeFormatter} are formatted with an immutable, shared
+ * {@link DateTimeFormatter}. The latest formatted value is remembered
+ * together with a time bucket given by the finest field of a pattern, like
+ * an hour for {@code yyyy/MM/dd/HH}, and returned as is for timestamps
+ * falling into the same bucket. Any other pattern, and all parsing, uses a
+ * {@link SimpleDateFormat} cached per thread.
+ * <p>
+ * Formatting uses a default time zone and locale, same as a newly
+ * created {@link SimpleDateFormat}.
+ *
+ */
+public abstract class DateFormatCache {
+
+	/** Guard against unbounded growth with dynamic patterns */
+	private static final int MAX_PATTERNS = 256;
+
+	private static final ConcurrentMap<String, CachedFormatter> formatters = new ConcurrentHashMap<String, CachedFormatter>();
+
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> simpleDateFormats = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+
+		@Override
+		protected Map<String, SimpleDateFormat> initialValue() {
+			return new HashMap<String, SimpleDateFormat>();
+		}
+	};
+
+	/**
+	 * Format a timestamp.
+	 *
+	 * @param pattern the date pattern
+	 * @param timestamp the timestamp in milliseconds
+	 * @return the formatted date
+	 */
+	public static String format(String pattern, long timestamp) {
+		return getFormatter(pattern).format(timestamp);
+	}
+
+	/**
+	 * Format a date.
+	 *
+	 * @param pattern the date pattern
+	 * @param date the date
+	 * @return the formatted date
+	 */
+	public static String format(String pattern, Date date) {
+		return format(pattern, date.getTime());
+	}
+
+	/**
+	 * Format a value which is either a {@link Number} representing
+	 * a timestamp in milliseconds or a {@link Date}.
+	 *
+	 * @param pattern the date pattern
+	 * @param value the value
+	 * @return the formatted date
+	 * @throws IllegalArgumentException if value cannot be formatted as a date
+	 */
+	public static String format(String pattern, Object value) {
+		if (value instanceof Number) {
+			return format(pattern, ((Number) value).longValue());
+		} else if (value instanceof Date) {
+			return format(pattern, (Date) value);
+		}
+		throw new IllegalArgumentException("Cannot format given Object as a Date");
+	}
+
+	/**
+	 * Parse a date.
+	 *
+	 * @param pattern the date pattern
+	 * @param text the text to parse
+	 * @return the parsed date
+	 * @throws ParseException if text cannot be parsed
+	 */
+	public static Date parse(String pattern, String text) throws ParseException {
+		return getSimpleDateFormat(pattern).parse(text);
+	}
+
+	private static CachedFormatter getFormatter(String pattern) {
+		CachedFormatter formatter = formatters.get(pattern);
+		if (formatter == null) {
+			formatter = new CachedFormatter(pattern);
+			if (formatters.size() < MAX_PATTERNS) {
+				CachedFormatter existing = formatters.putIfAbsent(pattern, formatter);
+				if (existing != null) {
+					formatter = existing;
+				}
+			}
+		}
+		return formatter;
+	}
+
+	private static SimpleDateFormat getSimpleDateFormat(String pattern) {
+		Map<String, SimpleDateFormat> formats = simpleDateFormats.get();
+		SimpleDateFormat format = formats.get(pattern);
+		if (format == null) {
+			format = new SimpleDateFormat(pattern);
+			if (formats.size() < MAX_PATTERNS) {
+				formats.put(pattern, format);
+			}
+		}
+		return format;
+	}
+
+	/**
+	 * Resolves a finest time unit of a pattern if a pattern can be
+	 * handled by a {@link DateTimeFormatter} with same output as with
+	 * a {@link SimpleDateFormat}.
+	 *
+	 * @param pattern the date pattern
+	 * @return the finest unit, {@link ChronoUnit#MILLIS} if pattern has
+	 *         millisecond field or <code>NULL</code> if not supported
+	 */
+	private static ChronoUnit resolveUnit(String pattern) {
+		ChronoUnit unit = ChronoUnit.DAYS;
+		boolean quoted = false;
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			if (c == '\'') {
+				quoted = !quoted;
+				i++;
+				continue;
+			}
+			if (quoted) {
+				i++;
+				continue;
+			}
+			if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+				// reserved by DateTimeFormatter, literals for SimpleDateFormat
+				return null;
+			}
+			int count = 1;
+			while (i + count < pattern.length() && pattern.charAt(i + count) == c) {
+				count++;
+			}
+			i += count;
+			switch (c) {
+			case 'y':
+			case 'd':
+			case 'D':
+				break;
+			case 'M':
+			case 'E':
+				if (count > 4) {
+					return null;
+				}
+				break;
+			case 'a':
+				if (count > 1) {
+					return null;
+				}
+				unit = finer(unit, ChronoUnit.HOURS);
+				break;
+			case 'H':
+			case 'h':
+			case 'k':
+			case 'K':
+				unit = finer(unit, ChronoUnit.HOURS);
+				break;
+			case 'm':
+				unit = finer(unit, ChronoUnit.MINUTES);
+				break;
+			case 's':
+				unit = finer(unit, ChronoUnit.SECONDS);
+				break;
+			case 'S':
+				if (count != 3) {
+					return null;
+				}
+				unit = ChronoUnit.MILLIS;
+				break;
+			default:
+				if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+					// letters having different meaning or output
+					return null;
+				}
+				break;
+			}
+		}
+		return unit;
+	}
+
+	private static ChronoUnit finer(ChronoUnit unit, ChronoUnit other) {
+		return other.compareTo(unit) < 0 ? other : unit;
+	}
+
+	/**
+	 * Formatter for a single pattern remembering its latest bucket.
+	 */
+	private static class CachedFormatter {
+
+		private final String pattern;
+
+		private final DateTimeFormatter formatter;
+
+		private final ChronoUnit unit;
+
+		private volatile Bucket bucket;
+
+		CachedFormatter(String pattern) {
+			this.pattern = pattern;
+			ChronoUnit unit = resolveUnit(pattern);
+			DateTimeFormatter formatter = null;
+			if (unit != null) {
+				try {
+					formatter = DateTimeFormatter.ofPattern(pattern).withZone(ZoneId.systemDefault());
+				} catch (IllegalArgumentException e) {
+					// i.e. too many pattern letters, let SimpleDateFormat handle it
+					unit = null;
+				}
+			}
+			this.formatter = formatter;
+			this.unit = unit;
+		}
+
+		String format(long timestamp) {
+			if (formatter == null) {
+				return getSimpleDateFormat(pattern).format(new Date(timestamp));
+			}
+			if (unit == ChronoUnit.MILLIS) {
+				return formatter.format(Instant.ofEpochMilli(timestamp));
+			}
+			Bucket bucket = this.bucket;
+			if (bucket != null && timestamp >= bucket.start && timestamp < bucket.end) {
+				return bucket.value;
+			}
+			ZonedDateTime time = Instant.ofEpochMilli(timestamp).atZone(formatter.getZone());
+			ZonedDateTime start = time.truncatedTo(unit);
+			bucket = new Bucket(start.toInstant().toEpochMilli(), start.plus(1, unit).toInstant().toEpochMilli(),
+					formatter.format(time));
+			this.bucket = bucket;
+			return bucket.value;
+		}
+
+	}
+
+	/**
+	 * Formatted value valid for timestamps within a range.
+	 */
+	private static class Bucket {
+
+		final long start;
+
+		final long end;
+
+		final String value;
+
+		Bucket(long start, long end, String value) {
+			this.start = start;
+			this.end = end;
+			this.value = value;
+		}
+
+	}
+
+}
@@ -25,7 +25,8 @@ import org.springframework.expression.MethodExecutor;
 import org.springframework.expression.TypedValue;
 
 /**
- * A {@link MethodExecutor} handling formatting using a {@link SimpleDateFormat}.
+ * A {@link MethodExecutor} handling formatting using {@link SimpleDateFormat}
+ * patterns. Formatters are shared via {@link DateFormatCache}.
  *
  * @author Janne Valkealahti
  * @author Rodrigo Meneses
@@ -55,30 +56,30 @@ public class DateFormatMethodExecutor implements MethodExecutor {
 	@Override
 	public TypedValue execute(EvaluationContext context, Object target, Object... arguments) throws AccessException {
 		if (key == null) {
-			SimpleDateFormat format = new SimpleDateFormat((String)arguments[0]);
+			String pattern = (String) arguments[0];
 			//if first argument is Long, then we assume it's a timestamp in milliseconds type format
 			//first argument can also be a Date itself
 			if (arguments[1] instanceof Long || arguments[1] instanceof Date) {
-				return new TypedValue(format.format(arguments[1]));
+				return new TypedValue(DateFormatCache.format(pattern, arguments[1]));
 			}
 			//if the argument is a String, then assume it's a Date represented as a String.
 			if (arguments[1] instanceof String) {
 				//Assume it's in default formay yyyMMdd
-				SimpleDateFormat fromFormat = new SimpleDateFormat(DEFAULT_FORMAT);
+				String fromPattern = DEFAULT_FORMAT;
 				//if the third argument is present, use it as the from date format
 				if (arguments.length == 3 && arguments[2] instanceof String)
-					fromFormat = new SimpleDateFormat((String)arguments[2]);
+					fromPattern = (String) arguments[2];
 
 					try {
-						Date parsedDate = fromFormat.parse((String) arguments[1]);
-						return new TypedValue(format.format(parsedDate));
+						Date parsedDate = DateFormatCache.parse(fromPattern, (String) arguments[1]);
+						return new TypedValue(DateFormatCache.format(pattern, parsedDate));
 					} catch (ParseException e) {
 						throw new AccessException("Unable to format", e);
 					}
 
 			}
 
-			return new TypedValue(format.format((Long)arguments[1]));
+			return new TypedValue(DateFormatCache.format(pattern, arguments[1]));
 		}
 		throw new AccessException("Unable to format");
 	}
@@ -93,37 +94,25 @@ public class DateFormatMethodExecutor implements MethodExecutor {
 	}
 
 	public static String dateFormat(String pattern, Integer epoch) throws AccessException {
-		SimpleDateFormat format = new SimpleDateFormat(pattern);
-		return format.format(epoch);
+		return DateFormatCache.format(pattern, epoch.longValue());
 	}
 
 	public static String dateFormat(String pattern, Long epoch) throws AccessException {
-		SimpleDateFormat format = new SimpleDateFormat(pattern);
-		return format.format(epoch);
+		return DateFormatCache.format(pattern, epoch.longValue());
 	}
 
 	public static String dateFormat(String pattern, Date date) throws AccessException {
-		SimpleDateFormat format = new SimpleDateFormat(pattern);
-		return format.format(date);
+		return DateFormatCache.format(pattern, date);
 	}
 
 	public static String dateFormat(String pattern, String datestring) throws AccessException {
-		try {
-			SimpleDateFormat format = new SimpleDateFormat(pattern);
-			SimpleDateFormat fromFormat = new SimpleDateFormat(DEFAULT_FORMAT);
-			Date parsedDate = fromFormat.parse(datestring);
-			return format.format(parsedDate);
-		} catch (ParseException e) {
-			throw new AccessException("Unable to format", e);
-		}
+		return dateFormat(pattern, datestring, DEFAULT_FORMAT);
 	}
 
 	public static String dateFormat(String pattern, String datestring, String dateformat) throws AccessException {
 		try {
-			SimpleDateFormat format = new SimpleDateFormat(pattern);
-			SimpleDateFormat fromFormat = new SimpleDateFormat(dateformat);
-			Date parsedDate = fromFormat.parse(datestring);
-			return format.format(parsedDate);
+			Date parsedDate = DateFormatCache.parse(dateformat, datestring);
+			return DateFormatCache.format(pattern, parsedDate);
 		} catch (ParseException e) {
 			throw new AccessException("Unable to format", e);
 		}
@@ -15,6 +15,7 @@
  */
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
 
+import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
 
@@ -22,6 +23,8 @@ import org.springframework.expression.AccessException;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.MethodExecutor;
 import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.support.ReflectiveMethodExecutor;
+import org.springframework.util.ClassUtils;
 
 /**
  * A {@link MethodExecutor} using an first argument as key
@@ -32,24 +35,48 @@ import org.springframework.expression.TypedValue;
  * Value 15 would create key "20_range", 40 key "40_range" and
  * 45 key "40_range".
  *
+ * <p>An executor instance is resolved per expression and turns an integral
+ * or string range list into a {@link RangeTable} cached by list identity,
+ * a list literal in an expression being a same constant instance for every
+ * evaluation. Range lists are thus expected not to be modified once used.
+ * A compiled expression calls {@link #range(Object, List)} directly, which
+ * searches a list without a table.
+ *
  * @author Janne Valkealahti
  *
  */
-public class HashRangeMethodExecutor implements MethodExecutor {
+public class HashRangeMethodExecutor extends ReflectiveMethodExecutor {
+
+	private final static Method RANGE_METHOD = ClassUtils.getMethod(HashRangeMethodExecutor.class, "range",
+			Object.class, List.class);
+
+	/** Range table of a last list used with this executor */
+	private volatile CachedTable cachedTable;
+
+	/**
+	 * Instantiates a new hash range method executor.
+	 */
+	public HashRangeMethodExecutor() {
+		super(RANGE_METHOD);
+	}
 
 	@Override
 	public TypedValue execute(EvaluationContext context, Object target, Object... arguments) throws AccessException {
 		if (arguments[1] instanceof List) {
-			return new TypedValue(rangeWithObjectAndList(arguments[0], (List<?>) arguments[1]));
+			List<?> ranges = (List<?>) arguments[1];
+			return new TypedValue(rangeWithObjectAndList(arguments[0], ranges, getTable(ranges)));
 		}
 		throw new AccessException("Argument " + arguments[1] + " not a List");
 	}
 
 	public static String range(Object arg1, List<?> arg2) throws AccessException {
-		return rangeWithObjectAndList(arg1, arg2);
+		return rangeWithObjectAndList(arg1, arg2, null);
 	}
 
-	private static String rangeWithObjectAndList(Object arg1, List<?> arg2) throws AccessException {
+	private static String rangeWithObjectAndList(Object arg1, List<?> arg2, RangeTable table) throws AccessException {
+		if (table != null && table.supports(arg1)) {
+			return table.lookup(arg1);
+		}
 		try {
 			Object[] ranges = ((List<?>) arg2).toArray(new Object[0]);
 			int searchIndex = Arrays.binarySearch(ranges, arg1);
@@ -59,4 +86,34 @@ public class HashRangeMethodExecutor implements MethodExecutor {
 		}
 	}
 
+	private RangeTable getTable(List<?> ranges) {
+		CachedTable cached = cachedTable;
+		if (cached != null && cached.ranges == ranges && cached.size == ranges.size()) {
+			return cached.table;
+		}
+		cached = new CachedTable(ranges, RangeTable.of(ranges));
+		cachedTable = cached;
+		return cached.table;
+	}
+
+	/**
+	 * Range table for a list instance, table is <code>NULL</code>
+	 * if list cannot be turned into a table.
+	 */
+	private static class CachedTable {
+
+		final List<?> ranges;
+
+		final int size;
+
+		final RangeTable table;
+
+		CachedTable(List<?> ranges, RangeTable table) {
+			this.ranges = ranges;
+			this.size = ranges.size();
+			this.table = table;
+		}
+
+	}
+
 }
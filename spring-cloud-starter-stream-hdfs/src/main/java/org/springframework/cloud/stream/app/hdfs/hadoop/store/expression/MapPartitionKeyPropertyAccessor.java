@@ -16,6 +16,8 @@
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.asm.MethodVisitor;
 import org.springframework.expression.AccessException;
@@ -39,7 +41,8 @@ public class MapPartitionKeyPropertyAccessor extends ReflectivePropertyAccessor
 
 	private final static String mapClassDescriptor = "java/util/Map";
 
-	private volatile String typeDescriptor;
+	/** Type descriptors of last read values per property name */
+	private final ConcurrentMap<String, String> typeDescriptors = new ConcurrentHashMap<String, String>();
 
 	@Override
 	public Class<?>[] getSpecificTargetClasses() {
@@ -50,7 +53,10 @@ public class MapPartitionKeyPropertyAccessor extends ReflectivePropertyAccessor
 	public boolean canRead(EvaluationContext context, Object target, String name) throws AccessException {
 		boolean containsKey = ((Map<?, ?>) target).containsKey(name);
 		if (containsKey) {
-			this.typeDescriptor = CodeFlow.toDescriptorFromObject(((Map<?, ?>) target).get(name));
+			String typeDescriptor = CodeFlow.toDescriptorFromObject(((Map<?, ?>) target).get(name));
+			if (typeDescriptor != null) {
+				typeDescriptors.put(name, typeDescriptor);
+			}
 		}
 		return containsKey;
 	}
@@ -67,7 +73,7 @@ public class MapPartitionKeyPropertyAccessor extends ReflectivePropertyAccessor
 
 	@Override
 	public PropertyAccessor createOptimalAccessor(EvaluationContext evalContext, Object target, String name) {
-		return new MapOptimalPropertyAccessor(this.typeDescriptor);
+		return new MapOptimalPropertyAccessor(typeDescriptors.get(name));
 	}
 
 	public static class MapOptimalPropertyAccessor implements CompilablePropertyAccessor {
@@ -27,7 +27,8 @@ import org.springframework.expression.TypedValue;
 import org.springframework.messaging.Message;
 
 /**
- * A {@link MethodExecutor} handling formatting using a {@link SimpleDateFormat}.
+ * A {@link MethodExecutor} handling formatting using {@link SimpleDateFormat}
+ * patterns. Formatters are shared via {@link DateFormatCache}.
  *
  * @author Janne Valkealahti
  * @author Rodrigo Meneses
@@ -58,8 +59,7 @@ public class MessageDateFormatMethodExecutor extends DateFormatMethodExecutor {
 		}
 		if (target instanceof Message<?>) {
 			Map<?, ?> map = ((Message<?>) target).getHeaders();
-			SimpleDateFormat format = new SimpleDateFormat((String) arguments[0]);
-			return new TypedValue(format.format(map.get(getKey())));
+			return new TypedValue(DateFormatCache.format((String) arguments[0], map.get(getKey())));
 		}
 		throw new AccessException("Unable to format");
 	}
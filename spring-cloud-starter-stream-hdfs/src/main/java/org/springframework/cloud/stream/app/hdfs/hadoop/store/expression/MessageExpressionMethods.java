@@ -16,7 +16,7 @@
 
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
 
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -101,9 +101,22 @@ public class MessageExpressionMethods {
 			this.delegate = delegate;
 		}
 
+		/**
+		 * Gets the payload. A {@code byte[]} payload is exposed as an
+		 * {@code UTF-8} decoded {@code String} so that expressions can
+		 * work with it regardless whether entities are written as text
+		 * or as raw bytes. Decoding only happens if expression actually
+		 * accesses a payload.
+		 *
+		 * @return the payload
+		 */
 		@Override
 		public Object getPayload() {
-			return delegate.getPayload();
+			Object payload = delegate.getPayload();
+			if (payload instanceof byte[]) {
+				return new String((byte[]) payload, StandardCharsets.UTF_8);
+			}
+			return payload;
 		}
 
 		@Override
@@ -112,8 +125,7 @@ public class MessageExpressionMethods {
 		}
 
 		public String dateFormat(String pattern) {
-			SimpleDateFormat format = new SimpleDateFormat(pattern);
-			return format.format(getHeaders().getTimestamp());
+			return DateFormatCache.format(pattern, getHeaders().getTimestamp());
 		}
 
 	}
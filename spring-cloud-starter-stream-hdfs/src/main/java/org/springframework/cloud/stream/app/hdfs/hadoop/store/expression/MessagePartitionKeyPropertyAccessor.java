@@ -16,6 +16,9 @@
 
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.springframework.asm.MethodVisitor;
 import org.springframework.context.expression.MapAccessor;
 import org.springframework.expression.AccessException;
@@ -50,7 +53,8 @@ public class MessagePartitionKeyPropertyAccessor extends ReflectivePropertyAcces
 
 	private final static String messageHeadersClassDescriptor = "org/springframework/messaging/MessageHeaders";
 
-	private volatile String typeDescriptor;
+	/** Type descriptors of last read values per property name */
+	private final ConcurrentMap<String, String> typeDescriptors = new ConcurrentHashMap<String, String>();
 
 	@Override
 	public Class<?>[] getSpecificTargetClasses() {
@@ -62,7 +66,10 @@ public class MessagePartitionKeyPropertyAccessor extends ReflectivePropertyAcces
 		if (target instanceof Message && !PAYLOAD.equals(name) && !HEADERS.equals(name)) {
 			boolean containsKey = ((Message<?>) target).getHeaders().containsKey(name);
 			if (containsKey) {
-				this.typeDescriptor = CodeFlow.toDescriptorFromObject(((Message<?>) target).getHeaders().get(name));
+				String typeDescriptor = CodeFlow.toDescriptorFromObject(((Message<?>) target).getHeaders().get(name));
+				if (typeDescriptor != null) {
+					typeDescriptors.put(name, typeDescriptor);
+				}
 			}
 			return containsKey;
 		}
@@ -94,7 +101,7 @@ public class MessagePartitionKeyPropertyAccessor extends ReflectivePropertyAcces
 	@Override
 	public PropertyAccessor createOptimalAccessor(EvaluationContext evalContext, Object target, String name) {
 		if (target instanceof Message && !PAYLOAD.equals(name) && !HEADERS.equals(name)) {
-			return new MessageOptimalPropertyAccessor(this.typeDescriptor);
+			return new MessageOptimalPropertyAccessor(typeDescriptors.get(name));
 		}
 		return super.createOptimalAccessor(evalContext, target, name);
 	}
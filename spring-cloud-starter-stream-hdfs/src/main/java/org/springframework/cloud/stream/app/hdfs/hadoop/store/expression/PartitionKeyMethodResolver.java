@@ -71,6 +71,10 @@ public class PartitionKeyMethodResolver extends ReflectiveMethodResolver {
 		} else if (METHOD_HASHLIST.equals(name)) {
 			targetObject = HashListMethodExecutor.class;
 		} else if (METHOD_HASHRANGE.equals(name)) {
+			if (argumentTypes.size() == 2) {
+				// executor instance per expression keeps its own range table
+				return new HashRangeMethodExecutor();
+			}
 			targetObject = HashRangeMethodExecutor.class;
 		}
 		// need to go back to super method for whole spel to work
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A lookup table for range partitioning. Range bounds are kept in a
+ * primitive {@code long} array for integral bounds or in a {@code String}
+ * array for string bounds, together with pre-built {@code <bound>_range}
+ * keys, so that a lookup is a binary search without any allocation.
+ * <p>
+ * Lookup semantics are same as in {@link HashRangeMethodExecutor}, bounds
+ * are searched in a given order and a key greater than a last bound
+ * resolves to a last bound. Integral bounds and keys are compared as
+ * {@code long} values regardless of their boxed types.
+ *
+ */
+public class RangeTable {
+
+	private final long[] longBounds;
+
+	private final String[] stringBounds;
+
+	private final String[] keys;
+
+	private RangeTable(long[] longBounds, String[] stringBounds, String[] keys) {
+		this.longBounds = longBounds;
+		this.stringBounds = stringBounds;
+		this.keys = keys;
+	}
+
+	/**
+	 * Creates a range table from a list of bounds.
+	 *
+	 * @param ranges the range bounds
+	 * @return the range table or <code>NULL</code> if bounds are neither
+	 *         all integral numbers nor all strings
+	 */
+	public static RangeTable of(List<?> ranges) {
+		int size = ranges.size();
+		if (size == 0) {
+			return null;
+		}
+		String[] keys = new String[size];
+		Object first = ranges.get(0);
+		if (isIntegral(first)) {
+			long[] bounds = new long[size];
+			for (int i = 0; i < size; i++) {
+				Object range = ranges.get(i);
+				if (!isIntegral(range)) {
+					return null;
+				}
+				bounds[i] = ((Number) range).longValue();
+				keys[i] = range + "_range";
+			}
+			return new RangeTable(bounds, null, keys);
+		} else if (first instanceof String) {
+			String[] bounds = new String[size];
+			for (int i = 0; i < size; i++) {
+				Object range = ranges.get(i);
+				if (!(range instanceof String)) {
+					return null;
+				}
+				bounds[i] = (String) range;
+				keys[i] = range + "_range";
+			}
+			return new RangeTable(null, bounds, keys);
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if bounds are integral numbers.
+	 *
+	 * @return true, if bounds are numeric
+	 */
+	public boolean isNumeric() {
+		return longBounds != null;
+	}
+
+	/**
+	 * Checks if a key can be looked up from this table.
+	 *
+	 * @param key the key
+	 * @return true, if key is supported
+	 */
+	public boolean supports(Object key) {
+		return longBounds != null ? isIntegral(key) : key instanceof String;
+	}
+
+	/**
+	 * Finds a range for a key supported by this table.
+	 *
+	 * @param key the key
+	 * @return the range key
+	 * @see #supports(Object)
+	 */
+	public String lookup(Object key) {
+		if (longBounds != null) {
+			return lookup(((Number) key).longValue());
+		}
+		return lookup((String) key);
+	}
+
+	/**
+	 * Finds a range for a numeric key.
+	 *
+	 * @param key the key
+	 * @return the range key
+	 */
+	public String lookup(long key) {
+		return keys[index(Arrays.binarySearch(longBounds, key))];
+	}
+
+	/**
+	 * Finds a range for a string key.
+	 *
+	 * @param key the key
+	 * @return the range key
+	 */
+	public String lookup(String key) {
+		return keys[index(Arrays.binarySearch(stringBounds, key))];
+	}
+
+	private int index(int searchIndex) {
+		return Math.min(searchIndex < 0 ? -searchIndex - 1 : searchIndex, keys.length - 1);
+	}
+
+	private static boolean isIntegral(Object value) {
+		return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+	}
+
+}
@@ -31,14 +31,12 @@ import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.Decompressor;
 import org.apache.hadoop.io.compress.SplitCompressionInputStream;
 import org.apache.hadoop.io.compress.SplittableCompressionCodec;
-import org.apache.hadoop.util.ReflectionUtils;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.StoreException;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.split.Split;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.InputContext;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.InputStoreObjectSupport;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.StreamsHolder;
-import org.springframework.util.ClassUtils;
 
 /**
  * A {@code AbstractDataStreamReader} is a base implementation handling
@@ -91,41 +89,54 @@ public class AbstractDataStreamReader extends InputStoreObjectSupport {
 		if (!isCompressed()) {
 			if (getSplit() == null) {
 				// no codec, no split
-				InputStream input = fs.open(p);
+				InputStream input = open(fs, p);
 				holder.setStream(input);
 			} else {
 				// no codec, with split
-				FSDataInputStream input = fs.open(inputPath);
+				FSDataInputStream input = open(fs, inputPath);
 				input.seek(getSplit().getStart());
 				holder.setStream(input);
 			}
 		} else {
-			Class<?> clazz = ClassUtils.resolveClassName(getCodec().getCodecClass(), getClass().getClassLoader());
-			CompressionCodec compressionCodec = (CompressionCodec) ReflectionUtils.newInstance(clazz,
-					getConfiguration());
+			CompressionCodec compressionCodec = getCompressionCodec();
+			// decompressor goes back into a pool when holder is closed
 			Decompressor decompressor = CodecPool.getDecompressor(compressionCodec);
-			if (getSplit() == null) {
-				// with codec, no split
-				FSDataInputStream winput = fs.open(p);
-				InputStream input = compressionCodec.createInputStream(winput, decompressor);
-				holder.setWrappedStream(winput);
-				holder.setStream(input);
-			} else {
-				// with codec, with split
-				long start = getSplit().getStart();
-				long end = start + getSplit().getLength();
-				log.info("SplitCompressionInputStream start=" + start + " end=" + end);
-
-				FSDataInputStream winput = fs.open(p);
-				SplitCompressionInputStream input = ((SplittableCompressionCodec) compressionCodec).createInputStream(
-						winput, decompressor, start, end, SplittableCompressionCodec.READ_MODE.BYBLOCK);
-				holder.setWrappedStream(winput);
-				holder.setStream(input);
+			FSDataInputStream winput = null;
+			try {
+				winput = open(fs, p);
+				if (getSplit() == null) {
+					// with codec, no split
+					InputStream input = compressionCodec.createInputStream(winput, decompressor);
+					holder.setWrappedStream(winput);
+					holder.setStream(input);
+				} else {
+					// with codec, with split
+					long start = getSplit().getStart();
+					long end = start + getSplit().getLength();
+					log.info("SplitCompressionInputStream start=" + start + " end=" + end);
+
+					SplitCompressionInputStream input = ((SplittableCompressionCodec) compressionCodec).createInputStream(
+							winput, decompressor, start, end, SplittableCompressionCodec.READ_MODE.BYBLOCK);
+					holder.setWrappedStream(winput);
+					holder.setStream(input);
+				}
+				holder.setDecompressor(decompressor);
+			} catch (IOException e) {
+				CodecPool.returnDecompressor(decompressor);
+				if (winput != null) {
+					winput.close();
+				}
+				throw e;
 			}
 		}
 		return holder;
 	}
 
+	private FSDataInputStream open(FileSystem fs, Path path) throws IOException {
+		int bufferSize = getReadBufferSize();
+		return bufferSize > 0 ? fs.open(path, bufferSize) : fs.open(path);
+	}
+
 	/**
 	 * Reader helper hiding complexity of working with input streams.
 	 *
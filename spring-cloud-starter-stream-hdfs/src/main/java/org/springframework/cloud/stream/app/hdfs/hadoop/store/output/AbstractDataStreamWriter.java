@@ -17,20 +17,23 @@ package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.io.compress.Compressor;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.StoreException;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.CountingOutputStream;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.OutputStoreObjectSupport;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.StreamsHolder;
-import org.springframework.util.ClassUtils;
 
 /**
  * A {@code AbstractDataStreamWriter} is a base implementation handling streams
@@ -47,20 +50,48 @@ public abstract class AbstractDataStreamWriter extends OutputStoreObjectSupport
 
 	private int maxOpenAttempts = DEFAULT_MAX_OPEN_ATTEMPTS;
 
+	/** Number of jvm level path locks, power of two */
+	private final static int LOCK_STRIPES = 64;
+
 	/**
-	 * We use this jvm level lock in this class to guard against one
-	 * scenario. When we try to create a stream a check is first done
-	 * if path exists and then we create a stream. This sync lock would
-	 * not make sense on a global level because exist()/create() is never
-	 * atomic but we want to do this within a jvm. Some distros have a little
-	 * different functionality in cases when same leaseholder is trying to
-	 * re-create a stream with already open file. i.e. in cdh this operation
+	 * We use these jvm level locks in this class to guard against one
+	 * scenario. When we try to append a stream a check is first done
+	 * if path exists and then we append or create a stream. This sync lock
+	 * would not make sense on a global level because exist()/create() is
+	 * never atomic but we want to do this within a jvm. Some distros have a
+	 * little different functionality in cases when same leaseholder is trying
+	 * to re-create a stream with already open file. i.e. in cdh this operation
 	 * on default takes 5 minutes while vanilla hadoop fails immediately.
 	 * We minimise this risk within a jvm in a way that same leaseholder
 	 * would not try to use same path to create a stream. In different jvm's
 	 * error handling is different because of different leaseholders.
+	 * <p>
+	 * Locks are striped by a path so that opens of different paths don't
+	 * wait for each other. Non-appending opens rely on an atomic create
+	 * instead and don't take a lock at all.
 	 */
-	private final static Object lock = new Object();
+	private final static Object[] locks = new Object[LOCK_STRIPES];
+
+	static {
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/** Output currently written, used for byte counts */
+	private volatile StreamsHolder<OutputStream> currentOutput;
+
+	/** Bytes written into files already closed */
+	private final LongAdder closedUncompressedBytes = new LongAdder();
+
+	/** Bytes stored into files already closed */
+	private final LongAdder closedCompressedBytes = new LongAdder();
+
+	/** Compressed to uncompressed ratio of a last closed file, negative if unknown */
+	private volatile double compressionRatio = -1;
+
+	/** Metrics of a partitioned writer this writer was created by, if any */
+	private volatile PartitionWriterMetrics partitionWriterMetrics;
 
 	/**
 	 * Instantiates a new abstract data stream writer.
@@ -92,7 +123,7 @@ public abstract class AbstractDataStreamWriter extends OutputStoreObjectSupport
 	 */
 	protected StreamsHolder<OutputStream> getOutput() throws IOException {
 		StreamsHolder<OutputStream> holder = new StreamsHolder<OutputStream>();
-		FileSystem fs = FileSystem.get(getConfiguration());
+		FileSystem fs = getFileSystem();
 
 		// Using maxOpenAttempts try to resolve path and open
 		// an output stream and automatically rolling strategies
@@ -108,22 +139,34 @@ public abstract class AbstractDataStreamWriter extends OutputStoreObjectSupport
 		do {
 			boolean rollStrategies = false;
 			try {
-				p = getResolvedPath();
-				synchronized (lock) {
-					boolean exists = fs.exists(p);
-					if (isAppendable() && exists) {
-						wout = fs.append(p);
-						break;
-					} else if (!isOverwrite() && exists) {
-						// don't rely on error to roll.
-						// check notes for lock object.
-						rollStrategies = true;
-					} else {
-						wout = fs.create(p, isOverwrite());
+				if (isAppendable()) {
+					p = getResolvedPath();
+					synchronized (getLock(p)) {
+						if (fs.exists(p)) {
+							wout = fs.append(p);
+						} else {
+							wout = fs.create(p, isOverwrite());
+						}
 						break;
 					}
+				} else if (isOverwrite()) {
+					p = getResolvedPath();
+					wout = fs.create(p, true);
+					break;
+				} else {
+					// create fails atomically if path exists, which is
+					// our signal to roll without asking for it first
+					p = getResolvedPathForCreate();
+					wout = fs.create(p, false);
+					break;
 				}
+			} catch (FileAlreadyExistsException e) {
+				// path taken, expected when resuming over existing files
+				rollStrategies = true;
 			} catch (Exception e) {
+				if (log.isDebugEnabled()) {
+					log.debug("Unable to open path " + p + ", trying next one", e);
+				}
 				rollStrategies = true;
 			}
 
@@ -144,25 +187,177 @@ public abstract class AbstractDataStreamWriter extends OutputStoreObjectSupport
 		if (!isCompressed()) {
 			holder.setStream(wout);
 		} else {
-			// TODO: will isCompressed() really guard for npe against getCodec()
-			Class<?> clazz = ClassUtils.resolveClassName(getCodec().getCodecClass(), getClass().getClassLoader());
-			CompressionCodec compressionCodec = (CompressionCodec) ReflectionUtils.newInstance(clazz,
-					getConfiguration());
-			OutputStream out = compressionCodec.createOutputStream(wout);
+			CompressionCodec compressionCodec = getCompressionCodec();
+			// count bytes on both sides of a codec as compressor
+			// buffers data and only moves a stream position stepwise
+			CountingOutputStream compressedCounter = new CountingOutputStream(wout);
+			// pooled compressor is returned when holder is closed, codecs
+			// without a compressor implementation manage their own state
+			Compressor compressor = CodecPool.getCompressor(compressionCodec, getConfiguration());
+			OutputStream cout;
+			try {
+				cout = compressor != null ? compressionCodec.createOutputStream(compressedCounter, compressor)
+						: compressionCodec.createOutputStream(compressedCounter);
+			} catch (IOException e) {
+				CodecPool.returnCompressor(compressor);
+				wout.close();
+				throw e;
+			}
+			CountingOutputStream uncompressedCounter = new CountingOutputStream(cout);
 			holder.setWrappedStream(wout);
-			holder.setStream(out);
+			holder.setStream(uncompressedCounter);
+			holder.setCounters(uncompressedCounter, compressedCounter);
+			holder.setCompressor(compressor);
 		}
+		currentOutput = holder;
 		return holder;
 	}
 
+	private static Object getLock(Path path) {
+		int hash = path.hashCode();
+		return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+	}
+
 	/**
-	 * Gets the current stream writing position.
+	 * Sets the write position from an output. Position given to a rollover
+	 * strategy is an estimated stored size and uncompressed position is a
+	 * number of bytes written.
+	 *
+	 * @param holder the holder for output streams
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected void setWritePosition(StreamsHolder<OutputStream> holder) throws IOException {
+		getOutputContext().setUncompressedWritePosition(getUncompressedPosition(holder));
+		setWritePosition(getPosition(holder));
+	}
+
+	/**
+	 * Notifies that an output has been closed, updating byte counts and
+	 * a compression ratio used to estimate a stored size of next files.
+	 *
+	 * @param holder the holder for closed output streams
+	 */
+	protected void outputClosed(StreamsHolder<OutputStream> holder) {
+		if (holder != currentOutput) {
+			return;
+		}
+		currentOutput = null;
+		long uncompressed = holder.getUncompressedCount();
+		long compressed = holder.getCompressedCount();
+		if (uncompressed >= 0) {
+			if (uncompressed > 0) {
+				compressionRatio = (double) compressed / uncompressed;
+			}
+		} else {
+			uncompressed = compressed = getStreamBytes(holder);
+		}
+		closedUncompressedBytes.add(uncompressed);
+		closedCompressedBytes.add(compressed);
+		PartitionWriterMetrics metrics = partitionWriterMetrics;
+		if (metrics != null) {
+			metrics.outputClosed(uncompressed, compressed);
+		}
+	}
+
+	/**
+	 * Sets the metrics of a partitioned writer which are given byte
+	 * counts of files closed by this writer.
+	 *
+	 * @param partitionWriterMetrics the partition writer metrics
+	 */
+	void setPartitionWriterMetrics(PartitionWriterMetrics partitionWriterMetrics) {
+		this.partitionWriterMetrics = partitionWriterMetrics;
+	}
+
+	/**
+	 * Gets the total number of bytes written, before compression.
+	 * Includes a file currently written.
+	 *
+	 * @return the uncompressed byte count
+	 */
+	public long getUncompressedBytes() {
+		return closedUncompressedBytes.sum() + getCurrentUncompressedBytes();
+	}
+
+	/**
+	 * Gets the total number of bytes stored, after compression. Includes
+	 * bytes produced by a codec for a file currently written.
+	 *
+	 * @return the compressed byte count
+	 */
+	public long getCompressedBytes() {
+		return closedCompressedBytes.sum() + getCurrentCompressedBytes();
+	}
+
+	/**
+	 * Gets the number of bytes written into a file currently written,
+	 * before compression.
+	 *
+	 * @return the uncompressed byte count of a current file
+	 */
+	long getCurrentUncompressedBytes() {
+		StreamsHolder<OutputStream> holder = currentOutput;
+		if (holder == null) {
+			return 0;
+		}
+		return holder.getUncompressedCount() >= 0 ? holder.getUncompressedCount() : getStreamBytes(holder);
+	}
+
+	/**
+	 * Gets the number of bytes stored into a file currently written,
+	 * after compression.
+	 *
+	 * @return the compressed byte count of a current file
+	 */
+	long getCurrentCompressedBytes() {
+		StreamsHolder<OutputStream> holder = currentOutput;
+		if (holder == null) {
+			return 0;
+		}
+		return holder.getCompressedCount() >= 0 ? holder.getCompressedCount() : getStreamBytes(holder);
+	}
+
+	/**
+	 * Gets the current stream writing position. With compression this is an
+	 * estimated stored size taking into account data still buffered by a
+	 * compressor, estimated using a compression ratio of a previously
+	 * closed file.
 	 *
 	 * @param holder the holder for output streams
 	 * @return the position
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	protected long getPosition(StreamsHolder<OutputStream> holder) throws IOException {
+		long position = getStreamPosition(holder);
+		if (position < 0 || holder.getUncompressedCount() < 0) {
+			return position;
+		}
+		double ratio = compressionRatio;
+		if (ratio > 0) {
+			long pending = (long) (holder.getUncompressedCount() * ratio) - holder.getCompressedCount();
+			if (pending > 0) {
+				position += pending;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Gets the number of bytes written into a current output before
+	 * compression.
+	 *
+	 * @param holder the holder for output streams
+	 * @return the uncompressed position
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected long getUncompressedPosition(StreamsHolder<OutputStream> holder) throws IOException {
+		if (holder != null && holder.getUncompressedCount() >= 0) {
+			return holder.getUncompressedCount();
+		}
+		return getStreamPosition(holder);
+	}
+
+	private static long getStreamPosition(StreamsHolder<OutputStream> holder) throws IOException {
 		if (holder != null) {
 			OutputStream out = holder.getStream();
 			OutputStream wout = holder.getWrappedStream();
@@ -170,11 +365,16 @@ public abstract class AbstractDataStreamWriter extends OutputStoreObjectSupport
 				return ((FSDataOutputStream) out).getPos();
 			} else if (wout instanceof FSDataOutputStream) {
 				return ((FSDataOutputStream) wout).getPos();
-			} else {
-				return -1;
 			}
-		} else {
-			return -1;
+		}
+		return -1;
+	}
+
+	private static long getStreamBytes(StreamsHolder<OutputStream> holder) {
+		try {
+			return Math.max(getStreamPosition(holder), 0);
+		} catch (IOException e) {
+			return 0;
 		}
 	}
 
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.Syncable;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.FileWrittenEvent;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.StoreEventPublisher;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.OutputCommitLog;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.StreamsHolder;
+
+/**
+ * A {@code AbstractDelimitedStreamWriter} is a base implementation for
+ * {@code DataStoreWriter}s writing entities into raw hdfs files where
+ * every entity is followed by a delimiter. Subclasses only need to know
+ * how an entity is written into a stream.
+ *
+ * @param <T> the type of an entity to write
+ */
+public abstract class AbstractDelimitedStreamWriter<T> extends AbstractDataStreamWriter implements DataStoreWriter<T> {
+
+	private final static Log log = LogFactory.getLog(AbstractDelimitedStreamWriter.class);
+
+	private StreamsHolder<OutputStream> streamsHolder;
+
+	private final byte[] delimiter;
+
+	private volatile GroupCommitFlusher groupCommitFlusher;
+
+	/** Highest sequences written by sequence partition, guarded by this */
+	private final Map<String, Long> writtenSequences = new HashMap<String, Long>();
+
+	/** Last state recorded into a commit log, guarded by this */
+	private long loggedLength = -1;
+
+	/** Flag telling written sequences changed after a last record, guarded by this */
+	private boolean sequencesChanged;
+
+	/** Flag telling this writer never opens a file again, guarded by this */
+	private boolean retired;
+
+	/**
+	 * Instantiates a new abstract delimited stream writer.
+	 *
+	 * @param configuration the hadoop configuration
+	 * @param basePath the hdfs path
+	 * @param codec the compression codec info
+	 * @param delimiter the delimiter
+	 */
+	public AbstractDelimitedStreamWriter(Configuration configuration, Path basePath, CodecInfo codec, byte[] delimiter) {
+		super(configuration, basePath, codec);
+		this.delimiter = delimiter;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (streamsHolder != null) {
+			OutputStream stream = streamsHolder.getStream();
+			stream.flush();
+			if ((isAppendable() || isSyncable()) && stream instanceof Syncable) {
+				((Syncable)stream).hflush();
+				logCommit();
+			}
+		}
+	}
+
+	/**
+	 * Flushes a stream and makes written data durable using {@code hflush}
+	 * or {@code hsync} regardless of whether this writer is appendable or
+	 * syncable. Does nothing if a stream is not open as closing a stream
+	 * already made its data durable.
+	 *
+	 * @param hsync true to use {@code hsync}, false to use {@code hflush}
+	 * @throws IOException if an I/O error occurs
+	 */
+	public synchronized void sync(boolean hsync) throws IOException {
+		if (streamsHolder != null) {
+			OutputStream stream = streamsHolder.getStream();
+			stream.flush();
+			Syncable syncable = null;
+			if (stream instanceof Syncable) {
+				syncable = (Syncable) stream;
+			} else if (streamsHolder.getWrappedStream() instanceof Syncable) {
+				syncable = (Syncable) streamsHolder.getWrappedStream();
+			}
+			if (syncable == null) {
+				return;
+			}
+			if (hsync) {
+				syncable.hsync();
+			} else {
+				syncable.hflush();
+			}
+			logCommit();
+		}
+	}
+
+	/**
+	 * Sets the group commit flusher. If set, writer marks itself dirty
+	 * after every write and leaves syncing of written data to a flusher.
+	 *
+	 * @param groupCommitFlusher the group commit flusher
+	 */
+	public void setGroupCommitFlusher(GroupCommitFlusher groupCommitFlusher) {
+		this.groupCommitFlusher = groupCommitFlusher;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (streamsHolder != null) {
+
+			// we store the possible error and rethrow it
+			// later so that we can null holder for further
+			// operations not to fail
+			IOException rethrow = null;
+			try {
+				long length = getCommitLogName() != null ? getPosition(streamsHolder) : 0;
+				streamsHolder.close();
+				outputClosed(streamsHolder);
+
+				// final length is recorded after close made it durable and
+				// before a rename, so that recovery can complete a rename
+				// interrupted by a crash without losing a watermark
+				Map<String, Long> watermarks = getWatermarks();
+				commitOutput(streamsHolder.getPath(), length, watermarks);
+				Path path = renameFile(streamsHolder.getPath());
+				commitOutput(null, 0, watermarks);
+				loggedLength = -1;
+				sequencesChanged = false;
+
+				StoreEventPublisher storeEventPublisher = getStoreEventPublisher();
+				if (storeEventPublisher != null) {
+					storeEventPublisher.publishEvent(new FileWrittenEvent(this, path));
+				}
+			} catch (IOException e) {
+				rethrow = e;
+				log.error("Error in close", e);
+			} finally {
+				streamsHolder = null;
+			}
+			if (rethrow != null) {
+				throw rethrow;
+			}
+		}
+	}
+
+	@Override
+	public void write(T entity) throws IOException {
+		write(entity, UNKNOWN_EVENT_TIME);
+	}
+
+	/**
+	 * Write an entity with a known event time. Event time is passed to a
+	 * rollover strategy before an entity is written.
+	 *
+	 * @param entity the entity to write
+	 * @param eventTime the event time in milliseconds or {@link #UNKNOWN_EVENT_TIME}
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void write(T entity, long eventTime) throws IOException {
+		write(entity, eventTime, null, -1);
+	}
+
+	/**
+	 * Write an entity with a known event time and sequence. All sequences
+	 * are expected to increase with every write, same as sequences of
+	 * a single sequence partition.
+	 *
+	 * @param entity the entity to write
+	 * @param eventTime the event time in milliseconds or {@link #UNKNOWN_EVENT_TIME}
+	 * @param sequence the sequence or -1 if not known
+	 * @throws IOException if an I/O error occurs
+	 * @see #write(Object, long, String, long)
+	 */
+	public void write(T entity, long eventTime, long sequence) throws IOException {
+		write(entity, eventTime, null, sequence);
+	}
+
+	/**
+	 * Write an entity with a known event time and a sequence within
+	 * a sequence partition, like a partition of a source an entity was read
+	 * from. Sequences are expected to increase with every write within a
+	 * partition, an entity with a sequence at or below a watermark of its
+	 * partition recovered from a commit log was already written before
+	 * a restart and is skipped.
+	 *
+	 * @param entity the entity to write
+	 * @param eventTime the event time in milliseconds or {@link #UNKNOWN_EVENT_TIME}
+	 * @param sequencePartition the sequence partition or <code>NULL</code> for a default partition
+	 * @param sequence the sequence or -1 if not known
+	 * @throws IOException if an I/O error occurs
+	 * @see #setCommitLogName(String)
+	 */
+	public synchronized void write(T entity, long eventTime, String sequencePartition, long sequence)
+			throws IOException {
+		String partition = sequencePartition != null ? sequencePartition : OutputCommitLog.Commit.DEFAULT_PARTITION;
+		if (sequence >= 0) {
+			// make sure commit log is recovered before a check
+			getOutputContext();
+			if (sequence <= getCommittedWatermark(partition)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Skipping already committed sequence=[" + sequence + "] of partition=["
+							+ partition + "]");
+				}
+				return;
+			}
+		}
+		rollBeforeWrite(streamsHolder != null, eventTime);
+		if (streamsHolder == null) {
+			streamsHolder = openOutput();
+		}
+		GroupCommitFlusher flusher = groupCommitFlusher;
+		long start = flusher != null ? getUncompressedPosition(streamsHolder) : 0;
+		OutputStream out = streamsHolder.getStream();
+		writeEntity(out, entity);
+		out.write(delimiter);
+		// only a record fully written raises a watermark
+		if (sequence >= 0) {
+			Long written = writtenSequences.get(partition);
+			if (written == null || written < sequence) {
+				writtenSequences.put(partition, sequence);
+				sequencesChanged = true;
+			}
+		}
+		setWritePosition(streamsHolder);
+		if (flusher != null) {
+			flusher.markDirty(this, getUncompressedPosition(streamsHolder) - start);
+		}
+
+		rollAfterWrite(1);
+	}
+
+	@Override
+	public synchronized void writeAll(Collection<T> entities) throws IOException {
+		if (entities.isEmpty()) {
+			return;
+		}
+		rollBeforeWrite(streamsHolder != null, UNKNOWN_EVENT_TIME);
+		if (streamsHolder == null) {
+			streamsHolder = openOutput();
+		}
+		GroupCommitFlusher flusher = groupCommitFlusher;
+		long start = flusher != null ? getUncompressedPosition(streamsHolder) : 0;
+		OutputStream out = streamsHolder.getStream();
+		for (T entity : entities) {
+			writeEntity(out, entity);
+			out.write(delimiter);
+		}
+		// position and rollover are checked once per batch, meaning
+		// a file may grow past rollover size by at most one batch
+		setWritePosition(streamsHolder);
+		if (flusher != null) {
+			flusher.markDirty(this, getUncompressedPosition(streamsHolder) - start);
+		}
+
+		rollAfterWrite(entities.size());
+	}
+
+	/**
+	 * Retires this writer so that it never opens a file again. Writes
+	 * needing to open a file fail with a {@code WriterRetiredException}
+	 * without writing anything, telling a caller who got this writer before
+	 * it was retired to get a new one. Used by partitioned writers when
+	 * a partition writer is closed and removed from its parent.
+	 */
+	protected synchronized void retire() {
+		retired = true;
+	}
+
+	@Override
+	protected void handleTimeout() {
+		try {
+			log.info("Timeout detected for this writer=[" + this +  "], closing stream");
+			flush();
+			close();
+		} catch (IOException e) {
+			log.error("Error closing", e);
+		}
+		getOutputContext().rollStrategies();
+	}
+
+	@Override
+	protected void flushTimeout() {
+		try {
+			flush();
+		} catch (IOException e) {
+			log.error("Error flushing stream", e);
+		}
+	}
+
+	/**
+	 * Records a length of a file in writing, which was just made durable,
+	 * into a commit log unless nothing has changed since a previous record.
+	 */
+	private void logCommit() throws IOException {
+		if (getCommitLogName() == null) {
+			return;
+		}
+		long length = getPosition(streamsHolder);
+		if (length != loggedLength || sequencesChanged) {
+			commitOutput(streamsHolder.getPath(), length, getWatermarks());
+			loggedLength = length;
+			sequencesChanged = false;
+		}
+	}
+
+	private StreamsHolder<OutputStream> openOutput() throws IOException {
+		if (retired) {
+			throw new WriterRetiredException("Writer for path " + getPath() + " is retired");
+		}
+		StreamsHolder<OutputStream> holder = getOutput();
+		if (getCommitLogName() != null) {
+			// a file in writing is known to a log before anything is written
+			// so that recovery never misses it, even if it's never synced
+			commitOutput(holder.getPath(), 0, getWatermarks());
+			loggedLength = 0;
+			sequencesChanged = false;
+		}
+		return holder;
+	}
+
+	/**
+	 * Gets watermarks to commit. Only sequences above a committed
+	 * watermark are written, so written sequences supersede committed
+	 * watermarks of their partitions.
+	 */
+	private Map<String, Long> getWatermarks() {
+		Map<String, Long> watermarks = new HashMap<String, Long>(getCommittedWatermarks());
+		watermarks.putAll(writtenSequences);
+		return watermarks;
+	}
+
+	/**
+	 * Write a single entity into a stream. Delimiter is written
+	 * by the caller.
+	 *
+	 * @param out the output stream
+	 * @param entity the entity to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	protected abstract void writeEntity(OutputStream out, T entity) throws IOException;
+
+}
@@ -16,8 +16,17 @@
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,10 +39,13 @@ import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.FileNamingStrategy;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.FileNamingStrategyFactory;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.EventTimeResolver;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.RolloverStrategy;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.RolloverStrategyFactory;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.LifecycleObjectSupport;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.TimeoutWheel;
 import org.springframework.context.Lifecycle;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.util.Assert;
 
 /**
@@ -60,11 +72,34 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 	/** Used partition strategy if any */
 	private final PartitionStrategy<T, K> partitionStrategy;
 
-	/** Current partition writers identified by a path */
-	private final Map<Path, DataStoreWriter<T>> writers = new ConcurrentHashMap<Path, DataStoreWriter<T>>();
+	/**
+	 * Current partition writers identified by a path. A future is placed
+	 * into a map before a writer is created so that opening and recovering
+	 * files of a new writer happens outside of a map lock.
+	 */
+	private final ConcurrentMap<Path, CompletableFuture<DataStoreWriter<T>>> writers =
+			new ConcurrentHashMap<Path, CompletableFuture<DataStoreWriter<T>>>();
+
+	/** Metrics of partition writers */
+	private final PartitionWriterMetrics metrics = new PartitionWriterMetrics();
+
+	/** Max number of open partition writers, zero for no limit */
+	private volatile int maxOpenWriters = 0;
+
+	/**
+	 * Paths of partition writers in access order, least recently
+	 * used first. Only kept when a max number of open writers is set.
+	 */
+	private final LinkedHashMap<Path, Boolean> accessOrder = new LinkedHashMap<Path, Boolean>(16, 0.75f, true);
+
+	/** Evicted writers with a close not yet completed */
+	private final Set<DataStoreWriter<T>> closing = ConcurrentHashMap.newKeySet();
 
 	/** Writer for unknown partitions */
-	private DataStoreWriter<T> fallbackWriter;
+	private volatile DataStoreWriter<T> fallbackWriter;
+
+	/** Lock guarding creation and removal of a fallback writer */
+	private final Object fallbackLock = new Object();
 
 	/** Reduced factory interface for naming strategy */
 	private FileNamingStrategyFactory<FileNamingStrategy> fileNamingStrategyFactory;
@@ -72,6 +107,28 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 	/** Reduced factory interface for rollover strategy */
 	private RolloverStrategyFactory<RolloverStrategy> rolloverStrategyFactory;
 
+	/** Resolves event times of written entities from partition keys if set */
+	private EventTimeResolver<K> eventTimeResolver;
+
+	/** Resolves sequences of written entities from partition keys if set */
+	private SequenceResolver<K> sequenceResolver;
+
+	/** Name of a commit log file of partition writers if set */
+	private String commitLogName;
+
+	private String lastFileMarkerName;
+
+	/** Max number of lookups of a writer for a write racing with a close */
+	static final int MAX_WRITE_ATTEMPTS = 10;
+
+	/** Timeout wheel shared by writers */
+	private volatile TimeoutWheel timeoutWheel;
+
+	private volatile GroupCommitFlusher groupCommitFlusher;
+
+	/** Flag telling if timeout wheel was created by this writer */
+	private boolean ownTimeoutWheel = false;
+
 	/** Idle timeout for writers */
 	private long idleTimeout;
 
@@ -81,6 +138,12 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 	/** Flush timeout for writers */
 	private long flushTimeout;
 
+	/** Max number of writers flushed or closed concurrently */
+	private int closeParallelism = 1;
+
+	/** Deadline in millis for flushing or closing all writers, zero waits indefinitely */
+	private long closeDeadline = 0;
+
 	/** Append flag for writers */
 	private boolean append = false;
 
@@ -127,20 +190,12 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 
 	@Override
 	public void flush() throws IOException {
-		for (DataStoreWriter<?> writer : writers.values()) {
-			try {
-				writer.flush();
-			} catch (Exception e) {
-				log.warn("Writer caused exception in flush", e);
-			}
-		}
-		if (fallbackWriter != null) {
-			try {
-				fallbackWriter.flush();
-			} catch (Exception e) {
-				log.warn("Writer caused exception in flush", e);
-			}
+		List<DataStoreWriter<T>> targets = getOpenWriters(false);
+		DataStoreWriter<T> writer = fallbackWriter;
+		if (writer != null) {
+			targets.add(writer);
 		}
+		flushOrClose(targets, false);
 	}
 
 	@Override
@@ -149,56 +204,145 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 		// gets exception immediately before we've
 		// managed to close underlying writers.
 		closed = true;
-		for (DataStoreWriter<?> writer : writers.values()) {
-			try {
-				writer.close();
-			} catch (Exception e) {
-				log.warn("Writer caused exception in close", e);
+		List<DataStoreWriter<T>> targets = getOpenWriters(true);
+		// evicted writers may still be waiting for an executor
+		targets.addAll(closing);
+		flushOrClose(targets, true);
+		writers.clear();
+		synchronized (accessOrder) {
+			accessOrder.clear();
+		}
+		metrics.setOpenWriters(0);
+		synchronized (fallbackLock) {
+			if (fallbackWriter != null) {
+				try {
+					fallbackWriter.close();
+				} catch (Exception e) {
+					log.warn("Writer caused exception in close", e);
+				}
+				fallbackWriter = null;
 			}
 		}
-		writers.clear();
-		if (fallbackWriter != null) {
+	}
+
+	@Override
+	public void write(T entity, K partitionKey) throws IOException {
+		if (isClosed()) {
+			throw new StoreException("This writer is already closed");
+		}
+		for (int attempt = 1; ; attempt++) {
+			DataStoreWriter<T> writer = getPartitionWriter(partitionKey);
 			try {
-				fallbackWriter.close();
-			} catch (Exception e) {
-				log.warn("Writer caused exception in close", e);
+				write(writer, entity, partitionKey);
+				return;
+			} catch (WriterRetiredException e) {
+				// writer was evicted or timed out after a lookup
+				checkAttempts(attempt, e);
 			}
-			fallbackWriter = null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void write(DataStoreWriter<T> writer, T entity, K partitionKey) throws IOException {
+		if ((eventTimeResolver != null || sequenceResolver != null) && writer instanceof AbstractDelimitedStreamWriter) {
+			long eventTime = eventTimeResolver != null ? eventTimeResolver.resolveEventTime(partitionKey)
+					: AbstractDelimitedStreamWriter.UNKNOWN_EVENT_TIME;
+			long sequence = -1;
+			String sequencePartition = null;
+			if (sequenceResolver != null) {
+				sequence = sequenceResolver.resolveSequence(partitionKey);
+				sequencePartition = sequenceResolver.resolveSequencePartition(partitionKey);
+			}
+			((AbstractDelimitedStreamWriter<T>) writer).write(entity, eventTime, sequencePartition, sequence);
+		} else {
+			writer.write(entity);
 		}
 	}
 
 	@Override
-	public synchronized void write(T entity, K partitionKey) throws IOException {
+	public void writeAll(Collection<T> entities) throws IOException {
+		List<T> list = new ArrayList<T>(entities);
+		List<K> partitionKeys = new ArrayList<K>(list.size());
+		for (T entity : list) {
+			partitionKeys.add(partitionStrategy.getPartitionKeyResolver().resolvePartitionKey(entity));
+		}
+		writeAll(list, partitionKeys);
+	}
+
+	@Override
+	public void writeAll(List<T> entities, List<K> partitionKeys) throws IOException {
 		if (isClosed()) {
 			throw new StoreException("This writer is already closed");
 		}
-		DataStoreWriter<T> writer = null;
-		Path path = null;
-
-		// double sync for destroyWriter
-		synchronized (writers) {
-			if (partitionKey != null) {
-				path = partitionStrategy.getPartitionResolver().resolvePath(partitionKey);
-				writer = writers.get(path);
-			} else if (fallbackWriter == null) {
-				fallbackWriter = writer = createWriter(getConfiguration(), null, getCodec());
+		Assert.isTrue(entities.size() == partitionKeys.size(), "Need a partition key for every entity");
+		if (eventTimeResolver != null || sequenceResolver != null) {
+			// event times or sequences are known per entity, write them one
+			// by one so that rollover can happen between any two entities
+			for (int i = 0; i < entities.size(); i++) {
+				write(entities.get(i), partitionKeys.get(i));
 			}
-			if (writer == null) {
-				writer = createWriter(getConfiguration(), path, getCodec());
-				writers.put(path, writer);
+			return;
+		}
+		// group entities per partition writer so that each
+		// underlying writer sees exactly one batch
+		Map<DataStoreWriter<T>, List<Integer>> batches = new LinkedHashMap<DataStoreWriter<T>, List<Integer>>();
+		for (int i = 0; i < entities.size(); i++) {
+			DataStoreWriter<T> writer = getPartitionWriter(partitionKeys.get(i));
+			List<Integer> batch = batches.get(writer);
+			if (batch == null) {
+				batch = new ArrayList<Integer>();
+				batches.put(writer, batch);
 			}
+			batch.add(i);
+		}
+		for (Map.Entry<DataStoreWriter<T>, List<Integer>> entry : batches.entrySet()) {
+			List<T> batch = new ArrayList<T>(entry.getValue().size());
+			for (Integer i : entry.getValue()) {
+				batch.add(entities.get(i));
+			}
+			try {
+				entry.getKey().writeAll(batch);
+			} catch (WriterRetiredException e) {
+				// nothing was written, let single writes look up a new writer
+				for (Integer i : entry.getValue()) {
+					write(entities.get(i), partitionKeys.get(i));
+				}
+			}
+		}
+	}
+
+	private static void checkAttempts(int attempt, WriterRetiredException e) {
+		if (attempt >= MAX_WRITE_ATTEMPTS) {
+			throw new StoreException("Partition writer was closed during " + attempt + " write attempts", e);
 		}
-		writer.write(entity);
 	}
 
 	@Override
 	protected void onInit() throws Exception {
 		super.onInit();
+		metrics.setWriterMemoryEstimate(configuration);
+		// track timeouts of all partitions with one wheel instead of pollers per writer
+		if (timeoutWheel == null && (idleTimeout > 0 || closeTimeout > 0 || flushTimeout > 0)
+				&& getTaskScheduler() != null && getTaskExecutor() != null) {
+			TimeoutWheel wheel = new TimeoutWheel();
+			if (getBeanFactory() != null) {
+				wheel.setBeanFactory(getBeanFactory());
+			}
+			wheel.setTaskScheduler(getTaskScheduler());
+			wheel.setTaskExecutor(getTaskExecutor());
+			wheel.setAutoStartup(false);
+			wheel.afterPropertiesSet();
+			timeoutWheel = wheel;
+			ownTimeoutWheel = true;
+		}
 	}
 
 	@Override
 	protected void doStart() {
 		super.doStart();
+		if (ownTimeoutWheel) {
+			timeoutWheel.start();
+		}
 	}
 
 	@Override
@@ -207,7 +351,7 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 		// but we want to do it also here if stopping
 		// is initiated from a lifecycle
 		closed = true;
-		for (DataStoreWriter<T> w : writers.values()) {
+		for (DataStoreWriter<T> w : getOpenWriters(false)) {
 			if (w instanceof Lifecycle) {
 				try {
 					log.info("Stopping writer=[" + w + "]");
@@ -218,10 +362,14 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 			}
 		}
 		try {
-			flush();
+			// closing a writer flushes it, a separate flush would only
+			// double the time shutdown may take with a close deadline
 			close();
 		} catch (IOException e) {
 		}
+		if (ownTimeoutWheel) {
+			timeoutWheel.stop();
+		}
 	}
 
 	/**
@@ -260,6 +408,154 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 		return rolloverStrategyFactory;
 	}
 
+	/**
+	 * Sets the event time resolver. If set, an event time of every entity
+	 * is resolved from its partition key and passed to a rollover strategy
+	 * of a partition writer, otherwise a current time is used.
+	 *
+	 * @param eventTimeResolver the new event time resolver
+	 */
+	public void setEventTimeResolver(EventTimeResolver<K> eventTimeResolver) {
+		this.eventTimeResolver = eventTimeResolver;
+	}
+
+	/**
+	 * Sets the sequence resolver. If set, a sequence of every entity is
+	 * resolved from its partition key and entities already committed
+	 * before a restart are skipped by a partition writer.
+	 *
+	 * @param sequenceResolver the new sequence resolver
+	 * @see #setCommitLogName(String)
+	 */
+	public void setSequenceResolver(SequenceResolver<K> sequenceResolver) {
+		this.sequenceResolver = sequenceResolver;
+	}
+
+	/**
+	 * Sets the name of a commit log file kept by every partition writer
+	 * in its partition path.
+	 *
+	 * @param commitLogName the commit log file name
+	 * @see AbstractDelimitedStreamWriter#setCommitLogName(String)
+	 */
+	public void setCommitLogName(String commitLogName) {
+		this.commitLogName = commitLogName;
+	}
+
+	/**
+	 * Sets the name of a last file marker kept by every partition writer
+	 * in its partition path.
+	 *
+	 * @param lastFileMarkerName the last file marker name
+	 * @see AbstractDelimitedStreamWriter#setLastFileMarkerName(String)
+	 */
+	public void setLastFileMarkerName(String lastFileMarkerName) {
+		this.lastFileMarkerName = lastFileMarkerName;
+	}
+
+	/**
+	 * Sets the timeout wheel shared by partition writers. If not set, a
+	 * wheel is created when any of the timeouts is enabled.
+	 *
+	 * @param timeoutWheel the timeout wheel
+	 */
+	public void setTimeoutWheel(TimeoutWheel timeoutWheel) {
+		this.timeoutWheel = timeoutWheel;
+	}
+
+	/**
+	 * Sets the group commit flusher passed to delimited partition
+	 * writers.
+	 *
+	 * @param groupCommitFlusher the group commit flusher
+	 */
+	public void setGroupCommitFlusher(GroupCommitFlusher groupCommitFlusher) {
+		this.groupCommitFlusher = groupCommitFlusher;
+	}
+
+	/**
+	 * Sets the max number of open partition writers. When a new partition
+	 * writer would exceed this number, least recently used writers are
+	 * evicted and closed with a task executor. Zero, which is a default,
+	 * doesn't limit open writers.
+	 *
+	 * @param maxOpenWriters the max open writers
+	 */
+	public void setMaxOpenWriters(int maxOpenWriters) {
+		this.maxOpenWriters = maxOpenWriters;
+	}
+
+	/**
+	 * Gets the metrics of partition writers.
+	 *
+	 * @return the partition writer metrics
+	 */
+	public PartitionWriterMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Gets the total number of bytes written by partition writers, before
+	 * compression. Includes files currently written.
+	 *
+	 * @return the uncompressed byte count
+	 */
+	public long getUncompressedBytes() {
+		return metrics.getClosedUncompressedBytes() + getCurrentBytes(false);
+	}
+
+	/**
+	 * Gets the total number of bytes stored by partition writers, after
+	 * compression. Includes files currently written.
+	 *
+	 * @return the compressed byte count
+	 */
+	public long getCompressedBytes() {
+		return metrics.getClosedCompressedBytes() + getCurrentBytes(true);
+	}
+
+	/**
+	 * Gets bytes of files currently written by open writers and by
+	 * evicted writers not yet closed.
+	 */
+	private long getCurrentBytes(boolean compressed) {
+		List<DataStoreWriter<T>> targets = getOpenWriters(false);
+		targets.addAll(closing);
+		long bytes = 0;
+		for (DataStoreWriter<T> writer : targets) {
+			if (writer instanceof AbstractDataStreamWriter) {
+				AbstractDataStreamWriter streamWriter = (AbstractDataStreamWriter) writer;
+				bytes += compressed ? streamWriter.getCurrentCompressedBytes()
+						: streamWriter.getCurrentUncompressedBytes();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Sets the max number of partition writers flushed or closed
+	 * concurrently. Writers are handled by a calling thread together
+	 * with tasks run by a {@code TaskExecutor}. Default is 1, meaning
+	 * writers are handled sequentially by a calling thread.
+	 *
+	 * @param closeParallelism the close parallelism
+	 */
+	public void setCloseParallelism(int closeParallelism) {
+		this.closeParallelism = closeParallelism < 1 ? 1 : closeParallelism;
+	}
+
+	/**
+	 * Sets the deadline for flushing or closing all partition writers.
+	 * Writers not yet handled when a deadline is reached are skipped and
+	 * ones being closed are left to finish in a background. Zero, which
+	 * is a default, waits until all writers are handled.
+	 *
+	 * @param closeDeadline the close deadline in millis
+	 */
+	public void setCloseDeadline(long closeDeadline) {
+		this.closeDeadline = closeDeadline;
+	}
+
 	/**
 	 * Sets the idle timeout.
 	 *
@@ -474,6 +770,248 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 	 */
 	protected abstract DataStoreWriter<T> createWriter(Configuration configuration, Path basePath, CodecInfo codec);
 
+	/**
+	 * Configures a newly created partition writer with settings from this
+	 * writer, initializes and starts it. Meant to be used by subclasses
+	 * from {@link #createWriter(Configuration, Path, CodecInfo)}.
+	 *
+	 * @param writer the writer to configure
+	 */
+	protected void configureWriter(AbstractDataStreamWriter writer) {
+		if (getBeanFactory() != null) {
+			writer.setBeanFactory(getBeanFactory());
+		}
+		writer.setPhase(getPhase());
+		if (getTaskExecutor() != null) {
+			writer.setTaskExecutor(getTaskExecutor());
+		}
+		if (getTaskScheduler() != null) {
+			writer.setTaskScheduler(getTaskScheduler());
+		}
+		writer.setAutoStartup(isAutoStartup());
+		if (getStoreEventPublisher() != null) {
+			writer.setStoreEventPublisher(getStoreEventPublisher());
+		}
+		if (getFileNamingStrategyFactory() != null) {
+			writer.setFileNamingStrategy(getFileNamingStrategyFactory().createInstance());
+		}
+		if (getRolloverStrategyFactory() != null) {
+			writer.setRolloverStrategy(getRolloverStrategyFactory().createInstance());
+		}
+		if (timeoutWheel != null) {
+			writer.setTimeoutWheel(timeoutWheel);
+		}
+		if (groupCommitFlusher != null && writer instanceof AbstractDelimitedStreamWriter) {
+			((AbstractDelimitedStreamWriter<?>) writer).setGroupCommitFlusher(groupCommitFlusher);
+		}
+		writer.setIdleTimeout(getIdleTimeout());
+		writer.setCloseTimeout(getCloseTimeout());
+		writer.setFlushTimeout(getFlushTimeout());
+		writer.setOverwrite(isOverwrite());
+		writer.setAppendable(isAppendable());
+		writer.setSyncable(isSyncable());
+		writer.setInWritingPrefix(getInWritingPrefix());
+		writer.setInWritingSuffix(getInWritingSuffix());
+		writer.setCommitLogName(commitLogName);
+		writer.setLastFileMarkerName(lastFileMarkerName);
+		writer.setMaxOpenAttempts(getMaxOpenAttempts());
+		writer.setPartitionWriterMetrics(metrics);
+		writer.afterPropertiesSet();
+		writer.start();
+	}
+
+	/**
+	 * Flushes or closes writers using up to a close parallelism number of
+	 * threads and returns when all writers are handled or a deadline passes.
+	 */
+	private void flushOrClose(List<DataStoreWriter<T>> targets, final boolean close) {
+		long deadline = closeDeadline > 0 ? System.currentTimeMillis() + closeDeadline : Long.MAX_VALUE;
+		ParallelWriterTask<DataStoreWriter<T>> task = new ParallelWriterTask<DataStoreWriter<T>>() {
+
+			@Override
+			protected void run(DataStoreWriter<T> writer) throws Exception {
+				if (close) {
+					writer.close();
+				} else {
+					writer.flush();
+				}
+			}
+
+			@Override
+			protected void failed(DataStoreWriter<T> writer, Exception e) {
+				log.warn("Writer caused exception in " + (close ? "close" : "flush"), e);
+			}
+		};
+		if (!task.runAll(targets, closeParallelism, deadline, getTaskExecutor())) {
+			log.warn("Deadline of " + closeDeadline + "ms reached before all writers were "
+					+ (close ? "closed" : "flushed"));
+		}
+	}
+
+	/**
+	 * Gets a writer for a partition key creating a new one if needed. A
+	 * <code>NULL</code> partition key resolves to a fallback writer.
+	 * Writers for different paths are looked up and created without
+	 * a common lock. A thread placing a future for a path into the writers
+	 * map creates a writer without holding any lock, while other threads
+	 * wanting a writer for a same path wait for that future.
+	 *
+	 * @param partitionKey the partition key
+	 * @return the data store writer
+	 */
+	private DataStoreWriter<T> getPartitionWriter(K partitionKey) {
+		if (partitionKey == null) {
+			return getFallbackWriter();
+		}
+		Path path = partitionStrategy.getPartitionResolver().resolvePath(partitionKey);
+		if (maxOpenWriters > 0) {
+			synchronized (accessOrder) {
+				accessOrder.put(path, Boolean.TRUE);
+			}
+		}
+		CompletableFuture<DataStoreWriter<T>> future = writers.get(path);
+		if (future == null) {
+			CompletableFuture<DataStoreWriter<T>> created = new CompletableFuture<DataStoreWriter<T>>();
+			future = writers.putIfAbsent(path, created);
+			if (future == null) {
+				return createPartitionWriter(path, created);
+			}
+		}
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new StoreException("Error creating writer for path " + path, e.getCause());
+		}
+	}
+
+	private DataStoreWriter<T> createPartitionWriter(Path path, CompletableFuture<DataStoreWriter<T>> future) {
+		DataStoreWriter<T> writer;
+		try {
+			writer = createWriter(getConfiguration(), path, getCodec());
+		} catch (RuntimeException e) {
+			// let a next write try again
+			writers.remove(path, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+		metrics.created();
+		future.complete(writer);
+		int maxOpenWriters = this.maxOpenWriters;
+		if (maxOpenWriters > 0 && writers.size() > maxOpenWriters) {
+			evictWriters(maxOpenWriters, path);
+		}
+		metrics.setOpenWriters(writers.size());
+		return writer;
+	}
+
+	/**
+	 * Gets writers created so far, optionally waiting for writers
+	 * still being created.
+	 */
+	private List<DataStoreWriter<T>> getOpenWriters(boolean wait) {
+		List<DataStoreWriter<T>> open = new ArrayList<DataStoreWriter<T>>(writers.size());
+		for (CompletableFuture<DataStoreWriter<T>> future : writers.values()) {
+			DataStoreWriter<T> writer = wait ? await(future) : getNow(future);
+			if (writer != null) {
+				open.add(writer);
+			}
+		}
+		return open;
+	}
+
+	private static <T> DataStoreWriter<T> getNow(CompletableFuture<DataStoreWriter<T>> future) {
+		return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+	}
+
+	private static <T> DataStoreWriter<T> await(CompletableFuture<DataStoreWriter<T>> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			// creation failed and was already reported to its caller
+			return null;
+		}
+	}
+
+	/**
+	 * Evicts least recently used writers until a max number of open writers
+	 * is reached. Writers still being created are skipped. Evicted writers
+	 * are closed with a task executor so that a write creating a new writer
+	 * doesn't wait for other files to be closed.
+	 */
+	private void evictWriters(int maxOpenWriters, Path keep) {
+		List<DataStoreWriter<T>> evicted = new ArrayList<DataStoreWriter<T>>();
+		synchronized (accessOrder) {
+			Iterator<Path> iterator = accessOrder.keySet().iterator();
+			while (writers.size() > maxOpenWriters && iterator.hasNext()) {
+				Path path = iterator.next();
+				CompletableFuture<DataStoreWriter<T>> future = writers.get(path);
+				if (future == null) {
+					// writer already closed or destroyed
+					iterator.remove();
+					continue;
+				}
+				DataStoreWriter<T> writer = getNow(future);
+				if (writer == null || path.equals(keep)) {
+					continue;
+				}
+				iterator.remove();
+				if (writers.remove(path, future)) {
+					metrics.evicted();
+					if (log.isDebugEnabled()) {
+						log.debug("Evicting writer with path=[" + path + "], max open writers " + maxOpenWriters);
+					}
+					evicted.add(writer);
+				}
+			}
+		}
+		for (DataStoreWriter<T> writer : evicted) {
+			closeEvicted(writer);
+		}
+	}
+
+	private void closeEvicted(final DataStoreWriter<T> writer) {
+		closing.add(writer);
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					writer.close();
+				} catch (Exception e) {
+					log.warn("Writer caused exception in close", e);
+				} finally {
+					closing.remove(writer);
+				}
+			}
+		};
+		TaskExecutor taskExecutor = getTaskExecutor();
+		if (taskExecutor != null) {
+			try {
+				taskExecutor.execute(task);
+				return;
+			} catch (RuntimeException e) {
+				log.warn("Unable to close evicted writer asynchronously, closing it in place", e);
+			}
+		}
+		task.run();
+	}
+
+	private DataStoreWriter<T> getFallbackWriter() {
+		DataStoreWriter<T> writer = fallbackWriter;
+		if (writer == null) {
+			synchronized (fallbackLock) {
+				writer = fallbackWriter;
+				if (writer == null) {
+					fallbackWriter = writer = createWriter(getConfiguration(), null, getCodec());
+				}
+			}
+		}
+		return writer;
+	}
+
 	/**
 	 * Destroys a writer with a given {@link Path} if exist.
 	 * This method expects subclass to close and flush writer
@@ -486,13 +1024,41 @@ public abstract class AbstractPartitionDataStoreWriter<T, K> extends LifecycleOb
 		if (path == null) {
 			return;
 		}
-		// sync with writer create in write()
-		synchronized (writers) {
-			DataStoreWriter<T> writer = writers.remove(path);
-			if (writer != null) {
-				log.info("Removed writer=[" + writer + "]");
-			} else {
-				log.info("Writer with path=[" + path + "] didn't exist anymore");
+		// atomic against writer create in write()
+		CompletableFuture<DataStoreWriter<T>> future = writers.remove(path);
+		forgetAccess(path);
+		if (future != null) {
+			log.info("Removed writer=[" + getNow(future) + "]");
+		} else {
+			log.info("Writer with path=[" + path + "] didn't exist anymore");
+		}
+		metrics.setOpenWriters(writers.size());
+	}
+
+	/**
+	 * Destroys a given writer with a given {@link Path} if it still is the
+	 * writer for a path. A writer already replaced by a new writer for a
+	 * same path, i.e. after being evicted, is left in place.
+	 *
+	 * @param path the path
+	 * @param writer the writer
+	 */
+	protected void destroyWriter(Path path, DataStoreWriter<T> writer) {
+		if (path == null) {
+			return;
+		}
+		CompletableFuture<DataStoreWriter<T>> future = writers.get(path);
+		if (future != null && getNow(future) == writer && writers.remove(path, future)) {
+			forgetAccess(path);
+			log.info("Removed writer=[" + writer + "]");
+		}
+		metrics.setOpenWriters(writers.size());
+	}
+
+	private void forgetAccess(Path path) {
+		if (maxOpenWriters > 0) {
+			synchronized (accessOrder) {
+				accessOrder.remove(path);
 			}
 		}
 	}
@@ -26,11 +26,9 @@ import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.SequenceFile.Writer;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.util.ReflectionUtils;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.OutputStoreObjectSupport;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.SequenceFileWriterHolder;
-import org.springframework.util.ClassUtils;
 
 /**
  * A {@code AbstractSequenceFileWriter} is a base implementation handling
@@ -73,9 +71,7 @@ public abstract class AbstractSequenceFileWriter extends OutputStoreObjectSuppor
 			holder = new SequenceFileWriterHolder<SequenceFile.Writer>(writer, p);
 		}
 		else {
-			Class<?> clazz = ClassUtils.resolveClassName(codecInfo.getCodecClass(), getClass().getClassLoader());
-			CompressionCodec compressionCodec = (CompressionCodec) ReflectionUtils.newInstance(clazz,
-					getConfiguration());
+			CompressionCodec compressionCodec = getCompressionCodec();
 			writer = SequenceFile.createWriter(fs,
 					getConfiguration(), getResolvedPath(),
 					Text.class, Text.class, CompressionType.RECORD, compressionCodec);
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.StoreUtils;
+
+/**
+ * A {@code ByteArrayFileWriter} is a {@code DataStoreWriter} implementation
+ * able to write {@code byte[]}s into raw hdfs files followed by a delimiter.
+ * Entities are written as is without any charset conversion, making this
+ * writer a byte oriented counterpart of {@link TextFileWriter}.
+ *
+ */
+public class ByteArrayFileWriter extends AbstractDelimitedStreamWriter<byte[]> {
+
+	/**
+	 * Instantiates a new byte array file writer.
+	 *
+	 * @param configuration the hadoop configuration
+	 * @param basePath the hdfs path
+	 * @param codec the compression codec info
+	 */
+	public ByteArrayFileWriter(Configuration configuration, Path basePath, CodecInfo codec) {
+		this(configuration, basePath, codec, StoreUtils.getUTF8DefaultDelimiter());
+	}
+
+	/**
+	 * Instantiates a new byte array file writer.
+	 *
+	 * @param configuration the hadoop configuration
+	 * @param basePath the hdfs path
+	 * @param codec the compression codec info
+	 * @param delimiter the delimiter
+	 */
+	public ByteArrayFileWriter(Configuration configuration, Path basePath, CodecInfo codec, byte[] delimiter) {
+		super(configuration, basePath, codec, delimiter);
+	}
+
+	@Override
+	protected void writeEntity(OutputStream out, byte[] entity) throws IOException {
+		out.write(entity);
+	}
+
+}
@@ -16,6 +16,8 @@
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
@@ -85,14 +87,16 @@ public class DelimitedTextFileWriter implements DataStoreWriter<List<String>> {
 
 	@Override
 	public void write(final List<String> entity) throws IOException {
-		StringBuilder buf = new StringBuilder();
-		for (int i = 0; i < entity.size(); i++) {
-			buf.append(entity.get(i));
-			if (i < (entity.size() - 1)) {
-				buf.append(fieldDelimiter);
-			}
+		textFileWriter.write(toLine(entity));
+	}
+
+	@Override
+	public void writeAll(Collection<List<String>> entities) throws IOException {
+		List<String> lines = new ArrayList<String>(entities.size());
+		for (List<String> entity : entities) {
+			lines.add(toLine(entity));
 		}
-		textFileWriter.write(buf.toString());
+		textFileWriter.writeAll(lines);
 	}
 
 	@Override
@@ -105,4 +109,15 @@ public class DelimitedTextFileWriter implements DataStoreWriter<List<String>> {
 		textFileWriter.close();
 	}
 
+	private String toLine(List<String> entity) {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < entity.size(); i++) {
+			buf.append(entity.get(i));
+			if (i < (entity.size() - 1)) {
+				buf.append(fieldDelimiter);
+			}
+		}
+		return buf.toString();
+	}
+
 }
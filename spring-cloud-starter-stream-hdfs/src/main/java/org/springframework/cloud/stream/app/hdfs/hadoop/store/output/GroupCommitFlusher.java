@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.LifecycleObjectSupport;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.util.Assert;
+
+/**
+ * A group commit flusher issuing {@code hflush} or {@code hsync} for all
+ * writers written since a previous commit, in parallel and with a single
+ * round per commit interval instead of one per write.
+ * <p>
+ * Writers mark themselves dirty after every write. Each commit takes the
+ * current set of dirty writers together with a future which completes when
+ * all of them are synced. Callers wanting to know when their data is
+ * durable wait on {@link #getCommitFuture()} after a write. A commit is
+ * triggered on a fixed interval, or earlier when a number of bytes
+ * written since a previous commit reaches a byte threshold.
+ * <p>
+ * Commits are run by a {@code TaskExecutor}, the {@code TaskScheduler} only
+ * requests a commit on an interval so that a slow sync never holds up other
+ * tasks sharing a scheduler. Commits are run one at a time by at most one
+ * executor task, so a commit future completes only after all previous
+ * commits have completed. Writers which failed to sync are
+ * carried over to a next commit and a current commit future completes
+ * exceptionally.
+ *
+ */
+public class GroupCommitFlusher extends LifecycleObjectSupport {
+
+	private final static Log log = LogFactory.getLog(GroupCommitFlusher.class);
+
+	private volatile long interval;
+
+	private volatile long bytesThreshold;
+
+	private volatile boolean hsync;
+
+	private volatile int parallelism = 1;
+
+	/** Dirty writers of an open commit, guarded by lock */
+	private Set<AbstractDelimitedStreamWriter<?>> dirty = new LinkedHashSet<AbstractDelimitedStreamWriter<?>>();
+
+	/** Future of an open commit, guarded by lock */
+	private CompletableFuture<Void> commitFuture = new CompletableFuture<Void>();
+
+	/** Bytes written into an open commit, guarded by lock */
+	private long dirtyBytes;
+
+	private final Object lock = new Object();
+
+	private final ReentrantLock commitLock = new ReentrantLock();
+
+	/** Flag telling a commit is wanted by an interval or a bytes threshold */
+	private final AtomicBoolean commitRequested = new AtomicBoolean();
+
+	/** Flag telling a commit task is submitted or running */
+	private final AtomicBoolean commitScheduled = new AtomicBoolean();
+
+	private volatile ScheduledFuture<?> intervalTask;
+
+	/** Runs commits while requested, only one such task exists at a time */
+	private final Runnable commitTask = new Runnable() {
+
+		@Override
+		public void run() {
+			do {
+				try {
+					while (commitRequested.getAndSet(false)) {
+						commit();
+					}
+				} finally {
+					commitScheduled.set(false);
+				}
+				// a request may have arrived after last check but before
+				// flag was cleared, in that case we continue ourselves
+			} while (commitRequested.get() && commitScheduled.compareAndSet(false, true));
+		}
+	};
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		if (isEnabled()) {
+			Assert.notNull(getTaskScheduler(), "TaskScheduler must be set");
+			Assert.notNull(getTaskExecutor(), "TaskExecutor must be set");
+		}
+	}
+
+	@Override
+	protected void doStart() {
+		if (isEnabled()) {
+			intervalTask = getTaskScheduler().scheduleAtFixedRate(new Runnable() {
+
+				@Override
+				public void run() {
+					requestCommit();
+				}
+			}, interval);
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		ScheduledFuture<?> task = intervalTask;
+		if (task != null) {
+			task.cancel(false);
+		}
+		intervalTask = null;
+		// release anyone still waiting
+		commit();
+	}
+
+	/**
+	 * Sets the commit interval in millis. Group commit is
+	 * disabled unless interval is positive. Default is 0.
+	 *
+	 * @param interval the commit interval
+	 */
+	public void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * Sets the number of bytes written after which a commit is started
+	 * without waiting for a next interval. Disabled if not positive,
+	 * which is a default.
+	 *
+	 * @param bytesThreshold the bytes threshold
+	 */
+	public void setBytesThreshold(long bytesThreshold) {
+		this.bytesThreshold = bytesThreshold;
+	}
+
+	/**
+	 * Sets if a commit uses {@code hsync} instead of {@code hflush}.
+	 * With {@code hflush} data is visible to new readers and survives a
+	 * failure of a client, {@code hsync} additionally makes datanodes to
+	 * persist data to disk. Default is <code>FALSE</code>.
+	 *
+	 * @param hsync the hsync flag
+	 */
+	public void setHsync(boolean hsync) {
+		this.hsync = hsync;
+	}
+
+	/**
+	 * Sets the max number of writers synced concurrently, using
+	 * a commit thread together with tasks run by a {@code TaskExecutor}.
+	 * Default is 1.
+	 *
+	 * @param parallelism the commit parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "Parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Checks if group commit is enabled.
+	 *
+	 * @return true, if commit interval is positive
+	 */
+	public boolean isEnabled() {
+		return interval > 0;
+	}
+
+	/**
+	 * Gets the future of an open commit. Future completes when all data
+	 * written before this method was called is synced.
+	 *
+	 * @return the commit future
+	 */
+	public CompletableFuture<Void> getCommitFuture() {
+		synchronized (lock) {
+			return commitFuture;
+		}
+	}
+
+	/**
+	 * Marks a writer dirty after a write.
+	 *
+	 * @param writer the writer
+	 * @param bytes the number of bytes written
+	 */
+	void markDirty(AbstractDelimitedStreamWriter<?> writer, long bytes) {
+		boolean trigger;
+		synchronized (lock) {
+			dirty.add(writer);
+			dirtyBytes += bytes;
+			trigger = bytesThreshold > 0 && dirtyBytes >= bytesThreshold;
+		}
+		if (trigger && isRunning() && !commitRequested.get()) {
+			requestCommit();
+		}
+	}
+
+	/**
+	 * Requests a commit to be run by a {@code TaskExecutor}, submitting
+	 * a commit task unless one is already submitted or running.
+	 */
+	private void requestCommit() {
+		commitRequested.set(true);
+		if (commitScheduled.compareAndSet(false, true)) {
+			try {
+				getTaskExecutor().execute(commitTask);
+			} catch (TaskRejectedException e) {
+				commitScheduled.set(false);
+				log.debug("Commit rejected, waiting for a next interval", e);
+			}
+		}
+	}
+
+	/**
+	 * Syncs all writers marked dirty before a call and completes
+	 * their commit future.
+	 */
+	void commit() {
+		commitLock.lock();
+		CompletableFuture<Void> future = null;
+		try {
+			Set<AbstractDelimitedStreamWriter<?>> writers;
+			synchronized (lock) {
+				writers = dirty;
+				future = commitFuture;
+				dirty = new LinkedHashSet<AbstractDelimitedStreamWriter<?>>();
+				commitFuture = new CompletableFuture<Void>();
+				dirtyBytes = 0;
+			}
+			if (writers.isEmpty()) {
+				future.complete(null);
+				return;
+			}
+			final List<AbstractDelimitedStreamWriter<?>> failed = new ArrayList<AbstractDelimitedStreamWriter<?>>();
+			final boolean sync = hsync;
+			ParallelWriterTask<AbstractDelimitedStreamWriter<?>> task = new ParallelWriterTask<AbstractDelimitedStreamWriter<?>>() {
+
+				@Override
+				protected void run(AbstractDelimitedStreamWriter<?> writer) throws Exception {
+					writer.sync(sync);
+				}
+
+				@Override
+				protected void failed(AbstractDelimitedStreamWriter<?> writer, Exception e) {
+					log.warn("Writer caused exception in group commit", e);
+					synchronized (failed) {
+						failed.add(writer);
+					}
+				}
+			};
+			task.runAll(writers, parallelism, Long.MAX_VALUE, getTaskExecutor());
+			if (failed.isEmpty()) {
+				future.complete(null);
+			} else {
+				synchronized (lock) {
+					dirty.addAll(failed);
+				}
+				future.completeExceptionally(new IOException("Group commit failed for " + failed.size() + " writers"));
+			}
+		} catch (RuntimeException e) {
+			log.error("Error in group commit", e);
+			if (future != null) {
+				future.completeExceptionally(e);
+			}
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+}
@@ -17,6 +17,7 @@ package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,7 +28,6 @@ import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.FileWrittenEvent;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.StoreEventPublisher;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.OutputContext;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.StreamsHolder;
 
 /**
@@ -71,6 +71,7 @@ public class OutputStreamWriter extends AbstractDataStreamWriter implements Data
 	public synchronized void close() throws IOException {
 		if (streamsHolder != null) {
 			streamsHolder.close();
+			outputClosed(streamsHolder);
 
 			Path path = renameFile(streamsHolder.getPath());
 
@@ -85,21 +86,36 @@ public class OutputStreamWriter extends AbstractDataStreamWriter implements Data
 
 	@Override
 	public synchronized void write(byte[] entity) throws IOException {
+		rollBeforeWrite(streamsHolder != null, UNKNOWN_EVENT_TIME);
 		if (streamsHolder == null) {
 			streamsHolder = getOutput();
 		}
 		OutputStream out = streamsHolder.getStream();
 		out.write(entity);
 
-		setWritePosition(getPosition(streamsHolder));
+		setWritePosition(streamsHolder);
 
-		OutputContext context = getOutputContext();
-		if (context.getRolloverState()) {
-			log.info("After write, rollover state is true");
-			close();
-			context.rollStrategies();
+		rollAfterWrite(1);
+
+	}
+
+	@Override
+	public synchronized void writeAll(Collection<byte[]> entities) throws IOException {
+		if (entities.isEmpty()) {
+			return;
+		}
+		rollBeforeWrite(streamsHolder != null, UNKNOWN_EVENT_TIME);
+		if (streamsHolder == null) {
+			streamsHolder = getOutput();
 		}
+		OutputStream out = streamsHolder.getStream();
+		for (byte[] entity : entities) {
+			out.write(entity);
+		}
+
+		setWritePosition(streamsHolder);
 
+		rollAfterWrite(entities.size());
 	}
 
 	@Override
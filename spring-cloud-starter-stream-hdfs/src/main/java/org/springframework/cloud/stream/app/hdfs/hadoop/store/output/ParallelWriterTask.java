@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * Runs an operation against a number of writers using a calling thread
+ * together with tasks run by a {@code TaskExecutor}. Workers pull writers
+ * from a shared queue until it is empty or a deadline has passed.
+ *
+ * @param <W> the type of a writer
+ */
+abstract class ParallelWriterTask<W> {
+
+	/**
+	 * Runs an operation against a single writer.
+	 *
+	 * @param writer the writer
+	 * @throws Exception if operation failed
+	 */
+	protected abstract void run(W writer) throws Exception;
+
+	/**
+	 * Notifies that an operation failed for a writer.
+	 *
+	 * @param writer the writer
+	 * @param e the exception
+	 */
+	protected abstract void failed(W writer, Exception e);
+
+	/**
+	 * Runs an operation against all writers and returns when all writers
+	 * are handled or a deadline passes.
+	 *
+	 * @param writers the writers
+	 * @param parallelism the max number of concurrent workers
+	 * @param deadline the deadline in millis or {@code Long.MAX_VALUE}
+	 * @param executor the task executor, may be <code>NULL</code>
+	 * @return true, if all writers were handled before a deadline
+	 */
+	boolean runAll(Collection<W> writers, int parallelism, final long deadline, TaskExecutor executor) {
+		final Queue<W> queue = new ConcurrentLinkedQueue<W>(writers);
+		int workers = Math.min(parallelism, queue.size());
+		boolean completed = true;
+		if (workers > 1 && executor != null) {
+			final CountDownLatch latch = new CountDownLatch(workers - 1);
+			Runnable worker = new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						drain(queue, deadline);
+					} finally {
+						latch.countDown();
+					}
+				}
+			};
+			for (int i = 1; i < workers; i++) {
+				try {
+					executor.execute(worker);
+				} catch (TaskRejectedException e) {
+					// calling thread takes over remaining writers
+					latch.countDown();
+				}
+			}
+			drain(queue, deadline);
+			try {
+				if (deadline == Long.MAX_VALUE) {
+					latch.await();
+				} else {
+					completed = latch.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				completed = false;
+			}
+		} else {
+			drain(queue, deadline);
+		}
+		return completed && queue.isEmpty();
+	}
+
+	private void drain(Queue<W> queue, long deadline) {
+		W writer;
+		while (System.currentTimeMillis() < deadline && (writer = queue.poll()) != null) {
+			try {
+				run(writer);
+			} catch (Exception e) {
+				failed(writer, e);
+			}
+		}
+	}
+
+}
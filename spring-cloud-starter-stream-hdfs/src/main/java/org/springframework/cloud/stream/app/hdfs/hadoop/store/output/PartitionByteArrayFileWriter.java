@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.PartitionDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
+
+/**
+ * Implementation of a {@link PartitionDataStoreWriter} writing delimited
+ * {@code byte[]} data using a partitioning.
+ *
+ * @param <K> the type of a partition key
+ */
+public class PartitionByteArrayFileWriter<K> extends AbstractPartitionDataStoreWriter<byte[], K> {
+
+	/**
+	 * Instantiates a new byte array file partitioned writer.
+	 *
+	 * @param configuration the hadoop configuration
+	 * @param basePath the hdfs path
+	 * @param codec the compression codec info
+	 * @param partitionStrategy the partition strategy
+	 */
+	public PartitionByteArrayFileWriter(Configuration configuration, Path basePath, CodecInfo codec,
+			PartitionStrategy<byte[], K> partitionStrategy) {
+		super(configuration, basePath, codec, partitionStrategy);
+	}
+
+	@Override
+	protected DataStoreWriter<byte[]> createWriter(Configuration configuration, final Path path, CodecInfo codec) {
+		ByteArrayFileWriter writer = new ByteArrayFileWriter(getConfiguration(), path != null ? new Path(getBasePath(), path) : getBasePath(), codec) {
+			@Override
+			public synchronized void close() throws IOException {
+				// catch close() and destroy from parent
+				// this needs to happen before we pass
+				// close() to writer, a writer removed from
+				// parent is retired so that a write racing
+				// with close gets a new writer
+				destroyWriter(path, this);
+				if (path != null) {
+					retire();
+				}
+				super.close();
+				stop();
+			}
+		};
+		configureWriter(writer);
+		return writer;
+	}
+
+}
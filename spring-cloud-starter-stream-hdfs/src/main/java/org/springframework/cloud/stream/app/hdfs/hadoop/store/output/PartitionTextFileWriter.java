@@ -55,43 +55,18 @@ public class PartitionTextFileWriter<K> extends AbstractPartitionDataStoreWriter
 			public synchronized void close() throws IOException {
 				// catch close() and destroy from parent
 				// this needs to happen before we pass
-				// close() to writer
-				destroyWriter(path);
+				// close() to writer, a writer removed from
+				// parent is retired so that a write racing
+				// with close gets a new writer
+				destroyWriter(path, this);
+				if (path != null) {
+					retire();
+				}
 				super.close();
 				stop();
 			}
 		};
-		if (getBeanFactory() != null) {
-			writer.setBeanFactory(getBeanFactory());
-		}
-		writer.setPhase(getPhase());
-		if (getTaskExecutor() != null) {
-			writer.setTaskExecutor(getTaskExecutor());
-		}
-		if (getTaskScheduler() != null) {
-			writer.setTaskScheduler(getTaskScheduler());
-		}
-		writer.setAutoStartup(isAutoStartup());
-		if (getStoreEventPublisher() != null) {
-			writer.setStoreEventPublisher(getStoreEventPublisher());
-		}
-		if (getFileNamingStrategyFactory() != null) {
-			writer.setFileNamingStrategy(getFileNamingStrategyFactory().createInstance());
-		}
-		if (getRolloverStrategyFactory() != null) {
-			writer.setRolloverStrategy(getRolloverStrategyFactory().createInstance());
-		}
-		writer.setIdleTimeout(getIdleTimeout());
-		writer.setCloseTimeout(getCloseTimeout());
-		writer.setFlushTimeout(getFlushTimeout());
-		writer.setOverwrite(isOverwrite());
-		writer.setAppendable(isAppendable());
-		writer.setSyncable(isSyncable());
-		writer.setInWritingPrefix(getInWritingPrefix());
-		writer.setInWritingSuffix(getInWritingSuffix());
-		writer.setMaxOpenAttempts(getMaxOpenAttempts());
-		writer.afterPropertiesSet();
-		writer.start();
+		configureWriter(writer);
 		return writer;
 	}
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Metrics of partition writers opened by a partitioned writer.
+ * <p>
+ * Memory of open writers is estimated from a worst case buffering of a
+ * hdfs client output stream, which is a write packet size times a max
+ * number of packets in flight. Buffers of compression codecs are not
+ * included.
+ *
+ */
+public class PartitionWriterMetrics {
+
+	/** Hdfs client write packet size key */
+	static final String WRITE_PACKET_SIZE_KEY = "dfs.client-write-packet-size";
+
+	/** Hdfs client max packets in flight key */
+	static final String MAX_PACKETS_IN_FLIGHT_KEY = "dfs.client.write.max-packets-in-flight";
+
+	private final LongAdder createdWriters = new LongAdder();
+
+	private final LongAdder evictedWriters = new LongAdder();
+
+	private final LongAdder closedUncompressedBytes = new LongAdder();
+
+	private final LongAdder closedCompressedBytes = new LongAdder();
+
+	private volatile int openWriters;
+
+	private volatile long writerMemoryEstimate;
+
+	void created() {
+		createdWriters.increment();
+	}
+
+	void evicted() {
+		evictedWriters.increment();
+	}
+
+	void outputClosed(long uncompressedBytes, long compressedBytes) {
+		closedUncompressedBytes.add(uncompressedBytes);
+		closedCompressedBytes.add(compressedBytes);
+	}
+
+	void setOpenWriters(int openWriters) {
+		this.openWriters = openWriters;
+	}
+
+	void setWriterMemoryEstimate(Configuration configuration) {
+		if (configuration != null) {
+			long packetSize = configuration.getInt(WRITE_PACKET_SIZE_KEY, 64 * 1024);
+			long packets = configuration.getInt(MAX_PACKETS_IN_FLIGHT_KEY, 80);
+			writerMemoryEstimate = packetSize * packets;
+		}
+	}
+
+	/**
+	 * Gets the number of partition writers created.
+	 *
+	 * @return the created writer count
+	 */
+	public long getCreatedWriters() {
+		return createdWriters.sum();
+	}
+
+	/**
+	 * Gets the number of partition writers closed because a max
+	 * number of open writers was reached.
+	 *
+	 * @return the evicted writer count
+	 */
+	public long getEvictedWriters() {
+		return evictedWriters.sum();
+	}
+
+	/**
+	 * Gets the ratio of evicted to created writers. Ratio closing to one
+	 * means nearly every new partition writer closes another one and
+	 * a max number of open writers is too low for a data.
+	 *
+	 * @return the eviction ratio
+	 */
+	public double getEvictionRatio() {
+		long created = getCreatedWriters();
+		return created > 0 ? (double) getEvictedWriters() / created : 0;
+	}
+
+	/**
+	 * Gets the number of currently open partition writers.
+	 *
+	 * @return the open writer count
+	 */
+	public int getOpenWriters() {
+		return openWriters;
+	}
+
+	/**
+	 * Gets the estimated memory of a single open writer in bytes.
+	 *
+	 * @return the estimated memory per writer
+	 */
+	public long getWriterMemoryEstimate() {
+		return writerMemoryEstimate;
+	}
+
+	/**
+	 * Gets the estimated memory of all open writers in bytes.
+	 *
+	 * @return the estimated memory of open writers
+	 */
+	public long getOpenWritersMemoryEstimate() {
+		return writerMemoryEstimate * openWriters;
+	}
+
+	/**
+	 * Gets the number of bytes written into files already closed by
+	 * partition writers, before compression.
+	 *
+	 * @return the uncompressed byte count of closed files
+	 */
+	public long getClosedUncompressedBytes() {
+		return closedUncompressedBytes.sum();
+	}
+
+	/**
+	 * Gets the number of bytes stored into files already closed by
+	 * partition writers, after compression.
+	 *
+	 * @return the compressed byte count of closed files
+	 */
+	public long getClosedCompressedBytes() {
+		return closedCompressedBytes.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "PartitionWriterMetrics [openWriters=" + openWriters + ", createdWriters=" + getCreatedWriters()
+				+ ", evictedWriters=" + getEvictedWriters() + ", openWritersMemoryEstimate="
+				+ getOpenWritersMemoryEstimate() + "]";
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+/**
+ * A strategy interface resolving a sequence of a record from a source
+ * known by a writer, like a partition key. Sequence is compared against a
+ * watermark of its sequence partition recovered from a commit log to skip
+ * records replayed after a restart.
+ *
+ * @param <S> the type of a source
+ */
+public interface SequenceResolver<S> {
+
+	/**
+	 * Resolve a sequence.
+	 *
+	 * @param source the source
+	 * @return the sequence or -1 if not known
+	 */
+	long resolveSequence(S source);
+
+	/**
+	 * Resolve a sequence partition, like a partition of a source a record
+	 * was read from. Sequences only need to increase within a partition as
+	 * every partition has its own watermark. Default implementation
+	 * returns <code>NULL</code>, meaning all records share one watermark.
+	 *
+	 * @param source the source
+	 * @return the sequence partition or <code>NULL</code> if not known
+	 */
+	default String resolveSequencePartition(S source) {
+		return null;
+	}
+
+}
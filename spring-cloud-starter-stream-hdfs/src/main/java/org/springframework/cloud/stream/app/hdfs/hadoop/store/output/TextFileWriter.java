@@ -17,35 +17,23 @@ package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.Syncable;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.FileWrittenEvent;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.StoreEventPublisher;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.OutputContext;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.StoreUtils;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.StreamsHolder;
 
 /**
  * A {@code TextFileWriter} is a {@code DataStoreWriter} implementation
- * able to write {@code String}s into raw hdfs files.
+ * able to write {@code String}s into raw hdfs files. Entities are
+ * encoded using {@code UTF-8}.
  *
  * @author Janne Valkealahti
  * @author Rodrigo Meneses
  *
  */
-public class TextFileWriter extends AbstractDataStreamWriter implements DataStoreWriter<String> {
-
-	private final static Log log = LogFactory.getLog(TextFileWriter.class);
-
-	private StreamsHolder<OutputStream> streamsHolder;
-
-	private final byte[] delimiter;
+public class TextFileWriter extends AbstractDelimitedStreamWriter<String> {
 
 	/**
 	 * Instantiates a new text file writer.
@@ -68,8 +56,7 @@ public class TextFileWriter extends AbstractDataStreamWriter implements DataStor
 	 * @param delimiter the delimiter
 	 */
 	public TextFileWriter(Configuration configuration, Path basePath, CodecInfo codec, byte[] delimiter) {
-		super(configuration, basePath, codec);
-		this.delimiter = delimiter;
+		super(configuration, basePath, codec, delimiter);
 	}
 
 	/**
@@ -87,82 +74,8 @@ public class TextFileWriter extends AbstractDataStreamWriter implements DataStor
 	}
 
 	@Override
-	public synchronized void flush() throws IOException {
-		if (streamsHolder != null) {
-			OutputStream stream = streamsHolder.getStream();
-			stream.flush();
-			if ((isAppendable() || isSyncable()) && stream instanceof Syncable) {
-				((Syncable)stream).hflush();
-			}
-		}
-	}
-
-	@Override
-	public synchronized void close() throws IOException {
-		if (streamsHolder != null) {
-
-			// we store the possible error and rethrow it
-			// later so that we can null holder for further
-			// operations not to fail
-			IOException rethrow = null;
-			try {
-				streamsHolder.close();
-
-				Path path = renameFile(streamsHolder.getPath());
-
-				StoreEventPublisher storeEventPublisher = getStoreEventPublisher();
-				if (storeEventPublisher != null) {
-					storeEventPublisher.publishEvent(new FileWrittenEvent(this, path));
-				}
-			} catch (IOException e) {
-				rethrow = e;
-				log.error("Error in close", e);
-			} finally {
-				streamsHolder = null;
-			}
-			if (rethrow != null) {
-				throw rethrow;
-			}
-		}
-	}
-
-	@Override
-	public synchronized void write(String entity) throws IOException {
-		if (streamsHolder == null) {
-			streamsHolder = getOutput();
-		}
-		OutputStream out = streamsHolder.getStream();
-		out.write(entity.getBytes());
-		out.write(delimiter);
-		setWritePosition(getPosition(streamsHolder));
-
-		OutputContext context = getOutputContext();
-		if (context.getRolloverState()) {
-			log.info("After write, rollover state is true");
-			close();
-			context.rollStrategies();
-		}
-	}
-
-	@Override
-	protected void handleTimeout() {
-		try {
-			log.info("Timeout detected for this writer=[" + this +  "], closing stream");
-			flush();
-			close();
-		} catch (IOException e) {
-			log.error("Error closing", e);
-		}
-		getOutputContext().rollStrategies();
-	}
-
-	@Override
-	protected void flushTimeout() {
-		try {
-			flush();
-		} catch (IOException e) {
-			log.error("Error flushing stream", e);
-		}
+	protected void writeEntity(OutputStream out, String entity) throws IOException {
+		out.write(entity.getBytes(StandardCharsets.UTF_8));
 	}
 
 }
@@ -16,6 +16,7 @@
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
 
 import java.io.IOException;
+import java.util.Collection;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -26,7 +27,6 @@ import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.FileWrittenEvent;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.event.StoreEventPublisher;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.OutputContext;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.SequenceFileWriterHolder;
 import org.apache.hadoop.io.Text;
 
@@ -83,6 +83,7 @@ public class TextSequenceFileWriter extends AbstractSequenceFileWriter implement
 
 	@Override
 	public synchronized void write(String entity) throws IOException {
+		rollBeforeWrite(holder != null, UNKNOWN_EVENT_TIME);
 		if (holder == null) {
 			holder = getOutput();
 		}
@@ -90,13 +91,26 @@ public class TextSequenceFileWriter extends AbstractSequenceFileWriter implement
 
 		setWritePosition(getPosition(holder.getWriter()));
 
-		OutputContext context = getOutputContext();
-		if (context.getRolloverState()) {
-			log.info("After write, rollover state is true");
-			close();
-			context.rollStrategies();
+		rollAfterWrite(1);
+
+	}
+
+	@Override
+	public synchronized void writeAll(Collection<String> entities) throws IOException {
+		if (entities.isEmpty()) {
+			return;
+		}
+		rollBeforeWrite(holder != null, UNKNOWN_EVENT_TIME);
+		if (holder == null) {
+			holder = getOutput();
+		}
+		for (String entity : entities) {
+			holder.getWriter().append(NULL_KEY, new Text(entity.getBytes()));
 		}
 
+		setWritePosition(getPosition(holder.getWriter()));
+
+		rollAfterWrite(entities.size());
 	}
 
 	@Override
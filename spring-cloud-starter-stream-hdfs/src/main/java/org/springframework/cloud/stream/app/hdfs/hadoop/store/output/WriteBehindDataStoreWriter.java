@@ -0,0 +1,608 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.PartitionDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.StoreException;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.EventTimeResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.LifecycleObjectSupport;
+import org.springframework.context.Lifecycle;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+/**
+ * A {@code WriteBehindDataStoreWriter} is a {@link DataStoreWriter} decorating
+ * another writer with an asynchronous write-behind queue. Written entities are
+ * placed into a bounded queue, preallocated to its capacity, and a drain task
+ * executed with a {@code TaskExecutor} hands them over to the delegate in batches
+ * using {@link DataStoreWriter#writeAll(Collection)}. This keeps blocking hdfs
+ * operations like stream writes, flushes and rollovers off from a caller thread.
+ * <p>
+ * At most one drain task is in progress at any given time, so the delegate sees
+ * entities in the same order they were written. The drain task is only submitted
+ * when there is something to write, meaning it doesn't permanently occupy a thread
+ * from a possibly shared executor.
+ * <p>
+ * Entities written with a partition key are passed on together with their keys
+ * if the delegate is a {@link PartitionDataStoreWriter}, which then resolves event
+ * times and sequences from keys itself. For an {@link AbstractDelimitedStreamWriter}
+ * delegate an {@link EventTimeResolver} and a {@link SequenceResolver} can be set,
+ * in which case an event time and a sequence are resolved from a partition key when
+ * an entity is written, queued together with it and passed on with every entity.
+ * <p>
+ * Behaviour with a full queue is controlled by {@link Backpressure}. Space for a
+ * batch of up to a queue capacity is reserved at once, so a batch is either fully
+ * accepted or not at all and a retry of a rejected batch doesn't duplicate entities.
+ * <p>
+ * A batch is handed over in runs of keyed and non-keyed entities. If the delegate
+ * fails, runs already written are released and only the rest of a batch is kept
+ * at the head of a queue and retried, its entities still count against a queue
+ * capacity. Until a retry succeeds this writer fails closed, meaning every call
+ * fails with the error of a failed batch and triggers a new retry, so entities
+ * already accepted are never dropped. If a {@code TaskScheduler} is available,
+ * a retry is also scheduled with an exponential backoff so that a failed batch
+ * is written even if nothing calls this writer.
+ * <p>
+ * Delivery to the delegate is at-least-once. A delegate failing in the middle of
+ * a run may already have written part of it, and that part is written again
+ * by a retry.
+ *
+ * @param <T> the type of an entity to write
+ * @param <K> the type of a partition key
+ */
+public class WriteBehindDataStoreWriter<T, K> extends LifecycleObjectSupport implements PartitionDataStoreWriter<T, K> {
+
+	private final static Log log = LogFactory.getLog(WriteBehindDataStoreWriter.class);
+
+	/** Default queue capacity */
+	public final static int DEFAULT_CAPACITY = 1024;
+
+	/** Default max number of entities handed to delegate at once */
+	public final static int DEFAULT_BATCH_SIZE = 100;
+
+	/** Default delay in millis before a first scheduled retry */
+	public final static long DEFAULT_RETRY_DELAY = 1000;
+
+	/** Default max delay in millis between scheduled retries */
+	public final static long DEFAULT_MAX_RETRY_DELAY = 60000;
+
+	/**
+	 * Strategies for handling writes when a queue is full.
+	 */
+	public enum Backpressure {
+
+		/** Block a caller until there is space in a queue */
+		BLOCK,
+
+		/** Fail immediately with a {@link StoreException} */
+		FAIL
+	}
+
+	/** Writer doing the actual writes */
+	private final DataStoreWriter<T> writer;
+
+	/** Interval in millis to check for a failed batch while blocking on a full queue */
+	private final static long BLOCK_CHECK_INTERVAL = 100;
+
+	/** Queue of entities not yet passed to writer */
+	private final BlockingQueue<Entry<T, K>> queue;
+
+	/** Free queue space, released only after entities are written */
+	private final Semaphore permits;
+
+	private final int capacity;
+
+	private final int batchSize;
+
+	private volatile Backpressure backpressure = Backpressure.BLOCK;
+
+	/** Flag telling if drain task is submitted or running */
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	/** Lock guarding take from queue and write to writer to keep ordering */
+	private final Object drainLock = new Object();
+
+	/** Batch failed to write and retried before next from a queue, guarded by drainLock */
+	private List<Entry<T, K>> failedBatch;
+
+	/** Error of a failed batch, <code>NULL</code> if there is none */
+	private volatile IOException error;
+
+	private EventTimeResolver<K> eventTimeResolver;
+
+	private SequenceResolver<K> sequenceResolver;
+
+	private volatile long retryDelay = DEFAULT_RETRY_DELAY;
+
+	private volatile long maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
+
+	/** Delay before a next scheduled retry, guarded by drainLock */
+	private long nextRetryDelay = DEFAULT_RETRY_DELAY;
+
+	/** Flag telling if a retry is scheduled and not yet run */
+	private final AtomicBoolean retryScheduled = new AtomicBoolean();
+
+	private final Runnable drainTask = new Runnable() {
+
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	private final Runnable retryTask = new Runnable() {
+
+		@Override
+		public void run() {
+			retryScheduled.set(false);
+			if (error != null) {
+				scheduleDrain();
+			}
+		}
+	};
+
+	/**
+	 * Instantiates a new write behind data store writer with
+	 * default capacity and batch size.
+	 *
+	 * @param writer the writer to delegate to
+	 */
+	public WriteBehindDataStoreWriter(DataStoreWriter<T> writer) {
+		this(writer, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Instantiates a new write behind data store writer.
+	 *
+	 * @param writer the writer to delegate to
+	 * @param capacity the queue capacity
+	 * @param batchSize the max number of entities written at once
+	 */
+	public WriteBehindDataStoreWriter(DataStoreWriter<T> writer, int capacity, int batchSize) {
+		Assert.notNull(writer, "Writer must be set");
+		Assert.isTrue(capacity > 0, "Capacity must be greater than zero");
+		Assert.isTrue(batchSize > 0, "Batch size must be greater than zero");
+		this.writer = writer;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<Entry<T, K>>(capacity);
+		this.permits = new Semaphore(capacity, true);
+	}
+
+	@Override
+	public void write(T entity) throws IOException {
+		write(entity, null);
+	}
+
+	@Override
+	public void write(T entity, K partitionKey) throws IOException {
+		checkError();
+		List<Entry<T, K>> entries = new ArrayList<Entry<T, K>>(1);
+		entries.add(createEntry(entity, partitionKey));
+		enqueue(entries);
+	}
+
+	@Override
+	public void writeAll(Collection<T> entities) throws IOException {
+		checkError();
+		List<Entry<T, K>> entries = new ArrayList<Entry<T, K>>(entities.size());
+		for (T entity : entities) {
+			entries.add(createEntry(entity, null));
+		}
+		enqueue(entries);
+	}
+
+	@Override
+	public void writeAll(List<T> entities, List<K> partitionKeys) throws IOException {
+		Assert.isTrue(entities.size() == partitionKeys.size(), "Need a partition key for every entity");
+		checkError();
+		List<Entry<T, K>> entries = new ArrayList<Entry<T, K>>(entities.size());
+		for (int i = 0; i < entities.size(); i++) {
+			entries.add(createEntry(entities.get(i), partitionKeys.get(i)));
+		}
+		enqueue(entries);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drainNow();
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		drainNow();
+		writer.close();
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		Assert.notNull(getTaskExecutor(), "Task executor must be set");
+	}
+
+	@Override
+	protected void doStart() {
+		super.doStart();
+		if (writer instanceof Lifecycle) {
+			((Lifecycle) writer).start();
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		try {
+			drainNow();
+		} catch (IOException e) {
+			log.error("Error draining queue", e);
+		}
+		if (writer instanceof Lifecycle) {
+			((Lifecycle) writer).stop();
+		}
+		super.doStop();
+	}
+
+	/**
+	 * Sets the backpressure strategy used when a queue is full.
+	 * Default is {@link Backpressure#BLOCK}.
+	 *
+	 * @param backpressure the new backpressure strategy
+	 */
+	public void setBackpressure(Backpressure backpressure) {
+		Assert.notNull(backpressure, "Backpressure must be set");
+		this.backpressure = backpressure;
+	}
+
+	/**
+	 * Gets the backpressure strategy.
+	 *
+	 * @return the backpressure strategy
+	 */
+	public Backpressure getBackpressure() {
+		return backpressure;
+	}
+
+	/**
+	 * Sets the event time resolver. If set and the delegate is an
+	 * {@link AbstractDelimitedStreamWriter}, an event time of every entity
+	 * written with a partition key is resolved from its key and passed
+	 * on with an entity, otherwise a delegate uses a current time.
+	 *
+	 * @param eventTimeResolver the new event time resolver
+	 */
+	public void setEventTimeResolver(EventTimeResolver<K> eventTimeResolver) {
+		this.eventTimeResolver = eventTimeResolver;
+	}
+
+	/**
+	 * Sets the sequence resolver. If set and the delegate is an
+	 * {@link AbstractDelimitedStreamWriter}, a sequence and a sequence
+	 * partition of every entity written with a partition key are resolved
+	 * from its key and passed on with an entity.
+	 *
+	 * @param sequenceResolver the new sequence resolver
+	 */
+	public void setSequenceResolver(SequenceResolver<K> sequenceResolver) {
+		this.sequenceResolver = sequenceResolver;
+	}
+
+	/**
+	 * Sets the delay before a first retry of a failed batch is scheduled.
+	 * A delay is doubled for every consecutive failure up to a max retry
+	 * delay. Default is {@link #DEFAULT_RETRY_DELAY}.
+	 *
+	 * @param retryDelay the retry delay in millis
+	 */
+	public void setRetryDelay(long retryDelay) {
+		Assert.isTrue(retryDelay > 0, "Retry delay must be greater than zero");
+		this.retryDelay = retryDelay;
+		synchronized (drainLock) {
+			nextRetryDelay = retryDelay;
+		}
+	}
+
+	/**
+	 * Sets the max delay between scheduled retries of a failed batch.
+	 * Default is {@link #DEFAULT_MAX_RETRY_DELAY}.
+	 *
+	 * @param maxRetryDelay the max retry delay in millis
+	 */
+	public void setMaxRetryDelay(long maxRetryDelay) {
+		Assert.isTrue(maxRetryDelay > 0, "Max retry delay must be greater than zero");
+		this.maxRetryDelay = maxRetryDelay;
+	}
+
+	/**
+	 * Gets the number of entities waiting to be written, including
+	 * a batch being written or retried.
+	 *
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return capacity - permits.availablePermits();
+	}
+
+	/**
+	 * Gets the queue capacity.
+	 *
+	 * @return the queue capacity
+	 */
+	public int getQueueCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the writer this writer delegates to.
+	 *
+	 * @return the delegate writer
+	 */
+	public DataStoreWriter<T> getWriter() {
+		return writer;
+	}
+
+	private Entry<T, K> createEntry(T entity, K partitionKey) {
+		if (partitionKey == null || !(writer instanceof AbstractDelimitedStreamWriter)
+				|| (eventTimeResolver == null && sequenceResolver == null)) {
+			return new Entry<T, K>(entity, partitionKey);
+		}
+		long eventTime = eventTimeResolver != null ? eventTimeResolver.resolveEventTime(partitionKey)
+				: AbstractDelimitedStreamWriter.UNKNOWN_EVENT_TIME;
+		long sequence = -1;
+		String sequencePartition = null;
+		if (sequenceResolver != null) {
+			sequence = sequenceResolver.resolveSequence(partitionKey);
+			sequencePartition = sequenceResolver.resolveSequencePartition(partitionKey);
+		}
+		return new Entry<T, K>(entity, partitionKey, eventTime, sequencePartition, sequence);
+	}
+
+	/**
+	 * Reserves queue space for entries and queues them. Entries are queued
+	 * in chunks of up to a queue capacity, each of which is reserved at
+	 * once. Permits are only released after entities are taken from the
+	 * queue, so adding reserved entries never fails.
+	 */
+	private void enqueue(List<Entry<T, K>> entries) throws IOException {
+		if (backpressure == Backpressure.FAIL && entries.size() > capacity) {
+			throw new StoreException("Write-behind queue cannot accept a batch of " + entries.size()
+					+ " entities, capacity is " + capacity);
+		}
+		int from = 0;
+		while (from < entries.size()) {
+			int count = Math.min(entries.size() - from, capacity);
+			reserve(count);
+			queue.addAll(entries.subList(from, from + count));
+			from += count;
+			scheduleDrain();
+		}
+	}
+
+	private void reserve(int count) throws IOException {
+		if (permits.tryAcquire(count)) {
+			return;
+		}
+		if (backpressure == Backpressure.FAIL) {
+			throw new StoreException("Write-behind queue cannot accept a batch of " + count
+					+ " entities, remaining capacity is " + permits.availablePermits());
+		}
+		// make sure someone is draining before we block
+		scheduleDrain();
+		try {
+			while (!permits.tryAcquire(count, BLOCK_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+				// a failed batch holds its space until retried, don't wait for it
+				checkError();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting space in write-behind queue");
+		}
+	}
+
+	private void scheduleDrain() {
+		if (draining.compareAndSet(false, true)) {
+			try {
+				getTaskExecutor().execute(drainTask);
+			} catch (RuntimeException e) {
+				draining.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void drain() {
+		do {
+			try {
+				drainNow();
+			} catch (IOException e) {
+				// failed batch is kept and retried by a next call or a scheduled retry
+			} finally {
+				draining.set(false);
+			}
+			// entities may have arrived after last drain but before
+			// flag was cleared, in that case we continue ourselves
+		} while (error == null && !queue.isEmpty() && draining.compareAndSet(false, true));
+		if (error != null) {
+			scheduleRetry();
+		}
+	}
+
+	private void scheduleRetry() {
+		TaskScheduler taskScheduler = getTaskScheduler();
+		if (taskScheduler == null || !retryScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		long delay;
+		synchronized (drainLock) {
+			delay = nextRetryDelay;
+			nextRetryDelay = Math.min(delay * 2, maxRetryDelay);
+		}
+		try {
+			taskScheduler.schedule(retryTask, new Date(System.currentTimeMillis() + delay));
+		} catch (RuntimeException e) {
+			retryScheduled.set(false);
+			log.warn("Unable to schedule retry of a failed batch, retried by a next call", e);
+		}
+	}
+
+	private void drainNow() throws IOException {
+		boolean drained = true;
+		while (drained) {
+			drained = drainBatch();
+		}
+	}
+
+	private boolean drainBatch() throws IOException {
+		synchronized (drainLock) {
+			List<Entry<T, K>> batch = failedBatch;
+			if (batch == null) {
+				batch = new ArrayList<Entry<T, K>>(batchSize);
+				if (queue.drainTo(batch, batchSize) == 0) {
+					return false;
+				}
+			}
+			// pass on consecutive runs of keyed and non-keyed entities
+			// so that order and partitioning are kept, tracking what is
+			// written so that a retry doesn't duplicate completed runs
+			int written = 0;
+			try {
+				while (written < batch.size()) {
+					written += writeRun(batch, written);
+				}
+			} catch (IOException e) {
+				failed(batch, written, e);
+				throw e;
+			} catch (RuntimeException e) {
+				IOException ioe = new IOException("Error writing batch", e);
+				failed(batch, written, ioe);
+				throw ioe;
+			}
+			failedBatch = null;
+			error = null;
+			nextRetryDelay = retryDelay;
+			permits.release(batch.size());
+		}
+		return true;
+	}
+
+	private void failed(List<Entry<T, K>> batch, int written, IOException e) {
+		log.error("Error writing batch of " + batch.size() + " entities, " + (batch.size() - written)
+				+ " entities not written are kept for a retry", e);
+		failedBatch = new ArrayList<Entry<T, K>>(batch.subList(written, batch.size()));
+		error = e;
+		permits.release(written);
+	}
+
+	/**
+	 * Writes a run of consecutive keyed or non-keyed entities starting
+	 * from a given index of a batch.
+	 *
+	 * @return the number of entities written
+	 */
+	@SuppressWarnings("unchecked")
+	private int writeRun(List<Entry<T, K>> batch, int from) throws IOException {
+		Entry<T, K> first = batch.get(from);
+		if (first.resolved) {
+			// event time and sequence are known per entity, so it's written
+			// on its own and rollover can happen between any two entities
+			((AbstractDelimitedStreamWriter<T>) writer).write(first.entity, first.eventTime,
+					first.sequencePartition, first.sequence);
+			return 1;
+		}
+		boolean keyed = isKeyed(first);
+		List<T> entities = new ArrayList<T>(batch.size() - from);
+		List<K> keys = new ArrayList<K>(batch.size() - from);
+		for (int i = from; i < batch.size() && !batch.get(i).resolved && isKeyed(batch.get(i)) == keyed; i++) {
+			entities.add(batch.get(i).entity);
+			keys.add(batch.get(i).partitionKey);
+		}
+		if (keyed) {
+			((PartitionDataStoreWriter<T, K>) writer).writeAll(entities, keys);
+		} else {
+			writer.writeAll(entities);
+		}
+		return entities.size();
+	}
+
+	private boolean isKeyed(Entry<T, K> entry) {
+		return entry.partitionKey != null && writer instanceof PartitionDataStoreWriter;
+	}
+
+	/**
+	 * Fails if a batch failed to write and is not yet retried successfully,
+	 * triggering a retry in a background.
+	 */
+	private void checkError() throws IOException {
+		IOException e = error;
+		if (e != null) {
+			scheduleDrain();
+			throw new IOException("Previous asynchronous write failed and is being retried", e);
+		}
+	}
+
+	/**
+	 * Queued entity together with its partition key if any and
+	 * an event time and a sequence if resolved from a key.
+	 */
+	private static class Entry<T, K> {
+
+		final T entity;
+
+		final K partitionKey;
+
+		final boolean resolved;
+
+		final long eventTime;
+
+		final String sequencePartition;
+
+		final long sequence;
+
+		Entry(T entity, K partitionKey) {
+			this.entity = entity;
+			this.partitionKey = partitionKey;
+			this.resolved = false;
+			this.eventTime = AbstractDelimitedStreamWriter.UNKNOWN_EVENT_TIME;
+			this.sequencePartition = null;
+			this.sequence = -1;
+		}
+
+		Entry(T entity, K partitionKey, long eventTime, String sequencePartition, long sequence) {
+			this.entity = entity;
+			this.partitionKey = partitionKey;
+			this.resolved = true;
+			this.eventTime = eventTime;
+			this.sequencePartition = sequencePartition;
+			this.sequence = sequence;
+		}
+
+	}
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+/**
+ * Thrown by a retired partition writer instead of opening a new file. A
+ * caller got a writer before it was closed and removed by an eviction or
+ * a timeout, nothing was written and a write should be retried with a
+ * writer looked up again.
+ *
+ */
+class WriterRetiredException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	WriterRetiredException(String msg) {
+		super(msg);
+	}
+
+}
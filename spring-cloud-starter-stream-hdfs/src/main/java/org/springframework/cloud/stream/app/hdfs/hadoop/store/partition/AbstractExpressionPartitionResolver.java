@@ -0,0 +1,224 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.util.Assert;
+
+/**
+ * Base implementation of a {@link PartitionResolver} evaluating a SpEL
+ * {@link Expression}. Compilation of an expression is driven by this
+ * class instead of SpEL itself, which makes it possible to know whether
+ * evaluations run compiled and to compile eagerly with a warm-up.
+ * <p>
+ * With {@link SpelCompilerMode#MIXED}, which is a default, an expression is
+ * compiled after a number of interpreted evaluations and reverted back to
+ * interpreted mode if compiled code fails. With {@link SpelCompilerMode#IMMEDIATE}
+ * an expression is compiled after its first evaluation and
+ * {@link #warmUp(Object)} fails if compilation is not possible. Evaluation
+ * statistics are kept in {@link PartitionExpressionMetrics}.
+ *
+ * @param <K> the type of a partition key
+ */
+public abstract class AbstractExpressionPartitionResolver<K> implements PartitionResolver<K> {
+
+	private final static Log log = LogFactory.getLog(AbstractExpressionPartitionResolver.class);
+
+	/** Interpreted evaluations before compiling in mixed mode */
+	private final static int MIXED_COMPILE_THRESHOLD = 100;
+
+	/** Compile failures after which compiling is no longer attempted */
+	private final static int MAX_COMPILE_FAILURES = 100;
+
+	private final Expression expression;
+
+	private final PartitionExpressionMetrics metrics = new PartitionExpressionMetrics();
+
+	private final AtomicInteger interpretedSinceCompile = new AtomicInteger();
+
+	private final AtomicInteger compileFailures = new AtomicInteger();
+
+	private volatile SpelCompilerMode compilerMode = SpelCompilerMode.MIXED;
+
+	private volatile boolean compiled;
+
+	/**
+	 * Instantiates a new abstract expression partition resolver.
+	 *
+	 * @param expression the expression
+	 */
+	protected AbstractExpressionPartitionResolver(Expression expression) {
+		Assert.notNull(expression, "Expression must be set");
+		this.expression = expression;
+		log.info("Using expression=[" + expression.getExpressionString() + "]");
+	}
+
+	/**
+	 * Parses an expression. If parser is not given, expression is parsed
+	 * with compilation disabled so that it is controlled by this class.
+	 *
+	 * @param expression the expression string
+	 * @param expressionParser the expression parser, may be <code>NULL</code>
+	 * @return the parsed expression
+	 */
+	protected static Expression parseExpression(String expression, ExpressionParser expressionParser) {
+		if (expressionParser == null) {
+			expressionParser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.OFF, null));
+		}
+		return expressionParser.parseExpression(expression);
+	}
+
+	/**
+	 * Sets the compiler mode. Default is {@link SpelCompilerMode#MIXED}.
+	 *
+	 * @param compilerMode the new compiler mode
+	 */
+	public void setCompilerMode(SpelCompilerMode compilerMode) {
+		Assert.notNull(compilerMode, "Compiler mode must be set");
+		this.compilerMode = compilerMode;
+	}
+
+	/**
+	 * Gets the compiler mode.
+	 *
+	 * @return the compiler mode
+	 */
+	public SpelCompilerMode getCompilerMode() {
+		return compilerMode;
+	}
+
+	/**
+	 * Gets the evaluation metrics.
+	 *
+	 * @return the metrics
+	 */
+	public PartitionExpressionMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Gets the expression.
+	 *
+	 * @return the expression
+	 */
+	public Expression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Evaluates an expression against a sample partition key and compiles
+	 * it unless compilation is disabled.
+	 *
+	 * @param sample the sample partition key
+	 * @throws IllegalStateException if compiler mode is {@link SpelCompilerMode#IMMEDIATE}
+	 *         and expression cannot be compiled
+	 */
+	public void warmUp(K sample) {
+		evaluate(expression, sample);
+		if (compilerMode == SpelCompilerMode.OFF) {
+			return;
+		}
+		if (!compile() && compilerMode == SpelCompilerMode.IMMEDIATE) {
+			throw new IllegalStateException("Expression [" + expression.getExpressionString()
+					+ "] cannot be compiled");
+		}
+	}
+
+	/**
+	 * Gets a value of an expression for a partition key.
+	 *
+	 * @param partitionKey the partition key
+	 * @return the expression value
+	 */
+	protected String getValue(K partitionKey) {
+		long start = System.nanoTime();
+		boolean compiledRun = compiled;
+		String value;
+		try {
+			value = evaluate(expression, partitionKey);
+		} catch (SpelEvaluationException e) {
+			if (!compiledRun || e.getMessageCode() != SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) {
+				throw e;
+			}
+			metrics.compileFailed();
+			if (compilerMode == SpelCompilerMode.IMMEDIATE) {
+				throw e;
+			}
+			log.warn("Compiled expression failed, reverting to interpreted mode", e);
+			revert();
+			compiledRun = false;
+			value = evaluate(expression, partitionKey);
+		}
+		metrics.evaluated(compiledRun, System.nanoTime() - start);
+		if (!compiledRun && compilerMode != SpelCompilerMode.OFF) {
+			int threshold = compilerMode == SpelCompilerMode.IMMEDIATE ? 1 : MIXED_COMPILE_THRESHOLD;
+			if (interpretedSinceCompile.incrementAndGet() >= threshold) {
+				interpretedSinceCompile.set(0);
+				compile();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Evaluates an expression for a partition key.
+	 *
+	 * @param expression the expression
+	 * @param partitionKey the partition key
+	 * @return the expression value
+	 */
+	protected abstract String evaluate(Expression expression, K partitionKey);
+
+	private boolean compile() {
+		if (compiled) {
+			return true;
+		}
+		if (!(expression instanceof SpelExpression) || compileFailures.get() >= MAX_COMPILE_FAILURES) {
+			return false;
+		}
+		if (((SpelExpression) expression).compileExpression()) {
+			compiled = true;
+			metrics.setCompiled(true);
+			log.info("Compiled expression=[" + expression.getExpressionString() + "]");
+			return true;
+		}
+		compileFailures.incrementAndGet();
+		metrics.compileFailed();
+		if (log.isDebugEnabled()) {
+			log.debug("Unable to compile expression=[" + expression.getExpressionString() + "]");
+		}
+		return false;
+	}
+
+	private void revert() {
+		compiled = false;
+		metrics.setCompiled(false);
+		compileFailures.incrementAndGet();
+		((SpelExpression) expression).revertToInterpreted();
+	}
+
+}
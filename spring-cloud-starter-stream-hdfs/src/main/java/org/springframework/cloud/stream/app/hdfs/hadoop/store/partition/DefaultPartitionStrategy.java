@@ -17,16 +17,12 @@ package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
 
 import java.util.Map;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.Path;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.expression.MapExpressionMethods;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.spel.SpelCompilerMode;
-import org.springframework.expression.spel.SpelParserConfiguration;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 /**
@@ -37,8 +33,6 @@ import org.springframework.expression.spel.support.StandardEvaluationContext;
  */
 public class DefaultPartitionStrategy<T extends Object> extends AbstractPartitionStrategy<T,Map<String,Object>> {
 
-	private final static Log log = LogFactory.getLog(DefaultPartitionStrategy.class);
-
 	/**
 	 * Instantiates a new default partition strategy.
 	 *
@@ -91,36 +85,68 @@ public class DefaultPartitionStrategy<T extends Object> extends AbstractPartitio
 		super(new MapPartitionResolver(expression, evaluationContext, expressionParser), new MapPartitionKeyResolver<T>());
 	}
 
+	/**
+	 * Sets the compiler mode used for a partition expression.
+	 *
+	 * @param compilerMode the new compiler mode
+	 * @see AbstractExpressionPartitionResolver#setCompilerMode(SpelCompilerMode)
+	 */
+	public void setCompilerMode(SpelCompilerMode compilerMode) {
+		getMapPartitionResolver().setCompilerMode(compilerMode);
+	}
+
+	/**
+	 * Warms up a partition expression against a sample partition key.
+	 *
+	 * @param sample the sample partition key
+	 * @see AbstractExpressionPartitionResolver#warmUp(Object)
+	 */
+	public void warmUp(Map<String, Object> sample) {
+		getMapPartitionResolver().warmUp(sample);
+	}
+
+	/**
+	 * Gets the partition expression evaluation metrics.
+	 *
+	 * @return the metrics
+	 */
+	public PartitionExpressionMetrics getMetrics() {
+		return getMapPartitionResolver().getMetrics();
+	}
+
+	private MapPartitionResolver getMapPartitionResolver() {
+		return (MapPartitionResolver) getPartitionResolver();
+	}
+
 	/**
 	 * A {@link PartitionResolver} which uses an {@link Expression} together with
 	 * {@link MapExpressionMethods} to evaluate new {@link Path}s.
 	 */
-	private static class MapPartitionResolver implements PartitionResolver<Map<String,Object>> {
+	private static class MapPartitionResolver extends AbstractExpressionPartitionResolver<Map<String,Object>> {
 
-		private final Expression expression;
 		private final MapExpressionMethods methods;
 
 		public MapPartitionResolver(String expression, StandardEvaluationContext evaluationContext, ExpressionParser expressionParser) {
-			if (expressionParser == null) {
-				// default to mixed mode
-				expressionParser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, null));
-			}
+			super(parseExpression(expression, expressionParser));
 			if (evaluationContext == null) {
 				evaluationContext = new StandardEvaluationContext();
 			}
-			this.expression = expressionParser.parseExpression(expression);
 			this.methods = new MapExpressionMethods(evaluationContext, true, false);
 		}
 
 		public MapPartitionResolver(Expression expression, EvaluationContext evaluationContext) {
-			this.expression = expression;
+			super(expression);
 			this.methods = new MapExpressionMethods(evaluationContext);
-			log.info("Using expression=[" + this.expression.getExpressionString() + "]");
 		}
 
 		@Override
 		public Path resolvePath(Map<String,Object> partitionKey) {
-			return new Path(methods.getValue(expression, partitionKey, String.class));
+			return new Path(getValue(partitionKey));
+		}
+
+		@Override
+		protected String evaluate(Expression expression, Map<String, Object> partitionKey) {
+			return methods.getValue(expression, partitionKey, String.class);
 		}
 
 	}
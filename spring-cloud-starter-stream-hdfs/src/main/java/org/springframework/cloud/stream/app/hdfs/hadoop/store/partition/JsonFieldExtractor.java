@@ -0,0 +1,364 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Extracts a single field from a JSON document by scanning it either as
+ * {@code UTF-8} encoded bytes or as a {@code String}, so that neither is
+ * converted to the other. Only a value of a requested field is decoded,
+ * other content is skipped without creating any objects. A field is given
+ * as a dot separated path of object field names, like {@code customer.region}.
+ * <p>
+ * Scalar values are returned as their JSON text, strings without quotes.
+ * Malformed documents, missing fields, nulls, objects and arrays result
+ * <code>NULL</code>.
+ *
+ */
+class JsonFieldExtractor {
+
+	private final String field;
+
+	private final String[] names;
+
+	private final byte[][] nameBytes;
+
+	/**
+	 * Instantiates a new json field extractor.
+	 *
+	 * @param field the dot separated field path
+	 */
+	JsonFieldExtractor(String field) {
+		Assert.hasText(field, "Field must be set");
+		this.field = field;
+		this.names = StringUtils.delimitedListToStringArray(field, ".");
+		this.nameBytes = new byte[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			this.nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Extract a field value.
+	 *
+	 * @param json the utf-8 encoded json document
+	 * @return the field value or <code>NULL</code>
+	 */
+	String extract(byte[] json) {
+		return extract(new ByteInput(json));
+	}
+
+	/**
+	 * Extract a field value.
+	 *
+	 * @param json the json document
+	 * @return the field value or <code>NULL</code>
+	 */
+	String extract(String json) {
+		return extract(new StringInput(json));
+	}
+
+	String getField() {
+		return field;
+	}
+
+	private String extract(Input json) {
+		int pos = skipWhitespace(json, 0);
+		for (int i = 0; i < names.length; i++) {
+			pos = findField(json, pos, i);
+			if (pos < 0) {
+				return null;
+			}
+		}
+		return readValue(json, pos);
+	}
+
+	/**
+	 * Finds a field from an object starting at a given position.
+	 *
+	 * @return the position of a field value or -1
+	 */
+	private int findField(Input json, int pos, int nameIndex) {
+		if (pos >= json.length() || json.at(pos) != '{') {
+			return -1;
+		}
+		pos = skipWhitespace(json, pos + 1);
+		while (pos < json.length() && json.at(pos) == '"') {
+			int end = skipString(json, pos);
+			if (end < 0) {
+				return -1;
+			}
+			boolean match = json.matches(pos + 1, end - 1, names[nameIndex], nameBytes[nameIndex]);
+			pos = skipWhitespace(json, end);
+			if (pos >= json.length() || json.at(pos) != ':') {
+				return -1;
+			}
+			pos = skipWhitespace(json, pos + 1);
+			if (match) {
+				return pos;
+			}
+			pos = skipValue(json, pos);
+			if (pos < 0) {
+				return -1;
+			}
+			pos = skipWhitespace(json, pos);
+			if (pos >= json.length() || json.at(pos) != ',') {
+				return -1;
+			}
+			pos = skipWhitespace(json, pos + 1);
+		}
+		return -1;
+	}
+
+	private static String readValue(Input json, int pos) {
+		if (pos >= json.length()) {
+			return null;
+		}
+		int b = json.at(pos);
+		if (b == '"') {
+			int end = skipString(json, pos);
+			return end < 0 ? null : decodeString(json.substring(pos + 1, end - 1));
+		}
+		if (b == '{' || b == '[') {
+			return null;
+		}
+		int end = skipValue(json, pos);
+		if (end < 0) {
+			return null;
+		}
+		String value = json.substring(pos, end);
+		return "null".equals(value) ? null : value;
+	}
+
+	private static String decodeString(String raw) {
+		if (raw.indexOf('\\') < 0) {
+			return raw;
+		}
+		StringBuilder buf = new StringBuilder(raw.length());
+		for (int i = 0; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c != '\\' || i + 1 >= raw.length()) {
+				buf.append(c);
+				continue;
+			}
+			char n = raw.charAt(++i);
+			switch (n) {
+			case 'b':
+				buf.append('\b');
+				break;
+			case 'f':
+				buf.append('\f');
+				break;
+			case 'n':
+				buf.append('\n');
+				break;
+			case 'r':
+				buf.append('\r');
+				break;
+			case 't':
+				buf.append('\t');
+				break;
+			case 'u':
+				if (i + 4 >= raw.length()) {
+					return null;
+				}
+				int code = 0;
+				for (int j = i + 1; j <= i + 4; j++) {
+					int digit = Character.digit(raw.charAt(j), 16);
+					if (digit < 0) {
+						return null;
+					}
+					code = (code << 4) | digit;
+				}
+				buf.append((char) code);
+				i += 4;
+				break;
+			default:
+				buf.append(n);
+				break;
+			}
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Skips a string starting at a quote.
+	 *
+	 * @return the position after closing quote or -1
+	 */
+	private static int skipString(Input json, int pos) {
+		int i = pos + 1;
+		while (i < json.length()) {
+			int b = json.at(i);
+			if (b == '\\') {
+				i += 2;
+			} else if (b == '"') {
+				return i + 1;
+			} else {
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Skips any value.
+	 *
+	 * @return the position after a value or -1
+	 */
+	private static int skipValue(Input json, int pos) {
+		if (pos >= json.length()) {
+			return -1;
+		}
+		int b = json.at(pos);
+		if (b == '"') {
+			return skipString(json, pos);
+		}
+		if (b == '{' || b == '[') {
+			int depth = 0;
+			int i = pos;
+			while (i < json.length()) {
+				b = json.at(i);
+				if (b == '"') {
+					i = skipString(json, i);
+					if (i < 0) {
+						return -1;
+					}
+					continue;
+				}
+				if (b == '{' || b == '[') {
+					depth++;
+				} else if (b == '}' || b == ']') {
+					depth--;
+					if (depth == 0) {
+						return i + 1;
+					}
+				}
+				i++;
+			}
+			return -1;
+		}
+		int i = pos;
+		while (i < json.length()) {
+			b = json.at(i);
+			if (b == ',' || b == '}' || b == ']' || isWhitespace(b)) {
+				break;
+			}
+			i++;
+		}
+		return i > pos ? i : -1;
+	}
+
+	private static int skipWhitespace(Input json, int pos) {
+		while (pos < json.length() && isWhitespace(json.at(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	/**
+	 * A scanned document. Structural characters of JSON are all ascii so
+	 * scanning works the same on encoded bytes and on chars.
+	 */
+	private interface Input {
+
+		int length();
+
+		int at(int pos);
+
+		String substring(int start, int end);
+
+		boolean matches(int start, int end, String name, byte[] nameBytes);
+
+	}
+
+	private static class ByteInput implements Input {
+
+		private final byte[] json;
+
+		ByteInput(byte[] json) {
+			this.json = json;
+		}
+
+		@Override
+		public int length() {
+			return json.length;
+		}
+
+		@Override
+		public int at(int pos) {
+			return json[pos];
+		}
+
+		@Override
+		public String substring(int start, int end) {
+			return new String(json, start, end - start, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public boolean matches(int start, int end, String name, byte[] nameBytes) {
+			if (end - start != nameBytes.length) {
+				return false;
+			}
+			for (int i = 0; i < nameBytes.length; i++) {
+				if (json[start + i] != nameBytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+	private static class StringInput implements Input {
+
+		private final String json;
+
+		StringInput(String json) {
+			this.json = json;
+		}
+
+		@Override
+		public int length() {
+			return json.length();
+		}
+
+		@Override
+		public int at(int pos) {
+			return json.charAt(pos);
+		}
+
+		@Override
+		public String substring(int start, int end) {
+			return json.substring(start, end);
+		}
+
+		@Override
+		public boolean matches(int start, int end, String name, byte[] nameBytes) {
+			return end - start == name.length() && json.regionMatches(start, name, 0, name.length());
+		}
+
+	}
+
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.expression.DateFormatCache;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.expression.RangeTable;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.LruCache;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link PartitionStrategy} building partition paths from a declarative
+ * layout instead of a SpEL expression. A layout is parsed once into a chain
+ * of segments which are then appended together for every message without
+ * any expression evaluation or reflection.
+ * <p>
+ * A layout is a list of segments separated by {@code /}, each of which is
+ * either a literal directory name or one of:
+ * <ul>
+ * <li>{@code header(name)} - value of a message header</li>
+ * <li>{@code json(field)} - value of a field in a JSON payload, nested fields separated by {@code .}</li>
+ * <li>{@code time(pattern)} - message timestamp formatted with a date pattern, which may contain {@code /}</li>
+ * <li>{@code hash(source,N)} - hash of a source value modulo N, same as {@code hash()} in expressions</li>
+ * <li>{@code range(source,v1,v2,...)} - range of a source value, same as {@code range()} in expressions</li>
+ * </ul>
+ * where source is either a {@code header(name)} or a {@code json(field)}. For example
+ * layout {@code events/time(yyyy/MM/dd)/hash(header(customer),8)} resolves to
+ * a same path as expression {@code 'events/'+dateFormat('yyyy/MM/dd')+'/'+hash(headers[customer],8)}
+ * as long as a header value hashes the same way.
+ * <p>
+ * Values of a JSON payload are always strings, thus hashed as strings.
+ * <p>
+ * A {@code header(name)} or a {@code json(field)} segment without a value, like
+ * for a missing header, resolves to a {@link #MISSING_VALUE} directory instead of
+ * a {@code null} directory an expression would build.
+ *
+ * @param <T> the type of an entity to write
+ */
+public class LayoutPartitionStrategy<T extends Object> extends AbstractPartitionStrategy<T, Message<?>> {
+
+	/** Directory name used for a segment without a value */
+	public final static String MISSING_VALUE = "__missing__";
+
+	/**
+	 * Instantiates a new layout partition strategy.
+	 *
+	 * @param layout the partition layout
+	 * @throws IllegalArgumentException if layout cannot be parsed
+	 */
+	public LayoutPartitionStrategy(String layout) {
+		super(new LayoutPartitionResolver(layout), new LayoutPartitionKeyResolver<T>());
+	}
+
+	/**
+	 * Sets the max number of cached partition paths. Resolved paths are
+	 * cached by a built layout value so that hot partitions share a same
+	 * {@link Path} instance. Zero, which is a default, disables caching.
+	 *
+	 * @param cacheSize the cache size
+	 */
+	public void setCacheSize(int cacheSize) {
+		((LayoutPartitionResolver) getPartitionResolver()).setCacheSize(cacheSize);
+	}
+
+	/**
+	 * Parses a layout into a list of segments.
+	 *
+	 * @param layout the layout
+	 * @return the segments
+	 */
+	static List<Segment> parse(String layout) {
+		Assert.hasText(layout, "Layout must be set");
+		List<Segment> segments = new ArrayList<Segment>();
+		for (String part : split(layout, '/')) {
+			if (part.isEmpty()) {
+				throw new IllegalArgumentException("Empty segment in partition layout [" + layout + "]");
+			}
+			segments.add(parseSegment(part));
+		}
+		return segments;
+	}
+
+	private static Segment parseSegment(String part) {
+		int open = part.indexOf('(');
+		if (open < 0 || !part.endsWith(")")) {
+			if (part.indexOf('(') >= 0 || part.indexOf(')') >= 0) {
+				throw new IllegalArgumentException("Invalid partition layout segment [" + part + "]");
+			}
+			return new LiteralSegment(part);
+		}
+		String name = part.substring(0, open);
+		String args = part.substring(open + 1, part.length() - 1);
+		if ("time".equals(name)) {
+			Assert.hasText(args, "Time pattern must be set");
+			return new TimeSegment(args);
+		} else if ("hash".equals(name)) {
+			List<String> list = split(args, ',');
+			if (list.size() != 2) {
+				throw new IllegalArgumentException("Segment [" + part + "] needs a source and a bucket count");
+			}
+			int buckets;
+			try {
+				buckets = Integer.parseInt(list.get(1).trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid bucket count in segment [" + part + "]", e);
+			}
+			Assert.isTrue(buckets > 0, "Bucket count must be greater than zero");
+			return new HashSegment(parseSource(list.get(0).trim()), buckets);
+		} else if ("range".equals(name)) {
+			List<String> list = split(args, ',');
+			if (list.size() < 2) {
+				throw new IllegalArgumentException("Segment [" + part + "] needs a source and at least one range");
+			}
+			return new RangeSegment(parseSource(list.get(0).trim()), list.subList(1, list.size()));
+		}
+		return new ValueSegment(parseSource(part));
+	}
+
+	private static Source parseSource(String source) {
+		int open = source.indexOf('(');
+		if (open > 0 && source.endsWith(")")) {
+			String name = source.substring(0, open);
+			String arg = source.substring(open + 1, source.length() - 1).trim();
+			if ("header".equals(name)) {
+				Assert.hasText(arg, "Header name must be set");
+				return new HeaderSource(arg);
+			} else if ("json".equals(name)) {
+				return new JsonSource(new JsonFieldExtractor(arg));
+			}
+		}
+		throw new IllegalArgumentException("Unknown partition layout source [" + source + "]");
+	}
+
+	/**
+	 * Splits a string with a delimiter outside of parentheses.
+	 */
+	private static List<String> split(String value, char delimiter) {
+		List<String> parts = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+				if (depth < 0) {
+					throw new IllegalArgumentException("Unbalanced parentheses in [" + value + "]");
+				}
+			} else if (c == delimiter && depth == 0) {
+				parts.add(value.substring(start, i));
+				start = i + 1;
+			}
+		}
+		if (depth != 0) {
+			throw new IllegalArgumentException("Unbalanced parentheses in [" + value + "]");
+		}
+		parts.add(value.substring(start));
+		return parts;
+	}
+
+	/**
+	 * A {@link PartitionResolver} appending layout segments together.
+	 */
+	private static class LayoutPartitionResolver implements PartitionResolver<Message<?>> {
+
+		private final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+
+			@Override
+			protected StringBuilder initialValue() {
+				return new StringBuilder(64);
+			}
+		};
+
+		private final Segment[] segments;
+
+		private volatile LruCache<String, Path> pathCache;
+
+		LayoutPartitionResolver(String layout) {
+			this.segments = parse(layout).toArray(new Segment[0]);
+		}
+
+		@Override
+		public Path resolvePath(Message<?> partitionKey) {
+			StringBuilder buf = buffers.get();
+			buf.setLength(0);
+			for (int i = 0; i < segments.length; i++) {
+				if (i > 0) {
+					buf.append('/');
+				}
+				segments[i].append(partitionKey, buf);
+			}
+			String value = buf.toString();
+			LruCache<String, Path> pathCache = this.pathCache;
+			if (pathCache == null) {
+				return new Path(value);
+			}
+			Path path = pathCache.get(value);
+			if (path == null) {
+				path = new Path(value);
+				pathCache.put(value, path);
+			}
+			return path;
+		}
+
+		void setCacheSize(int cacheSize) {
+			this.pathCache = cacheSize > 0 ? new LruCache<String, Path>(cacheSize) : null;
+		}
+
+	}
+
+	/**
+	 * A {@link PartitionKeyResolver} which simply creates a new {@link Message}
+	 * as a partition key using an passed in entity.
+	 */
+	private static class LayoutPartitionKeyResolver<T extends Object> implements PartitionKeyResolver<T, Message<?>> {
+
+		@Override
+		public Message<?> resolvePartitionKey(T entity) {
+			return MessageBuilder.withPayload(entity).build();
+		}
+
+	}
+
+	/**
+	 * A single compiled part of a layout.
+	 */
+	interface Segment {
+
+		/**
+		 * Appends a segment value for a message.
+		 *
+		 * @param message the message
+		 * @param buf the buffer to append to
+		 */
+		void append(Message<?> message, StringBuilder buf);
+
+	}
+
+	/**
+	 * A source of a value used by segments.
+	 */
+	interface Source {
+
+		/**
+		 * Gets a value from a message.
+		 *
+		 * @param message the message
+		 * @return the value, may be <code>NULL</code>
+		 */
+		Object getValue(Message<?> message);
+
+	}
+
+	private static class HeaderSource implements Source {
+
+		private final String header;
+
+		HeaderSource(String header) {
+			this.header = header;
+		}
+
+		@Override
+		public Object getValue(Message<?> message) {
+			return message.getHeaders().get(header);
+		}
+
+	}
+
+	private static class JsonSource implements Source {
+
+		private final JsonFieldExtractor extractor;
+
+		JsonSource(JsonFieldExtractor extractor) {
+			this.extractor = extractor;
+		}
+
+		@Override
+		public Object getValue(Message<?> message) {
+			Object payload = message.getPayload();
+			if (payload instanceof byte[]) {
+				return extractor.extract((byte[]) payload);
+			} else if (payload instanceof String) {
+				return extractor.extract((String) payload);
+			}
+			return null;
+		}
+
+	}
+
+	private static class LiteralSegment implements Segment {
+
+		private final String value;
+
+		LiteralSegment(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public void append(Message<?> message, StringBuilder buf) {
+			buf.append(value);
+		}
+
+	}
+
+	private static class ValueSegment implements Segment {
+
+		private final Source source;
+
+		ValueSegment(Source source) {
+			this.source = source;
+		}
+
+		@Override
+		public void append(Message<?> message, StringBuilder buf) {
+			Object value = source.getValue(message);
+			String text = value != null ? value.toString() : null;
+			// an empty value would collapse a directory level
+			buf.append(text != null && !text.isEmpty() ? text : MISSING_VALUE);
+		}
+
+	}
+
+	private static class TimeSegment implements Segment {
+
+		private final String pattern;
+
+		TimeSegment(String pattern) {
+			this.pattern = pattern;
+		}
+
+		@Override
+		public void append(Message<?> message, StringBuilder buf) {
+			Long timestamp = message.getHeaders().getTimestamp();
+			buf.append(DateFormatCache.format(pattern, timestamp != null ? timestamp : System.currentTimeMillis()));
+		}
+
+	}
+
+	private static class HashSegment implements Segment {
+
+		private final Source source;
+
+		private final String[] labels;
+
+		HashSegment(Source source, int buckets) {
+			this.source = source;
+			this.labels = new String[buckets];
+			for (int i = 0; i < buckets; i++) {
+				labels[i] = i + "_hash";
+			}
+		}
+
+		@Override
+		public void append(Message<?> message, StringBuilder buf) {
+			Object value = source.getValue(message);
+			int hash = value != null ? value.hashCode() : 0;
+			// same bucket as Math.abs(hash) % buckets in expressions, which
+			// is negative for Integer.MIN_VALUE while this is always in range
+			buf.append(labels[Math.abs(hash % labels.length)]);
+		}
+
+	}
+
+	private static class RangeSegment implements Segment {
+
+		private final Source source;
+
+		private final RangeTable table;
+
+		RangeSegment(Source source, List<String> values) {
+			this.source = source;
+			List<Long> numericBounds = new ArrayList<Long>(values.size());
+			List<String> bounds = new ArrayList<String>(values.size());
+			for (String value : values) {
+				bounds.add(value.trim());
+				if (numericBounds != null) {
+					try {
+						numericBounds.add(Long.parseLong(value.trim()));
+					} catch (NumberFormatException e) {
+						numericBounds = null;
+					}
+				}
+			}
+			for (int i = 1; i < bounds.size(); i++) {
+				boolean ordered = numericBounds != null ? numericBounds.get(i - 1) < numericBounds.get(i)
+						: bounds.get(i - 1).compareTo(bounds.get(i)) < 0;
+				if (!ordered) {
+					throw new IllegalArgumentException("Ranges must be in ascending order " + values);
+				}
+			}
+			this.table = RangeTable.of(numericBounds != null ? numericBounds : bounds);
+		}
+
+		@Override
+		public void append(Message<?> message, StringBuilder buf) {
+			Object value = source.getValue(message);
+			if (value == null) {
+				throw new IllegalArgumentException("No value to find a range for");
+			}
+			if (!table.isNumeric()) {
+				buf.append(table.lookup(value.toString()));
+			} else if (value instanceof Number) {
+				buf.append(table.lookup(((Number) value).longValue()));
+			} else {
+				buf.append(table.lookup(Long.parseLong(value.toString().trim())));
+			}
+		}
+
+	}
+
+}
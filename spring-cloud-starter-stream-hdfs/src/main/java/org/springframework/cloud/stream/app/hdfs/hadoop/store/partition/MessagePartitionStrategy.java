@@ -16,16 +16,17 @@
 
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
 import org.apache.hadoop.fs.Path;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.expression.MessageExpressionMethods;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.support.LruCache;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.spel.SpelCompilerMode;
-import org.springframework.expression.spel.SpelParserConfiguration;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
@@ -38,8 +39,6 @@ import org.springframework.messaging.support.MessageBuilder;
  */
 public class MessagePartitionStrategy<T extends Object> extends AbstractPartitionStrategy<T, Message<?>> {
 
-	private final static Log log = LogFactory.getLog(MessagePartitionStrategy.class);
-
 	/**
 	 * Instantiates a new message partition strategy with
 	 * {@link EvaluationContext}.
@@ -74,35 +73,231 @@ public class MessagePartitionStrategy<T extends Object> extends AbstractPartitio
 		super(new MessagePartitionResolver(expression, evaluationContext, expressionParser), new MessagePartitionKeyResolver<T>());
 	}
 
+	/**
+	 * Sets the max number of cached partition paths. Resolved paths are
+	 * cached by an evaluated expression value so that hot partitions share a
+	 * same {@link Path} instance. Zero, which is a default, disables caching.
+	 *
+	 * @param cacheSize the cache size
+	 */
+	public void setCacheSize(int cacheSize) {
+		getMessagePartitionResolver().setCacheSize(cacheSize);
+	}
+
+	/**
+	 * Declares that an expression only depends on given headers, in which
+	 * case an expression is evaluated once for every distinct combination of
+	 * header values. Needs a cache size to be set and can be combined with
+	 * {@link #setCacheKeyTimeBucket(long)}.
+	 *
+	 * @param headers the header names an expression depends on
+	 */
+	public void setCacheKeyHeaders(List<String> headers) {
+		getMessagePartitionResolver().setCacheKeyHeaders(headers);
+	}
+
+	/**
+	 * Declares that an expression only depends on a message timestamp with
+	 * a given granularity, in which case an expression is evaluated once for
+	 * every time bucket. Buckets are aligned to a default time zone, meaning
+	 * a bucket of a day matches a date format like {@code yyyy/MM/dd}. Needs a
+	 * cache size to be set and can be combined with {@link #setCacheKeyHeaders(List)}.
+	 *
+	 * @param timeBucket the time bucket in milliseconds
+	 */
+	public void setCacheKeyTimeBucket(long timeBucket) {
+		getMessagePartitionResolver().setCacheKeyTimeBucket(timeBucket);
+	}
+
+	/**
+	 * Sets the compiler mode used for a partition expression.
+	 *
+	 * @param compilerMode the new compiler mode
+	 * @see AbstractExpressionPartitionResolver#setCompilerMode(SpelCompilerMode)
+	 */
+	public void setCompilerMode(SpelCompilerMode compilerMode) {
+		getMessagePartitionResolver().setCompilerMode(compilerMode);
+	}
+
+	/**
+	 * Warms up a partition expression against a sample message.
+	 *
+	 * @param sample the sample message
+	 * @see AbstractExpressionPartitionResolver#warmUp(Object)
+	 */
+	public void warmUp(Message<?> sample) {
+		getMessagePartitionResolver().warmUp(sample);
+	}
+
+	/**
+	 * Gets the partition expression evaluation metrics.
+	 *
+	 * @return the metrics
+	 */
+	public PartitionExpressionMetrics getMetrics() {
+		return getMessagePartitionResolver().getMetrics();
+	}
+
+	private MessagePartitionResolver getMessagePartitionResolver() {
+		return (MessagePartitionResolver) getPartitionResolver();
+	}
+
 	/**
 	 * A {@link PartitionResolver} which uses an {@link Expression} together with
 	 * {@link MessageExpressionMethods} to evaluate new {@link Path}s.
 	 */
-	private static class MessagePartitionResolver implements PartitionResolver<Message<?>> {
-
-		private final Expression expression;
+	private static class MessagePartitionResolver extends AbstractExpressionPartitionResolver<Message<?>> {
 
 		private final MessageExpressionMethods methods;
 
+		private final TimeZone timeZone = TimeZone.getDefault();
+
+		private volatile int cacheSize;
+
+		private volatile String[] cacheKeyHeaders = new String[0];
+
+		private volatile long cacheKeyTimeBucket;
+
+		/** Paths by an evaluated expression value */
+		private volatile LruCache<String, Path> pathCache;
+
+		/** Paths by values an expression is declared to depend on */
+		private volatile LruCache<EvaluationKey, Path> evaluationCache;
+
 		public MessagePartitionResolver(String expression, StandardEvaluationContext evaluationContext, ExpressionParser expressionParser) {
-			if (expressionParser == null) {
-				// default to mixed mode
-				expressionParser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, null));
-			}
-			this.expression = expressionParser.parseExpression(expression);
+			super(parseExpression(expression, expressionParser));
 			this.methods = new MessageExpressionMethods(evaluationContext, true, true);
-			log.info("Using expression=[" + this.expression.getExpressionString() + "]");
 		}
 
 		public MessagePartitionResolver(Expression expression, StandardEvaluationContext evaluationContext) {
-			this.expression = expression;
+			super(expression);
 			this.methods = new MessageExpressionMethods(evaluationContext);
-			log.info("Using expression=[" + this.expression.getExpressionString() + "]");
+		}
+
+		@Override
+		protected String evaluate(Expression expression, Message<?> partitionKey) {
+			return methods.getValue(expression, partitionKey, String.class);
 		}
 
 		@Override
 		public Path resolvePath(Message<?> partitionKey) {
-			return new Path(methods.getValue(expression, partitionKey, String.class));
+			LruCache<EvaluationKey, Path> evaluationCache = this.evaluationCache;
+			EvaluationKey evaluationKey = null;
+			if (evaluationCache != null) {
+				evaluationKey = getEvaluationKey(partitionKey);
+				if (evaluationKey != null) {
+					Path path = evaluationCache.get(evaluationKey);
+					if (path != null) {
+						return path;
+					}
+				}
+			}
+			Path path = getPath(getValue(partitionKey));
+			if (evaluationKey != null) {
+				evaluationCache.put(evaluationKey, path);
+			}
+			return path;
+		}
+
+		void setCacheSize(int cacheSize) {
+			this.cacheSize = cacheSize;
+			initCaches();
+		}
+
+		void setCacheKeyHeaders(List<String> headers) {
+			this.cacheKeyHeaders = headers != null ? headers.toArray(new String[0]) : new String[0];
+			initCaches();
+		}
+
+		void setCacheKeyTimeBucket(long timeBucket) {
+			this.cacheKeyTimeBucket = timeBucket;
+			initCaches();
+		}
+
+		private void initCaches() {
+			if (cacheSize > 0) {
+				pathCache = new LruCache<String, Path>(cacheSize);
+				if (cacheKeyHeaders.length > 0 || cacheKeyTimeBucket > 0) {
+					evaluationCache = new LruCache<EvaluationKey, Path>(cacheSize);
+				} else {
+					evaluationCache = null;
+				}
+			} else {
+				pathCache = null;
+				evaluationCache = null;
+			}
+		}
+
+		private Path getPath(String value) {
+			LruCache<String, Path> pathCache = this.pathCache;
+			if (pathCache == null) {
+				return new Path(value);
+			}
+			Path path = pathCache.get(value);
+			if (path == null) {
+				path = new Path(value);
+				pathCache.put(value, path);
+			}
+			return path;
+		}
+
+		private EvaluationKey getEvaluationKey(Message<?> message) {
+			String[] headers = this.cacheKeyHeaders;
+			Object[] values = new Object[headers.length];
+			for (int i = 0; i < headers.length; i++) {
+				values[i] = message.getHeaders().get(headers[i]);
+			}
+			long bucket = 0;
+			long timeBucket = this.cacheKeyTimeBucket;
+			if (timeBucket > 0) {
+				Long timestamp = message.getHeaders().getTimestamp();
+				if (timestamp == null) {
+					// nothing to align to, always evaluate
+					return null;
+				}
+				long local = timestamp + timeZone.getOffset(timestamp);
+				bucket = Math.floorDiv(local, timeBucket);
+			}
+			return new EvaluationKey(values, bucket);
+		}
+
+	}
+
+	/**
+	 * Key for cached evaluations combining declared header
+	 * values with a time bucket. Values are compared deeply
+	 * so that array values, like {@code byte[]} headers of
+	 * a Kafka binder, match by content.
+	 */
+	private static class EvaluationKey {
+
+		private final Object[] values;
+
+		private final long bucket;
+
+		private final int hash;
+
+		EvaluationKey(Object[] values, long bucket) {
+			this.values = values;
+			this.bucket = bucket;
+			this.hash = 31 * Arrays.deepHashCode(values) + (int) (bucket ^ (bucket >>> 32));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof EvaluationKey)) {
+				return false;
+			}
+			EvaluationKey other = (EvaluationKey) obj;
+			return bucket == other.bucket && Arrays.deepEquals(values, other.values);
 		}
 
 	}
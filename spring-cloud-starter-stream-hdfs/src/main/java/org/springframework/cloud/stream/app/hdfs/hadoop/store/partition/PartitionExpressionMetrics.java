@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluation metrics of a partition expression.
+ *
+ */
+public class PartitionExpressionMetrics {
+
+	private final LongAdder compiledEvaluations = new LongAdder();
+
+	private final LongAdder interpretedEvaluations = new LongAdder();
+
+	private final LongAdder compileFailures = new LongAdder();
+
+	private final LongAdder evaluationTime = new LongAdder();
+
+	private volatile boolean compiled;
+
+	void evaluated(boolean compiled, long nanos) {
+		if (compiled) {
+			compiledEvaluations.increment();
+		} else {
+			interpretedEvaluations.increment();
+		}
+		evaluationTime.add(nanos);
+	}
+
+	void compileFailed() {
+		compileFailures.increment();
+	}
+
+	void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	/**
+	 * Checks if expression is currently compiled.
+	 *
+	 * @return true, if compiled
+	 */
+	public boolean isCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * Gets the number of evaluations run as compiled bytecode.
+	 *
+	 * @return the compiled evaluation count
+	 */
+	public long getCompiledEvaluations() {
+		return compiledEvaluations.sum();
+	}
+
+	/**
+	 * Gets the number of interpreted evaluations.
+	 *
+	 * @return the interpreted evaluation count
+	 */
+	public long getInterpretedEvaluations() {
+		return interpretedEvaluations.sum();
+	}
+
+	/**
+	 * Gets the number of failed compilations, either failing to compile
+	 * or a compiled expression failing at runtime.
+	 *
+	 * @return the compile failure count
+	 */
+	public long getCompileFailures() {
+		return compileFailures.sum();
+	}
+
+	/**
+	 * Gets the total evaluation time in nanoseconds.
+	 *
+	 * @return the total evaluation time
+	 */
+	public long getEvaluationTime() {
+		return evaluationTime.sum();
+	}
+
+	/**
+	 * Gets the mean evaluation time in nanoseconds.
+	 *
+	 * @return the mean evaluation time
+	 */
+	public double getMeanEvaluationTime() {
+		long count = getCompiledEvaluations() + getInterpretedEvaluations();
+		return count > 0 ? (double) getEvaluationTime() / count : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "PartitionExpressionMetrics [compiled=" + compiled + ", compiledEvaluations=" + getCompiledEvaluations()
+				+ ", interpretedEvaluations=" + getInterpretedEvaluations() + ", compileFailures="
+				+ getCompileFailures() + ", meanEvaluationTime=" + getMeanEvaluationTime() + "ns]";
+	}
+
+}
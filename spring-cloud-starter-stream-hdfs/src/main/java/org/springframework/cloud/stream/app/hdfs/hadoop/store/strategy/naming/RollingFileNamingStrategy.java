@@ -37,6 +37,11 @@ public class RollingFileNamingStrategy extends AbstractFileNamingStrategy {
 
 	private volatile String prefix = "-";
 
+	/** Patterns compiled from a prefix, matched against every file on init */
+	private volatile Pattern counterPattern = compileCounterPattern(prefix);
+
+	private volatile Pattern replacePattern = compileReplacePattern(prefix);
+
 	@Override
 	public Path resolve(Path path) {
 		if (!isEnabled()) {
@@ -66,7 +71,6 @@ public class RollingFileNamingStrategy extends AbstractFileNamingStrategy {
 			String name = path.getName();
 
 			// find numeric part
-			Pattern counterPattern = Pattern.compile(prefix + "(" + "\\d+" + ")");
 			Matcher m = counterPattern.matcher(name);
 			while (m.find()) {
 				try {
@@ -78,7 +82,6 @@ public class RollingFileNamingStrategy extends AbstractFileNamingStrategy {
 			log.debug("Initialized counter starting from " + counter);
 
 			// find complete part handled by this strategy
-			Pattern replacePattern = Pattern.compile("(" + prefix + "\\d+" + ")(.*)");
 			m = replacePattern.matcher(name);
 
 			// remove a rolling part
@@ -101,6 +104,16 @@ public class RollingFileNamingStrategy extends AbstractFileNamingStrategy {
 	 */
 	public void setPrefix(String prefix) {
 		this.prefix = prefix;
+		this.counterPattern = compileCounterPattern(prefix);
+		this.replacePattern = compileReplacePattern(prefix);
+	}
+
+	private static Pattern compileCounterPattern(String prefix) {
+		return Pattern.compile(prefix + "(" + "\\d+" + ")");
+	}
+
+	private static Pattern compileReplacePattern(String prefix) {
+		return Pattern.compile("(" + prefix + "\\d+" + ")(.*)");
 	}
 
 	@Override
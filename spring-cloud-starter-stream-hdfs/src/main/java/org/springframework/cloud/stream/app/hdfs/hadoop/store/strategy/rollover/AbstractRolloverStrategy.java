@@ -31,6 +31,10 @@ public abstract class AbstractRolloverStrategy implements RolloverStrategy, Orde
 
 	private volatile long position;
 
+	private volatile long uncompressedPosition;
+
+	private volatile long eventTime;
+
 	/**
 	 * Implementation should override this method to define a chaining order.
 	 *
@@ -47,6 +51,16 @@ public abstract class AbstractRolloverStrategy implements RolloverStrategy, Orde
 		this.position = position;
 	}
 
+	@Override
+	public void setUncompressedWritePosition(long position) {
+		this.uncompressedPosition = position;
+	}
+
+	@Override
+	public void setEventTime(long eventTime) {
+		this.eventTime = eventTime;
+	}
+
 	@Override
 	public abstract RolloverStrategy createInstance();
 
@@ -64,4 +78,22 @@ public abstract class AbstractRolloverStrategy implements RolloverStrategy, Orde
 		return position;
 	}
 
+	/**
+	 * Gets the write position before compression.
+	 *
+	 * @return the uncompressed position
+	 */
+	public long getUncompressedPosition() {
+		return uncompressedPosition;
+	}
+
+	/**
+	 * Gets the event time of records about to be written.
+	 *
+	 * @return the event time
+	 */
+	public long getEventTime() {
+		return eventTime;
+	}
+
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.springframework.util.Assert;
+
+/**
+ * A {@code RolloverStrategy} rolling over just before a file would cross
+ * a given number of hdfs blocks, so that files do not end with a nearly
+ * empty trailing block.
+ * <p>
+ * Rollover happens when a next write is expected to cross a boundary. An
+ * expected growth is a largest observed position increment of a write.
+ * With compressed output a position only moves when a compressor emits
+ * data and a compressor flushes its buffered data when a file is closed,
+ * thus room for one more increment is reserved for compressed output.
+ * <p>
+ * A block size is either given or resolved from a file system of a path
+ * on a first rollover check, so that creating a strategy doesn't need
+ * a file system. A resolved block size is shared with created instances.
+ *
+ */
+public class BlockAlignedRolloverStrategy extends AbstractRolloverStrategy {
+
+	private final static Log log = LogFactory.getLog(BlockAlignedRolloverStrategy.class);
+
+	/** Hadoop default of dfs.blocksize */
+	private final static long DEFAULT_BLOCK_SIZE = 128 * 1024 * 1024;
+
+	private final BlockSize blockSize;
+
+	private final int blocks;
+
+	private final boolean compressed;
+
+	private volatile long lastPosition;
+
+	/** Largest observed growth of a write, kept over rollovers */
+	private volatile long maxIncrement;
+
+	/**
+	 * Instantiates a new block aligned rollover strategy.
+	 *
+	 * @param blockSize the block size of written files
+	 * @param blocks the number of blocks in a file
+	 * @param compressed whether written output is compressed
+	 */
+	public BlockAlignedRolloverStrategy(long blockSize, int blocks, boolean compressed) {
+		this(new BlockSize(blockSize), blocks, compressed);
+		Assert.isTrue(blockSize > 0, "Block size must be greater than zero");
+	}
+
+	/**
+	 * Instantiates a new block aligned rollover strategy resolving a block
+	 * size from a default block size of a file system of a given path.
+	 *
+	 * @param configuration the hadoop configuration
+	 * @param path the path files are written to
+	 * @param blocks the number of blocks in a file
+	 * @param compressed whether written output is compressed
+	 */
+	public BlockAlignedRolloverStrategy(Configuration configuration, Path path, int blocks, boolean compressed) {
+		this(new BlockSize(configuration, path), blocks, compressed);
+		Assert.notNull(configuration, "Configuration must be set");
+		Assert.notNull(path, "Path must be set");
+	}
+
+	private BlockAlignedRolloverStrategy(BlockSize blockSize, int blocks, boolean compressed) {
+		Assert.isTrue(blocks > 0, "Number of blocks must be greater than zero");
+		this.blockSize = blockSize;
+		this.blocks = blocks;
+		this.compressed = compressed;
+	}
+
+	@Override
+	public void setWritePosition(long position) {
+		super.setWritePosition(position);
+		if (position > lastPosition) {
+			long increment = position - lastPosition;
+			if (increment > maxIncrement) {
+				maxIncrement = increment;
+			}
+		}
+		lastPosition = position;
+	}
+
+	@Override
+	public boolean hasRolled() {
+		if (lastPosition <= 0) {
+			return false;
+		}
+		long limit = blockSize.get() * blocks;
+		long expected = compressed ? 2 * maxIncrement : maxIncrement;
+		if (log.isDebugEnabled()) {
+			log.debug("Checking limit=" + limit + " against position=" + lastPosition + " and expected growth="
+					+ expected);
+		}
+		return lastPosition + expected >= limit;
+	}
+
+	@Override
+	public void reset() {
+		lastPosition = 0;
+	}
+
+	@Override
+	public BlockAlignedRolloverStrategy createInstance() {
+		BlockAlignedRolloverStrategy instance = new BlockAlignedRolloverStrategy(blockSize, blocks, compressed);
+		instance.setOrder(getOrder());
+		return instance;
+	}
+
+	/**
+	 * Block size either given or resolved once from a file system.
+	 */
+	private static class BlockSize {
+
+		private final Configuration configuration;
+
+		private final Path path;
+
+		private volatile long size;
+
+		BlockSize(long size) {
+			this.configuration = null;
+			this.path = null;
+			this.size = size;
+		}
+
+		BlockSize(Configuration configuration, Path path) {
+			this.configuration = configuration;
+			this.path = path;
+		}
+
+		long get() {
+			long size = this.size;
+			if (size <= 0) {
+				size = resolve();
+				this.size = size;
+			}
+			return size;
+		}
+
+		private long resolve() {
+			try {
+				// dfs.blocksize unless file system has its own default
+				long size = path.getFileSystem(configuration).getDefaultBlockSize(path);
+				if (size > 0) {
+					return size;
+				}
+			} catch (IOException | RuntimeException e) {
+				log.warn("Unable to resolve block size for path " + path + ", using dfs.blocksize", e);
+			}
+			return configuration.getLongBytes("dfs.blocksize", DEFAULT_BLOCK_SIZE);
+		}
+
+	}
+
+}
@@ -73,6 +73,37 @@ public class ChainedRolloverStrategy implements RolloverStrategy {
 		}
 	}
 
+	@Override
+	public void setUncompressedWritePosition(long position) {
+		for (Iterator<RolloverStrategy> iterator = strategies.iterator(); iterator.hasNext();) {
+			iterator.next().setUncompressedWritePosition(position);
+		}
+	}
+
+	@Override
+	public void setEventTime(long eventTime) {
+		for (Iterator<RolloverStrategy> iterator = strategies.iterator(); iterator.hasNext();) {
+			iterator.next().setEventTime(eventTime);
+		}
+	}
+
+	@Override
+	public boolean usesEventTime() {
+		for (Iterator<RolloverStrategy> iterator = strategies.iterator(); iterator.hasNext();) {
+			if (iterator.next().usesEventTime()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void recordsWritten(int count) {
+		for (Iterator<RolloverStrategy> iterator = strategies.iterator(); iterator.hasNext();) {
+			iterator.next().recordsWritten(count);
+		}
+	}
+
 	@Override
 	public ChainedRolloverStrategy createInstance() {
 		ChainedRolloverStrategy instance = new ChainedRolloverStrategy();
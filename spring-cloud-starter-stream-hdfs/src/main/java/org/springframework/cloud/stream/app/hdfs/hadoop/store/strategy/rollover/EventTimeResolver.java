@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover;
+
+/**
+ * A strategy interface resolving an event time of a record from a source
+ * known by a writer, like a partition key. Event time is passed to a
+ * {@link RolloverStrategy} before a record is written.
+ *
+ * @param <S> the type of a source
+ */
+public interface EventTimeResolver<S> {
+
+	/**
+	 * Resolve an event time.
+	 *
+	 * @param source the source
+	 * @return the event time in milliseconds
+	 */
+	long resolveEventTime(S source);
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover;
+
+import java.util.TimeZone;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@code RolloverStrategy} rolling over when event time of records moves
+ * past a window a file was started in. Windows are aligned to a default time
+ * zone same way as with {@link IntervalRolloverStrategy}. Event time is given
+ * by a writer before records are written, thus a first record of a new window
+ * starts a new file. Late records belonging to earlier windows do not cause a
+ * rollover and are written into a current file.
+ * <p>
+ * Writers not knowing an event time of a record use a current time.
+ *
+ */
+public class EventTimeRolloverStrategy extends AbstractRolloverStrategy {
+
+	private final long window;
+
+	private final TimeZone timeZone;
+
+	/** End of a current window, zero if no records written */
+	private volatile long windowEnd;
+
+	/**
+	 * Instantiates a new event time rollover strategy.
+	 *
+	 * @param window the window in milliseconds
+	 */
+	public EventTimeRolloverStrategy(long window) {
+		this(window, TimeZone.getDefault());
+	}
+
+	/**
+	 * Instantiates a new event time rollover strategy.
+	 *
+	 * @param window the window in milliseconds
+	 * @param timeZone the time zone windows are aligned to
+	 */
+	public EventTimeRolloverStrategy(long window, TimeZone timeZone) {
+		Assert.isTrue(window > 0, "Window must be greater than zero");
+		Assert.notNull(timeZone, "Time zone must be set");
+		this.window = window;
+		this.timeZone = timeZone;
+	}
+
+	@Override
+	public boolean hasRolled() {
+		long end = windowEnd;
+		return end > 0 && getEventTime() >= end;
+	}
+
+	@Override
+	public boolean usesEventTime() {
+		return true;
+	}
+
+	@Override
+	public void recordsWritten(int count) {
+		if (windowEnd == 0) {
+			windowEnd = IntervalRolloverStrategy.windowStart(getEventTime(), window, timeZone) + window;
+		}
+	}
+
+	@Override
+	public void reset() {
+		windowEnd = 0;
+	}
+
+	@Override
+	public EventTimeRolloverStrategy createInstance() {
+		EventTimeRolloverStrategy instance = new EventTimeRolloverStrategy(window, timeZone);
+		instance.setOrder(getOrder());
+		return instance;
+	}
+
+}
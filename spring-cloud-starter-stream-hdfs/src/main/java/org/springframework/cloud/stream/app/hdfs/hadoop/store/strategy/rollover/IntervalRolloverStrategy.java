@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover;
+
+import java.util.TimeZone;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@code RolloverStrategy} rolling over at wall clock interval boundaries.
+ * Intervals are aligned to a default time zone, meaning an interval of an
+ * hour rolls at every full hour and an interval of a day at midnight. A file
+ * is rolled before a first write happening after its interval has ended.
+ *
+ */
+public class IntervalRolloverStrategy extends AbstractRolloverStrategy {
+
+	private final long interval;
+
+	private final TimeZone timeZone;
+
+	/** End of a current interval, zero if no records written */
+	private volatile long intervalEnd;
+
+	/**
+	 * Instantiates a new interval rollover strategy.
+	 *
+	 * @param interval the interval in milliseconds
+	 */
+	public IntervalRolloverStrategy(long interval) {
+		this(interval, TimeZone.getDefault());
+	}
+
+	/**
+	 * Instantiates a new interval rollover strategy.
+	 *
+	 * @param interval the interval in milliseconds
+	 * @param timeZone the time zone intervals are aligned to
+	 */
+	public IntervalRolloverStrategy(long interval, TimeZone timeZone) {
+		Assert.isTrue(interval > 0, "Interval must be greater than zero");
+		Assert.notNull(timeZone, "Time zone must be set");
+		this.interval = interval;
+		this.timeZone = timeZone;
+	}
+
+	@Override
+	public boolean hasRolled() {
+		long end = intervalEnd;
+		return end > 0 && currentTime() >= end;
+	}
+
+	@Override
+	public void recordsWritten(int count) {
+		if (intervalEnd == 0) {
+			intervalEnd = windowStart(currentTime(), interval, timeZone) + interval;
+		}
+	}
+
+	@Override
+	public void reset() {
+		intervalEnd = 0;
+	}
+
+	@Override
+	public IntervalRolloverStrategy createInstance() {
+		IntervalRolloverStrategy instance = new IntervalRolloverStrategy(interval, timeZone);
+		instance.setOrder(getOrder());
+		return instance;
+	}
+
+	/**
+	 * Gets the current time.
+	 *
+	 * @return the current time in milliseconds
+	 */
+	protected long currentTime() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Gets a start of a window aligned to a time zone.
+	 *
+	 * @param time the time within a window
+	 * @param window the window length
+	 * @param timeZone the time zone
+	 * @return the window start
+	 */
+	static long windowStart(long time, long window, TimeZone timeZone) {
+		int offset = timeZone.getOffset(time);
+		return Math.floorDiv(time + offset, window) * window - offset;
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover;
+
+import org.springframework.util.Assert;
+
+/**
+ * A {@code RolloverStrategy} rolling over after a given number of written
+ * records. A batch written at once is never split, thus a file may hold
+ * more records than a limit by at most a batch.
+ *
+ */
+public class RecordCountRolloverStrategy extends AbstractRolloverStrategy {
+
+	private final long maxRecords;
+
+	private volatile long records;
+
+	/**
+	 * Instantiates a new record count rollover strategy.
+	 *
+	 * @param maxRecords the max number of records in a file
+	 */
+	public RecordCountRolloverStrategy(long maxRecords) {
+		Assert.isTrue(maxRecords > 0, "Max records must be greater than zero");
+		this.maxRecords = maxRecords;
+	}
+
+	@Override
+	public boolean hasRolled() {
+		return records >= maxRecords;
+	}
+
+	@Override
+	public void recordsWritten(int count) {
+		records += count;
+	}
+
+	@Override
+	public void reset() {
+		records = 0;
+	}
+
+	@Override
+	public RecordCountRolloverStrategy createInstance() {
+		RecordCountRolloverStrategy instance = new RecordCountRolloverStrategy(maxRecords);
+		instance.setOrder(getOrder());
+		return instance;
+	}
+
+	/**
+	 * Gets the number of records written since a last rollover.
+	 *
+	 * @return the number of records
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+}
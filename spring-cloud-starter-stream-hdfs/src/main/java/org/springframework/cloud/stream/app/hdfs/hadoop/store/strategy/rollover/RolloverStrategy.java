@@ -44,4 +44,41 @@ public interface RolloverStrategy extends RolloverStrategyFactory<RolloverStrate
 	 */
 	void setWritePosition(long position);
 
+	/**
+	 * Sets the write position before compression. Without compression
+	 * this is same as a write position. Does nothing by default.
+	 *
+	 * @param position the new uncompressed write position
+	 */
+	default void setUncompressedWritePosition(long position) {
+	}
+
+	/**
+	 * Sets the event time of records about to be written. Strategy
+	 * may request a rollover before records are written. Does nothing
+	 * by default.
+	 *
+	 * @param eventTime the event time in milliseconds
+	 */
+	default void setEventTime(long eventTime) {
+	}
+
+	/**
+	 * Checks if strategy uses an event time. Writers only resolve an event
+	 * time of records if strategy uses it.
+	 *
+	 * @return true, if strategy uses an event time
+	 */
+	default boolean usesEventTime() {
+		return false;
+	}
+
+	/**
+	 * Notifies a strategy about written records. Does nothing by default.
+	 *
+	 * @param count the number of written records
+	 */
+	default void recordsWritten(int count) {
+	}
+
 }
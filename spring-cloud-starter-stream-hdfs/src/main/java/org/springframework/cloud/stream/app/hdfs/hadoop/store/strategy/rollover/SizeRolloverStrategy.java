@@ -49,6 +49,8 @@ public class SizeRolloverStrategy extends AbstractRolloverStrategy {
 
 	private long rolloverSize;
 
+	private boolean uncompressed;
+
 	/**
 	 * Instantiates a new size rollover strategy.
 	 */
@@ -76,10 +78,11 @@ public class SizeRolloverStrategy extends AbstractRolloverStrategy {
 
 	@Override
 	public boolean hasRolled() {
+		long position = uncompressed ? getUncompressedPosition() : getPosition();
 		if (log.isDebugEnabled()) {
-			log.debug("Checking rolloverSize=" + rolloverSize + " against currentSize=" + getPosition());
+			log.debug("Checking rolloverSize=" + rolloverSize + " against currentSize=" + position);
 		}
-		return rolloverSize <= getPosition();
+		return rolloverSize <= position;
 	}
 
 	/**
@@ -91,6 +94,17 @@ public class SizeRolloverStrategy extends AbstractRolloverStrategy {
 		this.rolloverSize = rolloverSize;
 	}
 
+	/**
+	 * Sets whether rollover size is compared against a number of bytes
+	 * written before compression instead of an estimated stored size.
+	 * Has no effect without compression.
+	 *
+	 * @param uncompressed the uncompressed flag
+	 */
+	public void setUncompressed(boolean uncompressed) {
+		this.uncompressed = uncompressed;
+	}
+
 	@Override
 	public void reset() {
 		// nothing to do
@@ -100,6 +114,7 @@ public class SizeRolloverStrategy extends AbstractRolloverStrategy {
 	public SizeRolloverStrategy createInstance() {
 		SizeRolloverStrategy instance = new SizeRolloverStrategy(rolloverSize);
 		instance.setOrder(getOrder());
+		instance.setUncompressed(uncompressed);
 		return instance;
 	}
 
@@ -33,6 +33,8 @@ public class InputStoreObjectSupport extends StoreObjectSupport {
 
 	private final InputContext inputContext;
 
+	private volatile int readBufferSize;
+
 	/**
 	 * Instantiates a new input store object support.
 	 *
@@ -71,6 +73,25 @@ public class InputStoreObjectSupport extends StoreObjectSupport {
 		return split;
 	}
 
+	/**
+	 * Sets the buffer size used to open input streams. Non-positive value,
+	 * which is a default, uses the buffer size configured for a file system.
+	 *
+	 * @param readBufferSize the read buffer size in bytes
+	 */
+	public void setReadBufferSize(int readBufferSize) {
+		this.readBufferSize = readBufferSize;
+	}
+
+	/**
+	 * Gets the read buffer size.
+	 *
+	 * @return the read buffer size
+	 */
+	public int getReadBufferSize() {
+		return readBufferSize;
+	}
+
 	/**
 	 * Gets the input context.
 	 *
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * A thread safe cache holding about a given number of entries, evicting
+ * approximately least recently used entries when full.
+ * <p>
+ * Entries are kept in a {@link ConcurrentHashMap} so lookups don't take
+ * a lock. Instead of keeping an access order, every entry remembers a
+ * value of a logical clock advanced by puts, which a lookup only writes
+ * when it has changed. When a put exceeds a max size, a single thread
+ * evicts a tenth of entries with oldest accesses in one scan, so eviction
+ * cost is amortized over puts. Concurrent puts may exceed a max size
+ * until an eviction in progress completes.
+ *
+ * @param <K> the type of a key
+ * @param <V> the type of a value
+ */
+public class LruCache<K, V> {
+
+	private final int maxSize;
+
+	/** Min number of entries evicted at once */
+	private final int evictCount;
+
+	private final ConcurrentHashMap<K, Node<V>> map;
+
+	/** Logical clock advanced on every put */
+	private final AtomicLong clock = new AtomicLong();
+
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * Instantiates a new lru cache.
+	 *
+	 * @param maxSize the max number of entries
+	 */
+	public LruCache(int maxSize) {
+		Assert.isTrue(maxSize > 0, "Max size must be greater than zero");
+		this.maxSize = maxSize;
+		this.evictCount = Math.max(1, maxSize / 10);
+		this.map = new ConcurrentHashMap<K, Node<V>>();
+	}
+
+	/**
+	 * Gets a cached value.
+	 *
+	 * @param key the key
+	 * @return the value or <code>NULL</code> if not cached
+	 */
+	public V get(K key) {
+		Node<V> node = map.get(key);
+		if (node == null) {
+			return null;
+		}
+		long now = clock.get();
+		if (node.lastAccess != now) {
+			node.lastAccess = now;
+		}
+		return node.value;
+	}
+
+	/**
+	 * Caches a value.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void put(K key, V value) {
+		map.put(key, new Node<V>(value, clock.incrementAndGet()));
+		if (map.size() > maxSize) {
+			evict();
+		}
+	}
+
+	/**
+	 * Gets the number of cached entries.
+	 *
+	 * @return the number of cached entries
+	 */
+	public int size() {
+		return map.size();
+	}
+
+	/**
+	 * Gets the max number of entries.
+	 *
+	 * @return the max size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		map.clear();
+	}
+
+	private void evict() {
+		// one thread evicts at a time, others just carry on
+		if (!evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			int excess = map.size() - maxSize;
+			if (excess <= 0) {
+				return;
+			}
+			// access times are copied so that concurrent lookups
+			// don't change them while a threshold is searched
+			List<Map.Entry<K, Node<V>>> entries = new ArrayList<Map.Entry<K, Node<V>>>(map.size());
+			long[] accesses = new long[map.size() + evictCount];
+			int count = 0;
+			for (Map.Entry<K, Node<V>> entry : map.entrySet()) {
+				if (count == accesses.length) {
+					break;
+				}
+				entries.add(entry);
+				accesses[count++] = entry.getValue().lastAccess;
+			}
+			int evict = Math.min(count, Math.max(excess, evictCount));
+			if (evict == 0) {
+				return;
+			}
+			long[] sorted = Arrays.copyOf(accesses, count);
+			Arrays.sort(sorted);
+			long threshold = sorted[evict - 1];
+			for (int i = 0; i < count && evict > 0; i++) {
+				if (accesses[i] <= threshold) {
+					Map.Entry<K, Node<V>> entry = entries.get(i);
+					if (map.remove(entry.getKey(), entry.getValue())) {
+						evict--;
+					}
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Cached value together with a clock value of its last access.
+	 */
+	private static class Node<V> {
+
+		final V value;
+
+		volatile long lastAccess;
+
+		Node(V value, long lastAccess) {
+			this.value = value;
+			this.lastAccess = lastAccess;
+		}
+
+	}
+
+}
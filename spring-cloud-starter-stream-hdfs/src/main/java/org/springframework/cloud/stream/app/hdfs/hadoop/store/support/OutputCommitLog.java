@@ -0,0 +1,524 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.io.IOUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * A small sidecar file recording a committed state of a writer, which is
+ * an in-writing file together with its length known to be durable, and
+ * watermarks of a highest sequence of records written into it or into any
+ * previously closed file. Sequences only increase within a sequence
+ * partition, like a partition of a source a record was read from, so
+ * every sequence partition has its own watermark.
+ * <p>
+ * While a file is in writing, a log is kept open and every commit appends
+ * a single line record made visible with {@code hflush}, meaning a commit
+ * only talks to datanodes and doesn't cost any namenode operations. A last
+ * complete record wins, a record torn by a crash is ignored. A log is
+ * started, and compacted once it grows over a limit, by writing a current
+ * state into a temporary file which is then renamed, so a crash leaves
+ * either a previous or a new log. A log is closed once a record tells no
+ * file is in writing. On a restart,
+ * {@link #recover(OutputStoreObjectSupport)} truncates an in-writing file
+ * to its committed length and renames it to its final name so that data
+ * not yet committed is dropped and replayed records can be detected
+ * using the watermarks. A writer records a final length of a closed file
+ * before renaming it, so a missing in-writing file means it was already
+ * renamed and its watermarks are current. A file is recorded when it's opened
+ * as well, so that no file is left in writing without a log knowing it.
+ * A last file written is recorded too, so that a rolling file counter can
+ * be initialized without listing a directory.
+ *
+ */
+public class OutputCommitLog implements Closeable {
+
+	private final static Log log = LogFactory.getLog(OutputCommitLog.class);
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private static final char FIELD_SEPARATOR = '\t';
+
+	private static final char WATERMARK_SEPARATOR = ',';
+
+	private static final char PARTITION_SEPARATOR = '=';
+
+	private static final byte RECORD_SEPARATOR = '\n';
+
+	/** Size in bytes after which a log is compacted into a new one */
+	private static final long MAX_LOG_SIZE = 64 * 1024;
+
+	/** Max number of polls waiting for a lease recovery or a truncate */
+	private static final int RECOVERY_ATTEMPTS = 60;
+
+	private static final long RECOVERY_POLL_INTERVAL = 1000;
+
+	private final FileSystem fileSystem;
+
+	private final Path path;
+
+	private final Path tmpPath;
+
+	/** Open log, guarded by this */
+	private FSDataOutputStream out;
+
+	/** Bytes written into an open log, guarded by this */
+	private long written;
+
+	/**
+	 * Instantiates a new output commit log.
+	 *
+	 * @param fileSystem the file system
+	 * @param path the path of a log file
+	 */
+	public OutputCommitLog(FileSystem fileSystem, Path path) {
+		this.fileSystem = fileSystem;
+		this.path = path;
+		this.tmpPath = new Path(path.getParent(), path.getName() + TMP_SUFFIX);
+	}
+
+	/**
+	 * Checks if a file name belongs to a commit log, meaning
+	 * it's not an output file.
+	 *
+	 * @param name the file name
+	 * @param logName the log file name
+	 * @return true, if name is a log file name
+	 */
+	public static boolean isLogFile(String name, String logName) {
+		return name.equals(logName) || name.equals(logName + TMP_SUFFIX);
+	}
+
+	/**
+	 * Reads a committed state.
+	 *
+	 * @return the committed state or <code>NULL</code> if nothing is committed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Commit read() throws IOException {
+		// a temporary log only has a record if a crash happened
+		// while replacing a log, in which case it's a newer one
+		Commit commit = read(tmpPath);
+		if (commit == null) {
+			commit = read(path);
+		}
+		return commit;
+	}
+
+	/**
+	 * Writes a committed state superseding a previous one.
+	 *
+	 * @param commit the committed state
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void write(Commit commit) throws IOException {
+		byte[] record = encode(commit);
+		if (out == null || written + record.length > MAX_LOG_SIZE) {
+			replace(record);
+		} else {
+			out.write(record);
+			out.hflush();
+			written += record.length;
+		}
+		if (commit.getPath() == null) {
+			// nothing in writing, keep no stream open until a next file
+			close();
+		}
+	}
+
+	/**
+	 * Closes an open log. A next write starts a new log.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			try {
+				out.close();
+			} finally {
+				out = null;
+				written = 0;
+			}
+		}
+	}
+
+	/**
+	 * Closes and deletes a log together with its temporary file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void delete() throws IOException {
+		try {
+			close();
+		} finally {
+			fileSystem.delete(tmpPath, false);
+			fileSystem.delete(path, false);
+		}
+	}
+
+	/**
+	 * Starts a new log with a single record replacing a previous log.
+	 */
+	private void replace(byte[] record) throws IOException {
+		close();
+		FSDataOutputStream next = fileSystem.create(tmpPath, true);
+		try {
+			next.write(record);
+			next.hflush();
+			fileSystem.delete(path, false);
+			// stream stays valid, file is renamed while open
+			if (!fileSystem.rename(tmpPath, path)) {
+				throw new IOException("Failed renaming from " + tmpPath + " to " + path);
+			}
+		} catch (IOException e) {
+			IOUtils.closeStream(next);
+			throw e;
+		}
+		out = next;
+		written = record.length;
+	}
+
+	/**
+	 * Recovers a file left in writing by a previous writer. File is
+	 * truncated to its committed length and renamed to its final name,
+	 * after which a log records no file in writing. A file which no longer
+	 * exists was closed and renamed by a previous writer after its final
+	 * length was recorded.
+	 *
+	 * @param output the output store object used to rename a file
+	 * @return the committed state or <code>NULL</code> if nothing was committed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Commit recover(OutputStoreObjectSupport output) throws IOException {
+		// a log may still be open by a crashed writer
+		recoverLeaseIfExists(tmpPath);
+		recoverLeaseIfExists(path);
+		Commit commit = read();
+		if (commit == null || commit.getPath() == null) {
+			return commit;
+		}
+		Path file = commit.getPath();
+		Path lastPath = commit.getLastPath();
+		if (fileSystem.exists(file) && commit.getLength() == 0) {
+			// opened but nothing committed, no need to keep an empty file
+			log.info("Deleting file=[" + file + "] with nothing committed");
+			fileSystem.delete(file, false);
+			lastPath = output.toFinalPath(file);
+		} else if (fileSystem.exists(file)) {
+			log.info("Recovering file=[" + file + "] to committed length=[" + commit.getLength() + "]");
+			recoverLease(file);
+			long length = fileSystem.getFileStatus(file).getLen();
+			if (length > commit.getLength()) {
+				truncate(file, commit.getLength());
+			} else if (length < commit.getLength()) {
+				log.warn("File=[" + file + "] is shorter than its committed length=[" + commit.getLength() + "]");
+			}
+			lastPath = output.renameFile(file);
+		} else {
+			log.info("File=[" + file + "] was already renamed");
+			lastPath = output.toFinalPath(file);
+		}
+		Commit recovered = new Commit(null, 0, commit.getWatermarks(), lastPath);
+		write(recovered);
+		return recovered;
+	}
+
+	private void recoverLeaseIfExists(Path file) throws IOException {
+		try {
+			recoverLease(file);
+		} catch (FileNotFoundException e) {
+			// nothing to recover
+		}
+	}
+
+	private void recoverLease(Path file) throws IOException {
+		if (!(fileSystem instanceof DistributedFileSystem)) {
+			return;
+		}
+		DistributedFileSystem dfs = (DistributedFileSystem) fileSystem;
+		for (int i = 0; i < RECOVERY_ATTEMPTS; i++) {
+			if (dfs.recoverLease(file)) {
+				return;
+			}
+			pause();
+		}
+		throw new IOException("Lease of " + file + " was not recovered");
+	}
+
+	private void truncate(Path file, long length) throws IOException {
+		if (fileSystem.truncate(file, length)) {
+			return;
+		}
+		// last block is being recovered, wait until file is closed
+		if (fileSystem instanceof DistributedFileSystem) {
+			DistributedFileSystem dfs = (DistributedFileSystem) fileSystem;
+			for (int i = 0; i < RECOVERY_ATTEMPTS; i++) {
+				if (dfs.isFileClosed(file)) {
+					return;
+				}
+				pause();
+			}
+		}
+		throw new IOException("Truncate of " + file + " did not complete");
+	}
+
+	private static void pause() throws IOException {
+		try {
+			Thread.sleep(RECOVERY_POLL_INTERVAL);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted during recovery", e);
+		}
+	}
+
+	/**
+	 * Reads a last complete record of a log.
+	 *
+	 * @return the commit or <code>NULL</code> if log doesn't exist or has no complete record
+	 */
+	private Commit read(Path p) throws IOException {
+		byte[] content;
+		InputStream in;
+		try {
+			in = fileSystem.open(p);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		try {
+			content = StreamUtils.copyToByteArray(in);
+		} finally {
+			in.close();
+		}
+		Commit commit = null;
+		int start = 0;
+		for (int i = 0; i < content.length; i++) {
+			// bytes after a last separator are a torn record
+			if (content[i] == RECORD_SEPARATOR) {
+				Commit decoded = decode(new String(content, start, i - start, StandardCharsets.UTF_8));
+				if (decoded != null) {
+					commit = decoded;
+				}
+				start = i + 1;
+			}
+		}
+		return commit;
+	}
+
+	/**
+	 * Encodes a commit as a line of length, watermarks, path and last
+	 * path separated by tabs. Paths are written as escaped uris and
+	 * sequence partitions as url encoded names so that they never
+	 * contain separators.
+	 */
+	private static byte[] encode(Commit commit) {
+		StringBuilder buf = new StringBuilder(128);
+		buf.append(commit.getLength()).append(FIELD_SEPARATOR);
+		encode(buf, commit.getWatermarks());
+		buf.append(FIELD_SEPARATOR);
+		buf.append(encode(commit.getPath())).append(FIELD_SEPARATOR);
+		buf.append(encode(commit.getLastPath())).append((char) RECORD_SEPARATOR);
+		return buf.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String encode(Path path) {
+		return path != null ? path.toUri().toASCIIString() : "";
+	}
+
+	/**
+	 * Encodes watermarks as comma separated pairs of a partition and a
+	 * watermark. A watermark of a default partition is written without
+	 * a partition, same as a single watermark of earlier logs.
+	 */
+	private static void encode(StringBuilder buf, Map<String, Long> watermarks) {
+		boolean first = true;
+		for (Map.Entry<String, Long> entry : watermarks.entrySet()) {
+			if (!first) {
+				buf.append(WATERMARK_SEPARATOR);
+			}
+			first = false;
+			if (!entry.getKey().equals(Commit.DEFAULT_PARTITION)) {
+				buf.append(encodePartition(entry.getKey())).append(PARTITION_SEPARATOR);
+			}
+			buf.append(entry.getValue());
+		}
+	}
+
+	private static Map<String, Long> decodeWatermarks(String field) {
+		Map<String, Long> watermarks = new TreeMap<String, Long>();
+		if (field.isEmpty()) {
+			return watermarks;
+		}
+		for (String pair : field.split(String.valueOf(WATERMARK_SEPARATOR), -1)) {
+			int index = pair.indexOf(PARTITION_SEPARATOR);
+			String partition = index < 0 ? Commit.DEFAULT_PARTITION : decodePartition(pair.substring(0, index));
+			long watermark = Long.parseLong(pair.substring(index + 1));
+			// unknown watermark of earlier logs
+			if (watermark >= 0) {
+				watermarks.put(partition, watermark);
+			}
+		}
+		return watermarks;
+	}
+
+	private static String encodePartition(String partition) {
+		try {
+			return URLEncoder.encode(partition, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String decodePartition(String field) {
+		try {
+			return URLDecoder.decode(field, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Commit decode(String line) {
+		String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+		if (fields.length != 4) {
+			return null;
+		}
+		try {
+			return new Commit(decodePath(fields[2]), Long.parseLong(fields[0]), decodeWatermarks(fields[1]),
+					decodePath(fields[3]));
+		} catch (IllegalArgumentException e) {
+			log.warn("Ignoring malformed commit log record [" + line + "]");
+			return null;
+		}
+	}
+
+	private static Path decodePath(String field) {
+		return field.isEmpty() ? null : new Path(URI.create(field));
+	}
+
+	/**
+	 * A committed state of a writer.
+	 */
+	public static class Commit {
+
+		/** Sequence partition of records not telling their partition */
+		public static final String DEFAULT_PARTITION = "";
+
+		private final Path path;
+
+		private final long length;
+
+		private final Map<String, Long> watermarks;
+
+		private final Path lastPath;
+
+		/**
+		 * Instantiates a new commit.
+		 *
+		 * @param path the file in writing, <code>NULL</code> if none
+		 * @param length the committed length of a file in writing
+		 * @param watermarks the highest written sequences by sequence partition
+		 */
+		public Commit(Path path, long length, Map<String, Long> watermarks) {
+			this(path, length, watermarks, path);
+		}
+
+		/**
+		 * Instantiates a new commit.
+		 *
+		 * @param path the file in writing, <code>NULL</code> if none
+		 * @param length the committed length of a file in writing
+		 * @param watermarks the highest written sequences by sequence partition
+		 * @param lastPath the last file written, <code>NULL</code> if not known
+		 */
+		public Commit(Path path, long length, Map<String, Long> watermarks, Path lastPath) {
+			this.path = path;
+			this.length = length;
+			this.watermarks = Collections.unmodifiableMap(new TreeMap<String, Long>(watermarks));
+			this.lastPath = lastPath;
+		}
+
+		/**
+		 * Gets the file in writing.
+		 *
+		 * @return the file in writing
+		 */
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * Gets the committed length of a file in writing.
+		 *
+		 * @return the committed length
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Gets the highest written sequences by sequence partition.
+		 *
+		 * @return the watermarks
+		 */
+		public Map<String, Long> getWatermarks() {
+			return watermarks;
+		}
+
+		/**
+		 * Gets the highest written sequence of a sequence partition.
+		 *
+		 * @param partition the sequence partition
+		 * @return the watermark or -1 if not known
+		 */
+		public long getWatermark(String partition) {
+			Long watermark = watermarks.get(partition);
+			return watermark != null ? watermark : -1;
+		}
+
+		/**
+		 * Gets the last file written, either a file in writing or a final
+		 * path of a last closed file. Used to initialize file naming
+		 * without listing a directory.
+		 *
+		 * @return the last file written
+		 */
+		public Path getLastPath() {
+			return lastPath;
+		}
+
+	}
+
+}
@@ -53,6 +53,48 @@ public class OutputContext {
 		}
 	}
 
+	/**
+	 * Sets the write position before compression.
+	 *
+	 * @param position the new uncompressed write position
+	 */
+	public void setUncompressedWritePosition(long position) {
+		if (rolloverStrategy != null) {
+			rolloverStrategy.setUncompressedWritePosition(position);
+		}
+	}
+
+	/**
+	 * Sets the event time of records about to be written.
+	 *
+	 * @param eventTime the event time in milliseconds
+	 */
+	public void setEventTime(long eventTime) {
+		if (rolloverStrategy != null) {
+			rolloverStrategy.setEventTime(eventTime);
+		}
+	}
+
+	/**
+	 * Checks if a rollover strategy uses an event time.
+	 *
+	 * @return true, if event time should be set before writes
+	 */
+	public boolean usesEventTime() {
+		return rolloverStrategy != null && rolloverStrategy.usesEventTime();
+	}
+
+	/**
+	 * Notifies about written records.
+	 *
+	 * @param count the number of written records
+	 */
+	public void recordsWritten(int count) {
+		if (rolloverStrategy != null) {
+			rolloverStrategy.recordsWritten(count);
+		}
+	}
+
 	/**
 	 * Gets the rollover state.
 	 *
@@ -15,9 +15,11 @@
  */
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -25,6 +27,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.StoreException;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.FileNamingStrategy;
@@ -42,6 +45,9 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 
 	private final static Log log = LogFactory.getLog(OutputStoreObjectSupport.class);
 
+	/** Event time telling a write has no known event time */
+	public final static long UNKNOWN_EVENT_TIME = Long.MIN_VALUE;
+
 	/** Context holder for strategies */
 	private OutputContext outputContext;
 
@@ -63,6 +69,24 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 	/** Flag enabling Syncable hflush*/
 	private boolean syncable = false;
 
+	/** Name of a commit log file if commit log is used */
+	private String commitLogName;
+
+	/** Commit log created during initOutputContext */
+	private volatile OutputCommitLog commitLog;
+
+	/** Watermarks by sequence partition recovered from a commit log */
+	private volatile Map<String, Long> committedWatermarks = Collections.emptyMap();
+
+	/** Final path of a last file written */
+	private volatile Path lastOutputPath;
+
+	/** Name of a last file marker if used without a commit log */
+	private String lastFileMarkerName;
+
+	/** Last file marker created during initOutputContext */
+	private volatile OutputCommitLog lastFileMarker;
+
 	/**
 	 * Instantiates a new abstract output store support.
 	 *
@@ -86,42 +110,118 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 		}
 	}
 
+	/**
+	 * Initializes strategies from a newest existing file matching a file
+	 * naming strategy. If a commit log or a last file marker knows a last
+	 * file written, it's used without listing a base path. Otherwise a base path is listed
+	 * incrementally and naming strategies are only matched against files
+	 * newer than a newest match found so far.
+	 *
+	 * @throws Exception if error occurred during init
+	 */
 	synchronized protected void initOutputContext() throws Exception {
 		if (internalInitDone) {
 			return;
 		}
-		for (FileStatus status : findInitFiles(getPath())) {
-			String name = status.getPath().getName();
-			if (StringUtils.hasText(prefix) && name.startsWith(prefix)) {
-				name = name.substring(prefix.length());
+		OutputCommitLog.Commit commit = null;
+		if (StringUtils.hasText(commitLogName) && commitLog == null) {
+			OutputCommitLog outputLog = new OutputCommitLog(getFileSystem(), new Path(getPath(), commitLogName));
+			commit = outputLog.recover(this);
+			if (commit != null) {
+				committedWatermarks = commit.getWatermarks();
+				lastOutputPath = commit.getLastPath();
+			}
+			commitLog = outputLog;
+		} else if (!StringUtils.hasText(commitLogName) && StringUtils.hasText(lastFileMarkerName)
+				&& lastFileMarker == null) {
+			// marker only ever records closed files, recovery just
+			// makes sure it's readable after a crashed writer
+			OutputCommitLog marker = new OutputCommitLog(getFileSystem(), new Path(getPath(), lastFileMarkerName));
+			commit = marker.recover(this);
+			if (commit != null) {
+				lastOutputPath = commit.getLastPath();
 			}
-			if (StringUtils.hasText(suffix) && name.endsWith(suffix)) {
-				name = name.substring(0, name.length() - suffix.length());
+			lastFileMarker = marker;
+		}
+		if (commit != null && commit.getLastPath() != null && initFrom(commit.getLastPath())) {
+			log.debug("Initialized from last path=[" + commit.getLastPath() + "]");
+			internalInitDone = true;
+			return;
+		}
+		FileStatus newest = null;
+		RemoteIterator<FileStatus> files = listInitFiles(getPath());
+		while (files.hasNext()) {
+			FileStatus status = files.next();
+			if (newest != null && status.getModificationTime() <= newest.getModificationTime()) {
+				continue;
 			}
-			Path path = new Path(status.getPath().getParent(), name);
-			if (outputContext.init(path) == null) {
-				break;
+			if (StringUtils.hasText(commitLogName) && OutputCommitLog.isLogFile(status.getPath().getName(), commitLogName)) {
+				continue;
+			}
+			if (StringUtils.hasText(lastFileMarkerName)
+					&& OutputCommitLog.isLogFile(status.getPath().getName(), lastFileMarkerName)) {
+				continue;
+			}
+			if (initFrom(status.getPath())) {
+				newest = status;
 			}
 		}
+		if (newest != null) {
+			// a later non matching file resets strategies
+			initFrom(newest.getPath());
+		}
 		internalInitDone = true;
 	}
 
-	protected FileStatus[] findInitFiles(Path basePath) throws Exception {
-		FileSystem fileSystem = basePath.getFileSystem(getConfiguration());
-		if (fileSystem.exists(basePath)) {
-			FileStatus[] fileStatuses = fileSystem.listStatus(basePath);
-			Arrays.sort(fileStatuses, new Comparator<FileStatus>() {
-				public int compare(FileStatus f1, FileStatus f2) {
-					// newest first
-					return -Long.valueOf(f1.getModificationTime()).compareTo(f2.getModificationTime());
+	/**
+	 * Lists files in a base path used to initialize strategies. Listing
+	 * is fetched lazily in batches and an empty iterator is returned if
+	 * a base path doesn't exist.
+	 *
+	 * @param basePath the base path
+	 * @return the iterator of files
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected RemoteIterator<FileStatus> listInitFiles(Path basePath) throws IOException {
+		try {
+			RemoteIterator<FileStatus> iterator = getFileSystem().listStatusIterator(basePath);
+			// some file systems only fail on a first fetch
+			iterator.hasNext();
+			return iterator;
+		} catch (FileNotFoundException e) {
+			return new RemoteIterator<FileStatus>() {
+
+				@Override
+				public boolean hasNext() {
+					return false;
 				}
-			});
-			return fileStatuses;
-		} else {
-			return new FileStatus[0];
+
+				@Override
+				public FileStatus next() {
+					throw new NoSuchElementException();
+				}
+			};
 		}
 	}
 
+	/**
+	 * Initializes strategies from a file name without in-writing prefix
+	 * and suffix.
+	 *
+	 * @param file the file
+	 * @return true, if whole name was matched by strategies
+	 */
+	private boolean initFrom(Path file) {
+		String name = file.getName();
+		if (StringUtils.hasText(prefix) && name.startsWith(prefix)) {
+			name = name.substring(prefix.length());
+		}
+		if (StringUtils.hasText(suffix) && name.endsWith(suffix)) {
+			name = name.substring(0, name.length() - suffix.length());
+		}
+		return outputContext.init(new Path(file.getParent(), name)) == null;
+	}
+
 	/**
 	 * Gets the strategy context.
 	 *
@@ -237,28 +337,95 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 		this.syncable = syncable;
 	}
 
+	/**
+	 * Sets the name of a commit log file kept in a base path. If set, a
+	 * committed length of a file in writing and a watermark of written
+	 * sequences are recorded into a log, and a file left in writing by a
+	 * previous writer is recovered to its committed length on init.
+	 *
+	 * @param commitLogName the commit log file name
+	 * @see OutputCommitLog
+	 */
+	public void setCommitLogName(String commitLogName) {
+		this.commitLogName = commitLogName;
+	}
+
+	/**
+	 * Gets the name of a commit log file.
+	 *
+	 * @return the commit log file name
+	 */
+	public String getCommitLogName() {
+		return commitLogName;
+	}
+
+	/**
+	 * Sets the name of a last file marker kept in a base path. If set and
+	 * a commit log is not used, a final path of every closed file is
+	 * recorded into a marker so that strategies can be initialized after
+	 * a restart without listing a base path. Unlike a commit log, a marker
+	 * is only written when a file is closed and works with any codec or
+	 * sync setting.
+	 *
+	 * @param lastFileMarkerName the last file marker name
+	 * @see #setCommitLogName(String)
+	 */
+	public void setLastFileMarkerName(String lastFileMarkerName) {
+		this.lastFileMarkerName = lastFileMarkerName;
+	}
+
+	/**
+	 * Gets the watermark of a sequence partition recovered from a commit
+	 * log. Records of a partition with a sequence at or below its watermark
+	 * were already committed.
+	 *
+	 * @param sequencePartition the sequence partition
+	 * @return the committed watermark or -1 if not known
+	 */
+	protected long getCommittedWatermark(String sequencePartition) {
+		Long watermark = committedWatermarks.get(sequencePartition);
+		return watermark != null ? watermark : -1;
+	}
+
+	/**
+	 * Gets the watermarks by sequence partition recovered from a commit log.
+	 *
+	 * @return the committed watermarks
+	 */
+	protected Map<String, Long> getCommittedWatermarks() {
+		return committedWatermarks;
+	}
+
+	/**
+	 * Records a committed state into a commit log. Does nothing if commit
+	 * log is not used.
+	 *
+	 * @param path the file in writing, <code>NULL</code> if none
+	 * @param length the committed length of a file in writing
+	 * @param watermarks the highest sequences written by sequence partition
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected void commitOutput(Path path, long length, Map<String, Long> watermarks) throws IOException {
+		OutputCommitLog outputLog = commitLog;
+		if (outputLog != null) {
+			outputLog.write(new OutputCommitLog.Commit(path, length, watermarks, path != null ? path : lastOutputPath));
+		}
+	}
+
 	/**
 	 * Gets the resolved path.
 	 *
 	 * @return the resolved path
 	 */
 	protected Path getResolvedPath() {
-		Path p;
-		if (outputContext != null) {
-			p = outputContext.resolvePath(getPath());
-		} else {
-			p = getPath();
-		}
+		Path p = resolveContextPath();
 
 		// check for file without inuse prefix/suffix
 		if (isFileWriteable(p)) {
 			throw new StoreException("Path [" + p + "] exists and overwritten not allowed");
 		}
 
-		String name = (StringUtils.hasText(prefix) ? prefix : "") + p.getName()
-				+ (StringUtils.hasText(suffix) ? suffix : "");
-
-		p = new Path(p.getParent(), name);
+		p = toInWritingPath(p);
 		// check for file with inuse prefix/suffix
 		if (isFileWriteable(p)) {
 			throw new StoreException("Path [" + p + "] exists and overwritten not allowed");
@@ -266,6 +433,40 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 		return p;
 	}
 
+	/**
+	 * Gets the resolved path to be created without checking if it already
+	 * exists, caller is expected to create it without overwriting. Only if
+	 * in-writing prefix or suffix is used, a path without those is checked
+	 * so that a rename on close would not replace an existing file.
+	 *
+	 * @return the resolved path
+	 */
+	protected Path getResolvedPathForCreate() {
+		Path p = resolveContextPath();
+		Path inWritingPath = toInWritingPath(p);
+		if (!inWritingPath.equals(p) && isFileWriteable(p)) {
+			throw new StoreException("Path [" + p + "] exists and overwritten not allowed");
+		}
+		return inWritingPath;
+	}
+
+	private Path resolveContextPath() {
+		if (outputContext != null) {
+			return outputContext.resolvePath(getPath());
+		} else {
+			return getPath();
+		}
+	}
+
+	private Path toInWritingPath(Path p) {
+		if (!StringUtils.hasText(prefix) && !StringUtils.hasText(suffix)) {
+			return p;
+		}
+		String name = (StringUtils.hasText(prefix) ? prefix : "") + p.getName()
+				+ (StringUtils.hasText(suffix) ? suffix : "");
+		return new Path(p.getParent(), name);
+	}
+
 	protected boolean isFileWriteable(Path p){
 		return !overwrite && pathExists(p) && !append;
 	}
@@ -280,6 +481,52 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 		resetIdleTimeout();
 	}
 
+	/**
+	 * Passes an event time to a rollover strategy and closes an open output
+	 * if strategy wants to roll before a write. Records without a known
+	 * event time use a current time, which is only read if a strategy uses
+	 * event time.
+	 *
+	 * @param open true if an output is open
+	 * @param eventTime the event time or {@link #UNKNOWN_EVENT_TIME}
+	 * @throws IOException if an I/O error occurs
+	 */
+	protected void rollBeforeWrite(boolean open, long eventTime) throws IOException {
+		OutputContext context = getOutputContext();
+		if (context.usesEventTime()) {
+			context.setEventTime(eventTime != UNKNOWN_EVENT_TIME ? eventTime : System.currentTimeMillis());
+		}
+		if (open && context.getRolloverState()) {
+			log.info("Before write, rollover state is true");
+			close();
+			context.rollStrategies();
+		}
+	}
+
+	/**
+	 * Notifies a rollover strategy about written records and closes an
+	 * output if strategy wants to roll after a write.
+	 *
+	 * @param count the number of written records
+	 * @throws IOException if an I/O error occurs
+	 */
+	protected void rollAfterWrite(int count) throws IOException {
+		OutputContext context = getOutputContext();
+		context.recordsWritten(count);
+		if (context.getRolloverState()) {
+			log.info("After write, rollover state is true");
+			close();
+			context.rollStrategies();
+		}
+	}
+
+	/**
+	 * Closes a current output if any.
+	 *
+	 * @throws IOException if an I/O error occurs
+	 */
+	public abstract void close() throws IOException;
+
 	/**
 	 * Rename file using prefix and suffix settings.
 	 *
@@ -290,18 +537,13 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 		log.debug("renameFile called with path=[" + path + "]");
 		// bail out if there's no in-writing settings
 		if (!StringUtils.hasText(prefix) && !StringUtils.hasText(suffix)) {
+			lastOutputPath = path;
+			markLastFile(path);
 			return path;
 		}
-		String name = path.getName();
-		if (StringUtils.startsWithIgnoreCase(name, prefix)) {
-			name = name.substring(prefix.length());
-		}
-		if (StringUtils.endsWithIgnoreCase(name, suffix)) {
-			name = name.substring(0, name.length() - suffix.length());
-		}
-		Path toPath = new Path(path.getParent(), name);
+		Path toPath = toFinalPath(path);
 		try {
-			FileSystem fs = path.getFileSystem(getConfiguration());
+			FileSystem fs = getFileSystem();
 
 			boolean succeed;
 			try {
@@ -314,17 +556,64 @@ public abstract class OutputStoreObjectSupport extends StoreObjectSupport {
 			if (!succeed) {
 				throw new StoreException("Failed renaming from " + path + " to " + toPath + " because hdfs returned false");
 			}
+			lastOutputPath = toPath;
 		}
 		catch (IOException e) {
 			log.error("Error renaming file", e);
 			throw new StoreException("Error renaming file", e);
 		}
+		markLastFile(toPath);
 		return toPath;
 	}
 
+	/**
+	 * Records a last file written into a last file marker if used. A marker
+	 * which can't be written is deleted, as a stale marker would make every
+	 * restart walk through all newer files one open attempt at a time.
+	 *
+	 * @param path the final path of a closed file
+	 */
+	private void markLastFile(Path path) {
+		OutputCommitLog marker = lastFileMarker;
+		if (marker == null) {
+			return;
+		}
+		try {
+			marker.write(new OutputCommitLog.Commit(null, 0, Collections.<String, Long> emptyMap(), path));
+		} catch (IOException e) {
+			log.warn("Error writing last file marker, deleting it", e);
+			try {
+				marker.delete();
+			} catch (IOException ex) {
+				log.error("Error deleting last file marker", ex);
+			}
+		}
+	}
+
+	/**
+	 * Gets a final path of an in-writing file, meaning a path without
+	 * in-writing prefix and suffix.
+	 *
+	 * @param path the in-writing path
+	 * @return the final path
+	 */
+	protected Path toFinalPath(Path path) {
+		if (!StringUtils.hasText(prefix) && !StringUtils.hasText(suffix)) {
+			return path;
+		}
+		String name = path.getName();
+		if (StringUtils.startsWithIgnoreCase(name, prefix)) {
+			name = name.substring(prefix.length());
+		}
+		if (StringUtils.endsWithIgnoreCase(name, suffix)) {
+			name = name.substring(0, name.length() - suffix.length());
+		}
+		return new Path(path.getParent(), name);
+	}
+
 	private boolean pathExists(Path path) {
 		try {
-			return path.getFileSystem(getConfiguration()).exists(path);
+			return getFileSystem().exists(path);
 		} catch (IOException e) {
 		}
 		return false;
@@ -15,14 +15,21 @@
  */
 package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.Trigger;
+import org.springframework.util.ClassUtils;
 
 /**
  * Base implementation of a store objects sharing a common functionality among store formats.
@@ -34,6 +41,9 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 
 	private final static Log log = LogFactory.getLog(StoreObjectSupport.class);
 
+	private final static AtomicLongFieldUpdater<StoreObjectSupport> LAST_IDLE_UPDATER =
+			AtomicLongFieldUpdater.newUpdater(StoreObjectSupport.class, "lastIdle");
+
 	/** Hadoop configuration */
 	private final Configuration configuration;
 
@@ -43,6 +53,12 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 	/** Hdfs path into a store */
 	private final Path basePath;
 
+	/** Codec instance resolved from codec info */
+	private volatile CompressionCodec compressionCodec;
+
+	/** File system of a base path */
+	private volatile FileSystem fileSystem;
+
 	/** Poller checking idle timeouts */
 	private IdleTimeoutPoller idlePoller;
 
@@ -61,6 +77,21 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 	/** Trigger in flush poller */
 	private volatile IdleTimeoutTrigger flushTrigger;
 
+	/** Shared timeout wheel used instead of pollers if set */
+	private volatile TimeoutWheel timeoutWheel;
+
+	/** Flag telling timeout wheel was created and is managed by this object */
+	private boolean ownTimeoutWheel = false;
+
+	/** Idle timeout in a wheel */
+	private volatile TimeoutWheel.Timeout idleWheelTimeout;
+
+	/** Close timeout in a wheel */
+	private volatile TimeoutWheel.Timeout closeWheelTimeout;
+
+	/** Flush timeout in a wheel */
+	private volatile TimeoutWheel.Timeout flushWheelTimeout;
+
 	/**
 	 * In millis last idle time reset. We explicitly use negative value to indicate reset state
 	 * because we can't use long max value which would flip if adding something. We reset this
@@ -92,6 +123,25 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 
 	@Override
 	protected void onInit() throws Exception {
+		// track timeouts with an own wheel instead of pollers, which
+		// also gives resetting of an idle timeout a coarse clock
+		if (timeoutWheel == null && (idleTimeout > 0 || closeTimeout > 0 || flushTimeout > 0)
+				&& getTaskScheduler() != null && getTaskExecutor() != null) {
+			TimeoutWheel wheel = new TimeoutWheel();
+			if (getBeanFactory() != null) {
+				wheel.setBeanFactory(getBeanFactory());
+			}
+			wheel.setTaskScheduler(getTaskScheduler());
+			wheel.setTaskExecutor(getTaskExecutor());
+			wheel.setAutoStartup(false);
+			wheel.afterPropertiesSet();
+			timeoutWheel = wheel;
+			ownTimeoutWheel = true;
+		}
+		// timeouts are registered into a wheel when started
+		if (timeoutWheel != null) {
+			return;
+		}
 		// if we have idle timeout, enable polling by creating it
 		if (idleTimeout > 0) {
 			idleTrigger = new IdleTimeoutTrigger(idleTimeout);
@@ -116,6 +166,12 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 
 	@Override
 	protected void doStart() {
+		if (ownTimeoutWheel) {
+			timeoutWheel.start();
+		}
+		if (timeoutWheel != null) {
+			startWheelTimeouts(timeoutWheel);
+		}
 		if (idlePoller != null) {
 			idlePoller.start();
 		}
@@ -142,6 +198,10 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 			closePoller.stop();
 		}
 		closePoller = null;
+		cancelWheelTimeouts();
+		if (ownTimeoutWheel) {
+			timeoutWheel.stop();
+		}
 	}
 
 	/**
@@ -162,6 +222,22 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 		return basePath;
 	}
 
+	/**
+	 * Gets the file system of a base path. File system is resolved
+	 * once and reused for all operations of this object.
+	 *
+	 * @return the file system
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected FileSystem getFileSystem() throws IOException {
+		FileSystem fs = fileSystem;
+		if (fs == null) {
+			fs = basePath != null ? basePath.getFileSystem(configuration) : FileSystem.get(configuration);
+			fileSystem = fs;
+		}
+		return fs;
+	}
+
 	/**
 	 * Gets the codec.
 	 *
@@ -171,6 +247,25 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 		return codecInfo;
 	}
 
+	/**
+	 * Gets the compression codec instance for a codec info. Codec is
+	 * resolved and instantiated once and reused for every stream.
+	 *
+	 * @return the compression codec or <code>NULL</code> if not compressed
+	 */
+	protected CompressionCodec getCompressionCodec() {
+		if (codecInfo == null) {
+			return null;
+		}
+		CompressionCodec codec = compressionCodec;
+		if (codec == null) {
+			Class<?> clazz = ClassUtils.resolveClassName(codecInfo.getCodecClass(), getClass().getClassLoader());
+			codec = (CompressionCodec) ReflectionUtils.newInstance(clazz, configuration);
+			compressionCodec = codec;
+		}
+		return codec;
+	}
+
 	/**
 	 * Checks if is compressed.
 	 *
@@ -208,10 +303,37 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 	}
 
 	/**
-	 * Reset idle timeout.
+	 * Sets the timeout wheel. If set, idle, close and flush timeouts are
+	 * tracked by a given wheel. If not set, a wheel is created when any of
+	 * the timeouts is enabled and both a task scheduler and an executor are
+	 * set, otherwise pollers are created for this object. Needs to be set
+	 * before this object is initialized.
+	 *
+	 * @param timeoutWheel the timeout wheel
+	 */
+	public void setTimeoutWheel(TimeoutWheel timeoutWheel) {
+		this.timeoutWheel = timeoutWheel;
+	}
+
+	/**
+	 * Reset idle timeout. This is called for every write and only
+	 * does an ordered store of a current time, using a coarse clock of
+	 * a timeout wheel if set. Timeout itself is checked asynchronously.
 	 */
 	public void resetIdleTimeout() {
-		lastIdle = System.currentTimeMillis();
+		TimeoutWheel wheel = timeoutWheel;
+		LAST_IDLE_UPDATER.lazySet(this, wheel != null ? wheel.currentTimeMillis() : System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the time of a last activity, which is updated on every write.
+	 * Time may lag behind a system clock by a tick of a timeout wheel.
+	 *
+	 * @return the time in millis or a negative value if there has been
+	 *         no activity since start or a last idle timeout
+	 */
+	public long getLastActivity() {
+		return lastIdle;
 	}
 
 	/**
@@ -230,6 +352,108 @@ public abstract class StoreObjectSupport extends LifecycleObjectSupport {
 	protected void flushTimeout() {
 	}
 
+	private void startWheelTimeouts(TimeoutWheel wheel) {
+		long now = System.currentTimeMillis();
+		// idle timeout stays scheduled and is checked against last write
+		if (idleTimeout > 0) {
+			idleWheelTimeout = wheel.newTimeout(new Runnable() {
+
+				@Override
+				public void run() {
+					onIdleWheelTimeout();
+				}
+			});
+			idleWheelTimeout.reschedule(now + idleTimeout);
+		}
+		if (closeTimeout > 0) {
+			closeWheelTimeout = wheel.newTimeout(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						if (log.isDebugEnabled()) {
+							log.debug("Close timeout detected, calling handleTimeout()");
+						}
+						handleTimeout();
+					} catch (Exception e) {
+						log.error("error closing", e);
+					} finally {
+						rescheduleWheelTimeout(closeWheelTimeout, closeTimeout);
+					}
+				}
+			});
+			closeWheelTimeout.reschedule(now + closeTimeout);
+		}
+		if (flushTimeout > 0) {
+			flushWheelTimeout = wheel.newTimeout(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						if (log.isDebugEnabled()) {
+							log.debug("Flush timeout detected, calling flushTimeout()");
+						}
+						flushTimeout();
+					} catch (Exception e) {
+						log.error("error flushing", e);
+					} finally {
+						rescheduleWheelTimeout(flushWheelTimeout, flushTimeout);
+					}
+				}
+			});
+			flushWheelTimeout.reschedule(now + flushTimeout);
+		}
+	}
+
+	private void onIdleWheelTimeout() {
+		long now = System.currentTimeMillis();
+		long last = lastIdle;
+		if (last < 0) {
+			// nothing written since last timeout
+			rescheduleWheelTimeout(idleWheelTimeout, idleTimeout);
+			return;
+		}
+		if (last + idleTimeout > now) {
+			// written since deadline was set, wait until idle from last write
+			rescheduleWheelTimeout(idleWheelTimeout, last + idleTimeout - now);
+			return;
+		}
+		try {
+			if (log.isDebugEnabled()) {
+				log.debug("Idle timeout detected, calling handleTimeout()");
+			}
+			handleTimeout();
+		} catch (Exception e) {
+			log.error("error closing", e);
+		} finally {
+			// reset lastIdle so we can wait new timeout
+			lastIdle = Long.MIN_VALUE;
+			rescheduleWheelTimeout(idleWheelTimeout, idleTimeout);
+		}
+	}
+
+	private static void rescheduleWheelTimeout(TimeoutWheel.Timeout timeout, long delay) {
+		if (timeout != null) {
+			timeout.reschedule(System.currentTimeMillis() + delay);
+		}
+	}
+
+	private void cancelWheelTimeouts() {
+		// flush before others as with pollers
+		if (flushWheelTimeout != null) {
+			flushWheelTimeout.cancel();
+		}
+		flushWheelTimeout = null;
+		if (idleWheelTimeout != null) {
+			idleWheelTimeout.cancel();
+		}
+		idleWheelTimeout = null;
+		if (closeWheelTimeout != null) {
+			closeWheelTimeout.cancel();
+		}
+		closeWheelTimeout = null;
+	}
+
 	/**
 	 * Poller which checks idle timeout by last write and closes a writer if timeout has occurred.
 	 */
@@ -21,6 +21,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
 import org.springframework.util.Assert;
 
 /**
@@ -40,6 +43,14 @@ public class StreamsHolder<T extends Closeable> implements Closeable {
 
 	private Path path;
 
+	private CountingOutputStream uncompressedCounter;
+
+	private CountingOutputStream compressedCounter;
+
+	private Compressor compressor;
+
+	private Decompressor decompressor;
+
 	/**
 	 * Instantiates a new streams holder.
 	 */
@@ -78,17 +89,30 @@ public class StreamsHolder<T extends Closeable> implements Closeable {
 	 */
 	@Override
 	public void close() throws IOException {
-		if (stream != null) {
-			stream.close();
+		try {
+			if (stream != null) {
+				stream.close();
+			}
+			if (wrappedStream != null) {
+				try {
+					wrappedStream.close();
+				}
+				catch (IOException e) {
+					// try to close but eat IOException because it was
+					// already closed by the main stream or something
+					// else happened what we should not care about
+				}
+			}
 		}
-		if (wrappedStream != null) {
-			try {
-				wrappedStream.close();
+		finally {
+			// streams are done with pooled codec parts even if closing failed
+			if (compressor != null) {
+				CodecPool.returnCompressor(compressor);
+				compressor = null;
 			}
-			catch (IOException e) {
-				// try to close but eat IOException because it was
-				// already closed by the main stream or something
-				// else happened what we should not care about
+			if (decompressor != null) {
+				CodecPool.returnDecompressor(decompressor);
+				decompressor = null;
 			}
 		}
 	}
@@ -147,4 +171,53 @@ public class StreamsHolder<T extends Closeable> implements Closeable {
 		this.path = path;
 	}
 
+	/**
+	 * Sets the counters around a compression codec.
+	 *
+	 * @param uncompressedCounter the counter of bytes written into a codec
+	 * @param compressedCounter the counter of bytes produced by a codec
+	 */
+	public void setCounters(CountingOutputStream uncompressedCounter, CountingOutputStream compressedCounter) {
+		this.uncompressedCounter = uncompressedCounter;
+		this.compressedCounter = compressedCounter;
+	}
+
+	/**
+	 * Sets the compressor borrowed from a {@link CodecPool}. Compressor
+	 * is returned into a pool when this holder is closed.
+	 *
+	 * @param compressor the pooled compressor
+	 */
+	public void setCompressor(Compressor compressor) {
+		this.compressor = compressor;
+	}
+
+	/**
+	 * Sets the decompressor borrowed from a {@link CodecPool}. Decompressor
+	 * is returned into a pool when this holder is closed.
+	 *
+	 * @param decompressor the pooled decompressor
+	 */
+	public void setDecompressor(Decompressor decompressor) {
+		this.decompressor = decompressor;
+	}
+
+	/**
+	 * Gets the number of bytes written into a compression codec.
+	 *
+	 * @return the uncompressed byte count or -1 if not counted
+	 */
+	public long getUncompressedCount() {
+		return uncompressedCounter != null ? uncompressedCounter.getCount() : -1;
+	}
+
+	/**
+	 * Gets the number of bytes produced by a compression codec.
+	 *
+	 * @return the compressed byte count or -1 if not counted
+	 */
+	public long getCompressedCount() {
+		return compressedCounter != null ? compressedCounter.getCount() : -1;
+	}
+
 }
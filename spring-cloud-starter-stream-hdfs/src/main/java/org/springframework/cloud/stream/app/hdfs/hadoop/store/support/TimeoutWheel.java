@@ -0,0 +1,329 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.util.Assert;
+
+/**
+ * A hashed timing wheel tracking timeouts of many store objects with a
+ * single tick task scheduled on a {@code TaskScheduler}. Expired timeouts
+ * are handed to a {@code TaskExecutor}.
+ * <p>
+ * Moving a deadline of a scheduled {@link Timeout} only updates a volatile
+ * field, entry is moved to its new bucket lazily when a tick finds it
+ * not yet expired. This keeps a reset done on every write free of locking.
+ * <p>
+ * Wheel also provides a coarse clock updated on every tick, which can be
+ * read instead of a system clock where a precision of one tick is enough.
+ *
+ */
+public class TimeoutWheel extends LifecycleObjectSupport {
+
+	private final static Log log = LogFactory.getLog(TimeoutWheel.class);
+
+	/** Default tick duration in millis */
+	public static final long DEFAULT_TICK_DURATION = 100;
+
+	/** Default number of buckets */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private final long tickDuration;
+
+	private final int mask;
+
+	/** Heads of bucket lists, guarded by lock */
+	private final Timeout[] buckets;
+
+	private final Object lock = new Object();
+
+	private final long startTime = System.currentTimeMillis();
+
+	/** Last processed tick, guarded by lock */
+	private long processedTick;
+
+	/** Number of scheduled timeouts, guarded by lock */
+	private int pending;
+
+	private volatile ScheduledFuture<?> tickTask;
+
+	/** Coarse clock updated on every tick */
+	private volatile long clock = System.currentTimeMillis();
+
+	/**
+	 * Instantiates a new timeout wheel with default tick
+	 * duration and wheel size.
+	 */
+	public TimeoutWheel() {
+		this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * Instantiates a new timeout wheel. Wheel size is rounded
+	 * up to a power of two.
+	 *
+	 * @param tickDuration the tick duration in millis
+	 * @param wheelSize the number of buckets
+	 */
+	public TimeoutWheel(long tickDuration, int wheelSize) {
+		Assert.isTrue(tickDuration > 0, "Tick duration must be positive");
+		Assert.isTrue(wheelSize > 0 && wheelSize <= (1 << 30), "Wheel size must be between 1 and 2^30");
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.tickDuration = tickDuration;
+		this.mask = size - 1;
+		this.buckets = new Timeout[size];
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		Assert.notNull(getTaskScheduler(), "TaskScheduler must be set");
+		Assert.notNull(getTaskExecutor(), "TaskExecutor must be set");
+	}
+
+	@Override
+	protected void doStart() {
+		clock = System.currentTimeMillis();
+		tickTask = getTaskScheduler().scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				tick();
+			}
+		}, tickDuration);
+	}
+
+	@Override
+	protected void doStop() {
+		ScheduledFuture<?> task = tickTask;
+		if (task != null) {
+			task.cancel(false);
+		}
+		tickTask = null;
+	}
+
+	/**
+	 * Creates a new timeout which is not scheduled until its
+	 * deadline is set with {@link Timeout#reschedule(long)}.
+	 *
+	 * @param task the task run when timeout expires
+	 * @return the timeout
+	 */
+	public Timeout newTimeout(Runnable task) {
+		Assert.notNull(task, "Task must be set");
+		return new Timeout(task);
+	}
+
+	/**
+	 * Gets the tick duration.
+	 *
+	 * @return the tick duration in millis
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+
+	/**
+	 * Gets the time of a last tick. Lags behind a system
+	 * clock at most by a tick duration while wheel is running.
+	 *
+	 * @return the coarse current time in millis
+	 */
+	public long currentTimeMillis() {
+		return clock;
+	}
+
+	/**
+	 * Gets the number of currently scheduled timeouts.
+	 *
+	 * @return the number of scheduled timeouts
+	 */
+	public int getPendingTimeouts() {
+		synchronized (lock) {
+			return pending;
+		}
+	}
+
+	/**
+	 * Processes buckets passed since a last tick.
+	 */
+	void tick() {
+		long now = System.currentTimeMillis();
+		clock = now;
+		List<Timeout> expired = null;
+		synchronized (lock) {
+			long currentTick = toTick(now);
+			// if we fell behind, one round covers all buckets
+			long from = Math.max(processedTick + 1, currentTick - mask);
+			for (long t = from; t <= currentTick; t++) {
+				int index = (int) (t & mask);
+				Timeout timeout = buckets[index];
+				while (timeout != null) {
+					Timeout next = timeout.next;
+					long deadline = timeout.deadline;
+					if (deadline <= now) {
+						remove(timeout);
+						if (expired == null) {
+							expired = new ArrayList<Timeout>();
+						}
+						expired.add(timeout);
+					} else {
+						int target = bucketIndex(deadline, currentTick);
+						if (target != index) {
+							remove(timeout);
+							insert(timeout, target);
+						}
+					}
+					timeout = next;
+				}
+			}
+			processedTick = Math.max(processedTick, currentTick);
+		}
+		if (expired != null) {
+			for (Timeout timeout : expired) {
+				execute(timeout);
+			}
+		}
+	}
+
+	private void execute(Timeout timeout) {
+		TaskExecutor executor = getTaskExecutor();
+		try {
+			executor.execute(timeout.task);
+		} catch (TaskRejectedException e) {
+			log.warn("Timeout task rejected, retrying on next tick", e);
+			timeout.reschedule(System.currentTimeMillis());
+		}
+	}
+
+	private long toTick(long time) {
+		return Math.max(0, (time - startTime) / tickDuration);
+	}
+
+	/**
+	 * Gets a bucket for a deadline, deadlines already passed
+	 * land into a bucket processed on a next tick.
+	 */
+	private int bucketIndex(long deadline, long currentTick) {
+		long tick = Math.max(toTick(deadline), currentTick + 1);
+		return (int) (tick & mask);
+	}
+
+	private void insert(Timeout timeout, int index) {
+		Timeout head = buckets[index];
+		timeout.prev = null;
+		timeout.next = head;
+		if (head != null) {
+			head.prev = timeout;
+		}
+		buckets[index] = timeout;
+		timeout.bucket = index;
+		pending++;
+	}
+
+	private void remove(Timeout timeout) {
+		int index = timeout.bucket;
+		if (index < 0) {
+			return;
+		}
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else {
+			buckets[index] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = null;
+		timeout.next = null;
+		timeout.bucket = -1;
+		pending--;
+	}
+
+	/**
+	 * A timeout tracked by a {@link TimeoutWheel}. Once expired,
+	 * timeout is not scheduled until its deadline is set again.
+	 */
+	public class Timeout {
+
+		private final Runnable task;
+
+		private volatile long deadline = Long.MAX_VALUE;
+
+		/** Bucket index or -1 if not scheduled, written under lock */
+		private volatile int bucket = -1;
+
+		private volatile boolean cancelled;
+
+		/** Bucket list links, guarded by lock */
+		private Timeout prev;
+
+		private Timeout next;
+
+		Timeout(Runnable task) {
+			this.task = task;
+		}
+
+		/**
+		 * Sets a new deadline. If timeout is already scheduled this
+		 * only updates its deadline, otherwise timeout is added to
+		 * a wheel. Has no effect after timeout has been cancelled.
+		 *
+		 * @param deadline the deadline in millis
+		 */
+		public void reschedule(long deadline) {
+			this.deadline = deadline;
+			if (bucket < 0 && !cancelled) {
+				synchronized (lock) {
+					if (bucket < 0 && !cancelled) {
+						insert(this, bucketIndex(deadline, processedTick));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Cancels this timeout and removes it from a wheel.
+		 */
+		public void cancel() {
+			cancelled = true;
+			synchronized (lock) {
+				remove(this);
+			}
+		}
+
+		/**
+		 * Gets the current deadline.
+		 *
+		 * @return the deadline in millis
+		 */
+		public long getDeadline() {
+			return deadline;
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link DateFormatCache} giving same results as
+ * a newly created {@link SimpleDateFormat}.
+ *
+ */
+public class DateFormatCacheTests {
+
+	private static final String[] PATTERNS = { "yyyy/MM/dd/HH", "yyyy-MM-dd", "yyyyMMddHHmm", "yyyy/MM/dd/HH/mm/ss",
+			"yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy/ww", "EEE yyyy", "dd/MMM/yy hh a" };
+
+	@Test
+	public void testSameAsSimpleDateFormat() {
+		long start = 1546300800000L - 3600000L;
+		for (String pattern : PATTERNS) {
+			SimpleDateFormat format = new SimpleDateFormat(pattern);
+			// steps of 7 minutes 13 seconds cross every bucket boundary, both
+			// forwards and back to check buckets are not only cached forwards
+			for (int i = 0; i < 500; i++) {
+				long timestamp = start + i * 433123L;
+				assertThat(pattern, DateFormatCache.format(pattern, timestamp),
+						is(format.format(new Date(timestamp))));
+				long earlier = start - i * 433123L;
+				assertThat(pattern, DateFormatCache.format(pattern, earlier), is(format.format(new Date(earlier))));
+			}
+		}
+	}
+
+	@Test
+	public void testFormatsNumbersAndDates() {
+		long timestamp = 1546300800000L;
+		String expected = new SimpleDateFormat("yyyy/MM/dd").format(new Date(timestamp));
+		assertThat(DateFormatCache.format("yyyy/MM/dd", (Object) Long.valueOf(timestamp)), is(expected));
+		assertThat(DateFormatCache.format("yyyy/MM/dd", (Object) new Date(timestamp)), is(expected));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFormatsOnlyNumbersAndDates() {
+		DateFormatCache.format("yyyy/MM/dd", (Object) "2019");
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		Date date = DateFormatCache.parse("yyyy-MM-dd HH:mm", "2019-01-01 12:30");
+		assertThat(date, is(new SimpleDateFormat("yyyy-MM-dd HH:mm").parse("2019-01-01 12:30")));
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+/**
+ * Tests for {@link HashRangeMethodExecutor} resolved per expression.
+ *
+ */
+public class HashRangeMethodExecutorTests {
+
+	@Test
+	public void testRangeFromExpression() {
+		StandardEvaluationContext context = new StandardEvaluationContext();
+		context.addMethodResolver(new PartitionKeyMethodResolver());
+		Expression expression = new SpelExpressionParser().parseExpression("range(#root,{10,20,30})");
+		assertThat(expression.getValue(context, 15, String.class), is("20_range"));
+		assertThat(expression.getValue(context, 30, String.class), is("30_range"));
+		assertThat(expression.getValue(context, 45, String.class), is("30_range"));
+	}
+
+	@Test
+	public void testResolvesExecutorInstance() throws AccessException {
+		List<TypeDescriptor> argumentTypes = Arrays.asList(TypeDescriptor.valueOf(Integer.class),
+				TypeDescriptor.valueOf(List.class));
+		assertThat(new PartitionKeyMethodResolver().resolve(new StandardEvaluationContext(), new Object(),
+				PartitionKeyMethodResolver.METHOD_HASHRANGE, argumentTypes), instanceOf(HashRangeMethodExecutor.class));
+	}
+
+	@Test
+	public void testTableOfOtherListNotUsed() throws AccessException {
+		HashRangeMethodExecutor executor = new HashRangeMethodExecutor();
+		List<Integer> ranges = Arrays.asList(10, 20, 30);
+		assertThat(executor.execute(null, null, 15, ranges).getValue(), is((Object) "20_range"));
+		assertThat(executor.execute(null, null, 15, Arrays.asList(15, 25)).getValue(), is((Object) "15_range"));
+		assertThat(executor.execute(null, null, 25, ranges).getValue(), is((Object) "30_range"));
+		assertThat(executor.execute(null, null, "m", Collections.singletonList("t")).getValue(), is((Object) "t_range"));
+	}
+
+}
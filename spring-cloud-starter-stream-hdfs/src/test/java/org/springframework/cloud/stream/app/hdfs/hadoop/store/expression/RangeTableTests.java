@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.expression;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RangeTable}.
+ *
+ */
+public class RangeTableTests {
+
+	@Test
+	public void testNumericBounds() {
+		RangeTable table = RangeTable.of(Arrays.asList(10, 20L, (short) 30));
+		assertThat(table.isNumeric(), is(true));
+		assertThat(table.lookup(5), is("10_range"));
+		assertThat(table.lookup(10), is("10_range"));
+		assertThat(table.lookup(11), is("20_range"));
+		assertThat(table.lookup(30), is("30_range"));
+		// keys over a last bound resolve to a last bound
+		assertThat(table.lookup(31), is("30_range"));
+		assertThat(table.lookup((Object) Integer.valueOf(15)), is("20_range"));
+		assertThat(table.supports(15L), is(true));
+		assertThat(table.supports("15"), is(false));
+		assertThat(table.supports(1.5d), is(false));
+	}
+
+	@Test
+	public void testStringBounds() {
+		RangeTable table = RangeTable.of(Arrays.asList("f", "m", "t"));
+		assertThat(table.isNumeric(), is(false));
+		assertThat(table.lookup("a"), is("f_range"));
+		assertThat(table.lookup("f"), is("f_range"));
+		assertThat(table.lookup("g"), is("m_range"));
+		assertThat(table.lookup("z"), is("t_range"));
+		assertThat(table.supports("x"), is(true));
+		assertThat(table.supports(1), is(false));
+	}
+
+	@Test
+	public void testUnsupportedBounds() {
+		assertThat(RangeTable.of(Collections.emptyList()), nullValue());
+		assertThat(RangeTable.of(Arrays.<Object> asList(10, "20")), nullValue());
+		assertThat(RangeTable.of(Arrays.<Object> asList("a", 20)), nullValue());
+		assertThat(RangeTable.of(Arrays.asList(1.5d, 2.5d)), nullValue());
+	}
+
+}
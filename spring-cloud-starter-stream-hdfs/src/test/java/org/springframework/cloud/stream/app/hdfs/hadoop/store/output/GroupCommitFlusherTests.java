@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Tests for {@link GroupCommitFlusher} syncing dirty writers once per
+ * commit and carrying failed writers over to a next commit.
+ *
+ */
+public class GroupCommitFlusherTests {
+
+	@Test
+	public void testCommitSyncsDirtyWritersOnce() {
+		GroupCommitFlusher flusher = createFlusher();
+		SyncingWriter first = new SyncingWriter();
+		SyncingWriter second = new SyncingWriter();
+		flusher.markDirty(first, 10);
+		flusher.markDirty(second, 10);
+		flusher.markDirty(first, 10);
+		CompletableFuture<Void> future = flusher.getCommitFuture();
+		flusher.commit();
+		assertThat(future.isDone() && !future.isCompletedExceptionally(), is(true));
+		assertThat(first.syncs, is(1));
+		assertThat(second.syncs, is(1));
+
+		// nothing written since, next commit completes without syncing
+		future = flusher.getCommitFuture();
+		flusher.commit();
+		assertThat(future.isDone(), is(true));
+		assertThat(first.syncs, is(1));
+	}
+
+	@Test
+	public void testFailedWriterCarriedOver() {
+		GroupCommitFlusher flusher = createFlusher();
+		SyncingWriter writer = new SyncingWriter();
+		writer.fail = true;
+		flusher.markDirty(writer, 10);
+		CompletableFuture<Void> future = flusher.getCommitFuture();
+		flusher.commit();
+		assertThat(future.isCompletedExceptionally(), is(true));
+
+		writer.fail = false;
+		future = flusher.getCommitFuture();
+		flusher.commit();
+		assertThat(future.isDone() && !future.isCompletedExceptionally(), is(true));
+		assertThat(writer.syncs, is(2));
+	}
+
+	@Test
+	public void testBytesThresholdTriggersCommit() throws Exception {
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.afterPropertiesSet();
+		try {
+			GroupCommitFlusher flusher = createFlusher();
+			flusher.setBytesThreshold(100);
+			flusher.setTaskScheduler(taskScheduler);
+			flusher.afterPropertiesSet();
+			flusher.start();
+			SyncingWriter writer = new SyncingWriter();
+			CompletableFuture<Void> future = flusher.getCommitFuture();
+			flusher.markDirty(writer, 50);
+			flusher.markDirty(writer, 50);
+			future.get(5, TimeUnit.SECONDS);
+			assertThat(writer.syncs, is(1));
+			flusher.stop();
+		} finally {
+			taskScheduler.shutdown();
+		}
+	}
+
+	private static GroupCommitFlusher createFlusher() {
+		GroupCommitFlusher flusher = new GroupCommitFlusher();
+		// long enough for an interval not to trigger commits in tests
+		flusher.setInterval(60000);
+		flusher.setTaskExecutor(new SyncTaskExecutor());
+		return flusher;
+	}
+
+	private static class SyncingWriter extends TextFileWriter {
+
+		volatile int syncs;
+
+		volatile boolean fail;
+
+		SyncingWriter() {
+			super(new Configuration(), new Path("/tmp"), null);
+		}
+
+		@Override
+		public synchronized void sync(boolean hsync) throws IOException {
+			syncs++;
+			if (fail) {
+				throw new IOException("Simulated sync failure");
+			}
+		}
+
+	}
+
+}
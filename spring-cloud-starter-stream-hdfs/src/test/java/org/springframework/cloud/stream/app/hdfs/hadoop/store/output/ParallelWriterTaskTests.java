@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+/**
+ * Tests for {@link ParallelWriterTask}.
+ *
+ */
+public class ParallelWriterTaskTests {
+
+	@Test
+	public void testRunsAllAndReportsFailures() {
+		final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+		ParallelWriterTask<String> task = new ParallelWriterTask<String>() {
+
+			@Override
+			protected void run(String writer) throws Exception {
+				if (writer.startsWith("bad")) {
+					throw new Exception("Simulated failure");
+				}
+				handled.add(writer);
+			}
+
+			@Override
+			protected void failed(String writer, Exception e) {
+				failed.add(writer);
+			}
+		};
+		boolean completed = task.runAll(Arrays.asList("w1", "w2", "bad1", "w3", "w4"), 3, Long.MAX_VALUE,
+				new SimpleAsyncTaskExecutor());
+		assertThat(completed, is(true));
+		assertThat(handled, containsInAnyOrder("w1", "w2", "w3", "w4"));
+		assertThat(failed, containsInAnyOrder("bad1"));
+	}
+
+	@Test
+	public void testRunsWithoutExecutor() {
+		final List<String> handled = new ArrayList<String>();
+		ParallelWriterTask<String> task = new ParallelWriterTask<String>() {
+
+			@Override
+			protected void run(String writer) throws Exception {
+				handled.add(writer);
+			}
+
+			@Override
+			protected void failed(String writer, Exception e) {
+			}
+		};
+		assertThat(task.runAll(Arrays.asList("w1", "w2"), 4, Long.MAX_VALUE, null), is(true));
+		assertThat(handled, is(Arrays.asList("w1", "w2")));
+	}
+
+	@Test
+	public void testStopsAtDeadline() {
+		final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+		ParallelWriterTask<String> task = new ParallelWriterTask<String>() {
+
+			@Override
+			protected void run(String writer) throws Exception {
+				Thread.sleep(200);
+				handled.add(writer);
+			}
+
+			@Override
+			protected void failed(String writer, Exception e) {
+			}
+		};
+		long deadline = System.currentTimeMillis() + 100;
+		boolean completed = task.runAll(Arrays.asList("w1", "w2", "w3", "w4"), 2, deadline,
+				new SimpleAsyncTaskExecutor());
+		assertThat(completed, is(false));
+		assertThat(handled.size() < 4, is(true));
+	}
+
+}
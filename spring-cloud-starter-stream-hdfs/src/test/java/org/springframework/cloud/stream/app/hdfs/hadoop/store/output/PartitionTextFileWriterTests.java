@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionKeyResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
+
+/**
+ * Tests for {@link PartitionTextFileWriter} counting bytes of all
+ * partition writers.
+ *
+ */
+public class PartitionTextFileWriterTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testBytesOfOpenAndClosedWriters() throws IOException {
+		Configuration configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		PartitionTextFileWriter<String> writer = new PartitionTextFileWriter<String>(configuration,
+				new Path("file:" + folder.getRoot().getAbsolutePath()), null, new KeyPartitionStrategy());
+		writer.afterPropertiesSet();
+		writer.start();
+		writer.write("abc", "p1");
+		writer.write("de", "p2");
+		assertThat(writer.getUncompressedBytes(), is(7L));
+		assertThat(writer.getCompressedBytes(), is(7L));
+		writer.close();
+		assertThat(writer.getMetrics().getClosedUncompressedBytes(), is(7L));
+		assertThat(writer.getUncompressedBytes(), is(7L));
+		assertThat(writer.getCompressedBytes(), is(7L));
+	}
+
+	private static class KeyPartitionStrategy implements PartitionStrategy<String, String> {
+
+		@Override
+		public PartitionResolver<String> getPartitionResolver() {
+			return new PartitionResolver<String>() {
+
+				@Override
+				public Path resolvePath(String partitionKey) {
+					return new Path(partitionKey);
+				}
+			};
+		}
+
+		@Override
+		public PartitionKeyResolver<String, String> getPartitionKeyResolver() {
+			return new PartitionKeyResolver<String, String>() {
+
+				@Override
+				public String resolvePartitionKey(String entity) {
+					return entity;
+				}
+			};
+		}
+
+	}
+
+}
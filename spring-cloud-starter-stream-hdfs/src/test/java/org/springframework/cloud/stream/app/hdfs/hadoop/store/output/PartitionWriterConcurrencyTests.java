@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionKeyResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
+
+/**
+ * Tests for {@link AbstractPartitionDataStoreWriter} creating partition
+ * writers concurrently without a common lock.
+ *
+ */
+public class PartitionWriterConcurrencyTests {
+
+	@Test
+	public void testSlowCreateDoesNotBlockOtherPartitions() throws Exception {
+		final TestPartitionWriter writer = new TestPartitionWriter();
+		writer.blockedPath = "p1";
+		Thread thread = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					writer.write("a", "p1");
+				} catch (IOException e) {
+				}
+			}
+		};
+		thread.start();
+		assertThat(writer.creating.await(5, TimeUnit.SECONDS), is(true));
+		// p1 writer is still being created
+		writer.write("b", "p2");
+		assertThat(writer.created.size(), is(1));
+		writer.release.countDown();
+		thread.join(5000);
+		assertThat(writer.created.size(), is(2));
+	}
+
+	@Test
+	public void testSamePartitionWaitsForCreatedWriter() throws Exception {
+		final TestPartitionWriter writer = new TestPartitionWriter();
+		writer.blockedPath = "p1";
+		Thread first = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					writer.write("a", "p1");
+				} catch (IOException e) {
+				}
+			}
+		};
+		first.start();
+		assertThat(writer.creating.await(5, TimeUnit.SECONDS), is(true));
+		Thread second = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					writer.write("b", "p1");
+				} catch (IOException e) {
+				}
+			}
+		};
+		second.start();
+		writer.release.countDown();
+		first.join(5000);
+		second.join(5000);
+		assertThat(writer.created.size(), is(1));
+		assertThat(writer.created.get(0).written.size(), is(2));
+	}
+
+	@Test
+	public void testFailedCreateIsRetried() throws IOException {
+		TestPartitionWriter writer = new TestPartitionWriter();
+		writer.failPath = "p1";
+		try {
+			writer.write("a", "p1");
+			fail("Expected RuntimeException");
+		} catch (RuntimeException e) {
+		}
+		writer.failPath = null;
+		writer.write("b", "p1");
+		assertThat(writer.created.size(), is(1));
+		assertThat(writer.created.get(0).written, is(Arrays.asList("b")));
+	}
+
+	private static class TestPartitionWriter extends AbstractPartitionDataStoreWriter<String, String> {
+
+		final List<RecordingWriter> created = new CopyOnWriteArrayList<RecordingWriter>();
+
+		final CountDownLatch creating = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		volatile String blockedPath;
+
+		volatile String failPath;
+
+		TestPartitionWriter() {
+			super(new Configuration(), new Path("/tmp"), null, new PartitionStrategy<String, String>() {
+
+				@Override
+				public PartitionResolver<String> getPartitionResolver() {
+					return new PartitionResolver<String>() {
+
+						@Override
+						public Path resolvePath(String partitionKey) {
+							return new Path(partitionKey);
+						}
+					};
+				}
+
+				@Override
+				public PartitionKeyResolver<String, String> getPartitionKeyResolver() {
+					return new PartitionKeyResolver<String, String>() {
+
+						@Override
+						public String resolvePartitionKey(String entity) {
+							return entity;
+						}
+					};
+				}
+			});
+			afterPropertiesSet();
+		}
+
+		@Override
+		protected DataStoreWriter<String> createWriter(Configuration configuration, Path path, CodecInfo codec) {
+			if (path != null && path.toString().equals(failPath)) {
+				throw new IllegalStateException("Simulated create failure");
+			}
+			if (path != null && path.toString().equals(blockedPath)) {
+				creating.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			RecordingWriter writer = new RecordingWriter();
+			created.add(writer);
+			return writer;
+		}
+
+	}
+
+	private static class RecordingWriter implements DataStoreWriter<String> {
+
+		final List<String> written = new CopyOnWriteArrayList<String>();
+
+		@Override
+		public void write(String entity) throws IOException {
+			writeAll(Arrays.asList(entity));
+		}
+
+		@Override
+		public void writeAll(Collection<String> entities) throws IOException {
+			written.addAll(entities);
+		}
+
+		@Override
+		public void flush() throws IOException {
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+	}
+
+}
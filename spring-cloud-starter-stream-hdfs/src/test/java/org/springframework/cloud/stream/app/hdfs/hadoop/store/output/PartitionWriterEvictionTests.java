@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionKeyResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
+import org.springframework.core.task.TaskExecutor;
+
+/**
+ * Tests for {@link AbstractPartitionDataStoreWriter} evicting least recently
+ * used writers and closing them with a task executor.
+ *
+ */
+public class PartitionWriterEvictionTests {
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private final TaskExecutor executor = new TaskExecutor() {
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+	};
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws IOException {
+		TestPartitionWriter writer = new TestPartitionWriter(2);
+		writer.write("a", "p1");
+		writer.write("b", "p2");
+		writer.write("c", "p1");
+		writer.write("d", "p3");
+		assertThat(writer.created.size(), is(3));
+		// p2 is evicted but closed only by an executor
+		RecordingWriter p2 = writer.created.get(1);
+		assertThat(p2.closed, is(false));
+		runTasks();
+		assertThat(p2.closed, is(true));
+		assertThat(writer.created.get(0).closed, is(false));
+		assertThat(writer.created.get(2).closed, is(false));
+
+		// p1 is now least recently used
+		writer.write("e", "p2");
+		assertThat(writer.created.size(), is(4));
+		runTasks();
+		assertThat(writer.created.get(0).closed, is(true));
+		assertThat(writer.created.get(3).written, is(Arrays.asList("e")));
+	}
+
+	@Test
+	public void testDestroyedWriterIsNotEvicted() throws IOException {
+		TestPartitionWriter writer = new TestPartitionWriter(2);
+		writer.write("a", "p1");
+		writer.write("b", "p2");
+		writer.destroyWriter(new Path("p1"), writer.created.get(0));
+		writer.write("c", "p3");
+		runTasks();
+		assertThat(writer.created.get(1).closed, is(false));
+		assertThat(writer.created.get(2).closed, is(false));
+	}
+
+	@Test
+	public void testCloseIncludesPendingEvictions() throws IOException {
+		TestPartitionWriter writer = new TestPartitionWriter(1);
+		writer.write("a", "p1");
+		writer.write("b", "p2");
+		assertThat(writer.created.get(0).closed, is(false));
+		writer.close();
+		assertThat(writer.created.get(0).closed, is(true));
+		assertThat(writer.created.get(1).closed, is(true));
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private class TestPartitionWriter extends AbstractPartitionDataStoreWriter<String, String> {
+
+		final List<RecordingWriter> created = new ArrayList<RecordingWriter>();
+
+		TestPartitionWriter(int maxOpenWriters) {
+			super(new Configuration(), new Path("/tmp"), null, new PartitionStrategy<String, String>() {
+
+				@Override
+				public PartitionResolver<String> getPartitionResolver() {
+					return new PartitionResolver<String>() {
+
+						@Override
+						public Path resolvePath(String partitionKey) {
+							return new Path(partitionKey);
+						}
+					};
+				}
+
+				@Override
+				public PartitionKeyResolver<String, String> getPartitionKeyResolver() {
+					return new PartitionKeyResolver<String, String>() {
+
+						@Override
+						public String resolvePartitionKey(String entity) {
+							return entity;
+						}
+					};
+				}
+			});
+			setMaxOpenWriters(maxOpenWriters);
+			setTaskExecutor(executor);
+			afterPropertiesSet();
+		}
+
+		@Override
+		protected DataStoreWriter<String> createWriter(Configuration configuration, Path path, CodecInfo codec) {
+			RecordingWriter writer = new RecordingWriter();
+			created.add(writer);
+			return writer;
+		}
+
+	}
+
+	private static class RecordingWriter implements DataStoreWriter<String> {
+
+		final List<String> written = new ArrayList<String>();
+
+		volatile boolean closed;
+
+		@Override
+		public void write(String entity) throws IOException {
+			writeAll(Arrays.asList(entity));
+		}
+
+		@Override
+		public void writeAll(Collection<String> entities) throws IOException {
+			written.addAll(entities);
+		}
+
+		@Override
+		public void flush() throws IOException {
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+
+	}
+
+}
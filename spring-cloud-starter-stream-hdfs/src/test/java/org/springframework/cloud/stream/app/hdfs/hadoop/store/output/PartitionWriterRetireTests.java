@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.StoreException;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionKeyResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
+
+/**
+ * Tests for {@link AbstractPartitionDataStoreWriter} retrying writes which
+ * raced with a partition writer being closed by an eviction or a timeout.
+ *
+ */
+public class PartitionWriterRetireTests {
+
+	@Test
+	public void testWriteRetriesWithNewWriter() throws IOException {
+		TestPartitionWriter writer = new TestPartitionWriter(1);
+		writer.write("a", "p1");
+		assertThat(writer.created.size(), is(2));
+		assertThat(writer.created.get(0).written.isEmpty(), is(true));
+		assertThat(writer.created.get(1).written, is(Arrays.asList("a")));
+		writer.write("b", "p1");
+		assertThat(writer.created.size(), is(2));
+		assertThat(writer.created.get(1).written, is(Arrays.asList("a", "b")));
+	}
+
+	@Test
+	public void testBatchFallsBackToSingleWrites() throws IOException {
+		TestPartitionWriter writer = new TestPartitionWriter(1);
+		writer.writeAll(Arrays.asList("a", "b", "c"), Arrays.asList("p1", "p2", "p1"));
+		assertThat(writer.created.size(), is(3));
+		// p1 writer retired on its batch, p2 writer was fine
+		assertThat(writer.created.get(0).written.isEmpty(), is(true));
+		assertThat(writer.created.get(1).written, is(Arrays.asList("b")));
+		assertThat(writer.created.get(2).written, is(Arrays.asList("a", "c")));
+	}
+
+	@Test
+	public void testGivesUpAfterMaxAttempts() throws IOException {
+		TestPartitionWriter writer = new TestPartitionWriter(Integer.MAX_VALUE);
+		try {
+			writer.write("a", "p1");
+			fail("Expected StoreException");
+		} catch (StoreException e) {
+		}
+		assertThat(writer.created.size(), is(AbstractPartitionDataStoreWriter.MAX_WRITE_ATTEMPTS));
+	}
+
+	private static class TestPartitionWriter extends AbstractPartitionDataStoreWriter<String, String> {
+
+		final List<RetiringWriter> created = new ArrayList<RetiringWriter>();
+
+		int retiring;
+
+		TestPartitionWriter(int retiring) {
+			super(new Configuration(), new Path("/tmp"), null, new PartitionStrategy<String, String>() {
+
+				@Override
+				public PartitionResolver<String> getPartitionResolver() {
+					return new PartitionResolver<String>() {
+
+						@Override
+						public Path resolvePath(String partitionKey) {
+							return new Path(partitionKey);
+						}
+					};
+				}
+
+				@Override
+				public PartitionKeyResolver<String, String> getPartitionKeyResolver() {
+					return new PartitionKeyResolver<String, String>() {
+
+						@Override
+						public String resolvePartitionKey(String entity) {
+							return entity;
+						}
+					};
+				}
+			});
+			this.retiring = retiring;
+			afterPropertiesSet();
+		}
+
+		@Override
+		protected DataStoreWriter<String> createWriter(Configuration configuration, Path path, CodecInfo codec) {
+			// writers created first are closed by a simulated eviction
+			// between a lookup and a write
+			RetiringWriter writer = new RetiringWriter(this, path, retiring-- > 0);
+			created.add(writer);
+			return writer;
+		}
+
+	}
+
+	private static class RetiringWriter implements DataStoreWriter<String> {
+
+		final List<String> written = new ArrayList<String>();
+
+		final TestPartitionWriter parent;
+
+		final Path path;
+
+		final boolean retired;
+
+		RetiringWriter(TestPartitionWriter parent, Path path, boolean retired) {
+			this.parent = parent;
+			this.path = path;
+			this.retired = retired;
+		}
+
+		@Override
+		public void write(String entity) throws IOException {
+			writeAll(Arrays.asList(entity));
+		}
+
+		@Override
+		public void writeAll(Collection<String> entities) throws IOException {
+			if (retired) {
+				parent.destroyWriter(path, this);
+				throw new WriterRetiredException("Writer for path " + path + " is retired");
+			}
+			written.addAll(entities);
+		}
+
+		@Override
+		public void flush() throws IOException {
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+	}
+
+}
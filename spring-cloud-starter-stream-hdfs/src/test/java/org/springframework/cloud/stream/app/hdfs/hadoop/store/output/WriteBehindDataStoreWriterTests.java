@@ -0,0 +1,336 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.output;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.PartitionDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.StoreException;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.WriteBehindDataStoreWriter.Backpressure;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.ChainedFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.RollingFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.StaticFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.EventTimeResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.EventTimeRolloverStrategy;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Tests for {@link WriteBehindDataStoreWriter} backpressure, retries and
+ * event times passed on per entity.
+ *
+ */
+public class WriteBehindDataStoreWriterTests {
+
+	private static final long HOUR = 3600000L;
+
+	private static final long START = 1546300800000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private final TaskExecutor executor = new TaskExecutor() {
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+	};
+
+	private RecordingWriter delegate;
+
+	@Before
+	public void setup() {
+		tasks.clear();
+		delegate = new RecordingWriter();
+	}
+
+	@Test
+	public void testFailRejectsWholeBatch() throws IOException {
+		WriteBehindDataStoreWriter<String, String> writer = createWriter(4, 10, Backpressure.FAIL);
+		writer.writeAll(Arrays.asList("a", "b", "c"));
+		assertThat(writer.getQueueDepth(), is(3));
+		try {
+			writer.writeAll(Arrays.asList("d", "e"));
+			fail("Expected StoreException");
+		} catch (StoreException e) {
+		}
+		// nothing of a rejected batch is queued
+		assertThat(writer.getQueueDepth(), is(3));
+		runTasks();
+		assertThat(delegate.written, is(Arrays.asList("a", "b", "c")));
+		assertThat(writer.getQueueDepth(), is(0));
+		writer.writeAll(Arrays.asList("d", "e"));
+		assertThat(writer.getQueueDepth(), is(2));
+	}
+
+	@Test
+	public void testFailRejectsBatchOverCapacity() throws IOException {
+		WriteBehindDataStoreWriter<String, String> writer = createWriter(4, 10, Backpressure.FAIL);
+		try {
+			writer.writeAll(Arrays.asList("a", "b", "c", "d", "e"));
+			fail("Expected StoreException");
+		} catch (StoreException e) {
+		}
+		assertThat(writer.getQueueDepth(), is(0));
+		assertThat(tasks.isEmpty(), is(true));
+	}
+
+	@Test
+	public void testBlockWaitsForSpace() throws Exception {
+		final WriteBehindDataStoreWriter<String, String> writer = createWriter(2, 10, Backpressure.BLOCK);
+		writer.writeAll(Arrays.asList("a", "b"));
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					writer.write("c");
+				} catch (Exception e) {
+					error.set(e);
+				}
+			}
+		});
+		thread.start();
+		thread.join(300);
+		assertThat(thread.isAlive(), is(true));
+		runTasks();
+		thread.join(5000);
+		assertThat(thread.isAlive(), is(false));
+		assertNull(error.get());
+		writer.flush();
+		assertThat(delegate.written, is(Arrays.asList("a", "b", "c")));
+		assertThat(writer.getQueueDepth(), is(0));
+	}
+
+	@Test
+	public void testFailedBatchIsRetriedBeforeNewEntities() throws IOException {
+		WriteBehindDataStoreWriter<String, String> writer = createWriter(10, 10, Backpressure.FAIL);
+		writer.writeAll(Arrays.asList("a", "b"));
+		delegate.failures = 1;
+		runTasks();
+		assertThat(delegate.written.isEmpty(), is(true));
+		// failed batch still holds its space
+		assertThat(writer.getQueueDepth(), is(2));
+		try {
+			writer.write("c");
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+		// failed call scheduled a retry
+		runTasks();
+		assertThat(delegate.written, is(Arrays.asList("a", "b")));
+		assertThat(writer.getQueueDepth(), is(0));
+		writer.write("c");
+		writer.flush();
+		assertThat(delegate.written, is(Arrays.asList("a", "b", "c")));
+	}
+
+	@Test
+	public void testFlushFailsUntilRetrySucceeds() throws IOException {
+		WriteBehindDataStoreWriter<String, String> writer = createWriter(10, 10, Backpressure.BLOCK);
+		writer.writeAll(Arrays.asList("a", "b"));
+		delegate.failures = 2;
+		try {
+			writer.flush();
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+		try {
+			writer.flush();
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+		writer.flush();
+		assertThat(delegate.written, is(Arrays.asList("a", "b")));
+		assertThat(delegate.flushes, is(1));
+	}
+
+	@Test
+	public void testWrittenRunsAreNotRetried() throws IOException {
+		WriteBehindDataStoreWriter<String, String> writer = createWriter(10, 10, Backpressure.FAIL);
+		writer.write("a");
+		writer.write("b", "key");
+		writer.write("c");
+		delegate.failOn = "b";
+		runTasks();
+		assertThat(delegate.written, is(Arrays.asList("a")));
+		// only entities not written hold their space
+		assertThat(writer.getQueueDepth(), is(2));
+		writer.flush();
+		assertThat(delegate.written, is(Arrays.asList("a", "b", "c")));
+		assertThat(delegate.keys, is(Arrays.asList("key")));
+		assertThat(writer.getQueueDepth(), is(0));
+	}
+
+	@Test
+	public void testFailedBatchIsRetriedWithoutCalls() throws Exception {
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.initialize();
+		try {
+			WriteBehindDataStoreWriter<String, String> writer = createWriter(10, 10, Backpressure.FAIL);
+			writer.setTaskScheduler(taskScheduler);
+			writer.setRetryDelay(10);
+			writer.writeAll(Arrays.asList("a", "b"));
+			delegate.failures = 2;
+			runTasks();
+			assertThat(writer.getQueueDepth(), is(2));
+			// scheduled retries submit drain tasks until a batch is written
+			for (int i = 0; i < 100 && writer.getQueueDepth() > 0; i++) {
+				Thread.sleep(20);
+				runTasks();
+			}
+			assertThat(delegate.written, is(Arrays.asList("a", "b")));
+			assertThat(writer.getQueueDepth(), is(0));
+		} finally {
+			taskScheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testEventTimesPassedToDelimitedWriter() throws IOException {
+		Configuration configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		TextFileWriter textWriter = new TextFileWriter(configuration,
+				new Path("file:" + folder.getRoot().getAbsolutePath()), null);
+		textWriter.setFileNamingStrategy(new ChainedFileNamingStrategy(Arrays.asList(
+				new StaticFileNamingStrategy("data"), new RollingFileNamingStrategy(),
+				new StaticFileNamingStrategy("txt", "."))));
+		textWriter.setRolloverStrategy(new EventTimeRolloverStrategy(HOUR, TimeZone.getTimeZone("UTC")));
+		WriteBehindDataStoreWriter<String, String> writer = new WriteBehindDataStoreWriter<String, String>(textWriter,
+				10, 10);
+		writer.setTaskExecutor(executor);
+		writer.setEventTimeResolver(new EventTimeResolver<String>() {
+
+			@Override
+			public long resolveEventTime(String key) {
+				return Long.parseLong(key);
+			}
+		});
+		writer.afterPropertiesSet();
+		writer.writeAll(Arrays.asList("a", "b", "c"),
+				Arrays.asList(String.valueOf(START), String.valueOf(START + 10), String.valueOf(START + HOUR)));
+		writer.close();
+		assertThat(read("data-0.txt"), is("a\nb\n"));
+		assertThat(read("data-1.txt"), is("c\n"));
+	}
+
+	private String read(String name) throws IOException {
+		return new String(Files.readAllBytes(new File(folder.getRoot(), name).toPath()), StandardCharsets.UTF_8);
+	}
+
+	private WriteBehindDataStoreWriter<String, String> createWriter(int capacity, int batchSize,
+			Backpressure backpressure) {
+		WriteBehindDataStoreWriter<String, String> writer = new WriteBehindDataStoreWriter<String, String>(delegate,
+				capacity, batchSize);
+		writer.setBackpressure(backpressure);
+		writer.setTaskExecutor(executor);
+		writer.afterPropertiesSet();
+		return writer;
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private static class RecordingWriter implements PartitionDataStoreWriter<String, String> {
+
+		final List<String> written = new ArrayList<String>();
+
+		final List<String> keys = new ArrayList<String>();
+
+		volatile int failures;
+
+		volatile String failOn;
+
+		int flushes;
+
+		@Override
+		public synchronized void write(String entity) throws IOException {
+			writeAll(Arrays.asList(entity));
+		}
+
+		@Override
+		public synchronized void writeAll(Collection<String> entities) throws IOException {
+			checkFailure(entities);
+			written.addAll(entities);
+		}
+
+		@Override
+		public synchronized void write(String entity, String partitionKey) throws IOException {
+			writeAll(Arrays.asList(entity), Arrays.asList(partitionKey));
+		}
+
+		@Override
+		public synchronized void writeAll(List<String> entities, List<String> partitionKeys) throws IOException {
+			checkFailure(entities);
+			written.addAll(entities);
+			keys.addAll(partitionKeys);
+		}
+
+		private void checkFailure(Collection<String> entities) throws IOException {
+			if (failures > 0) {
+				failures--;
+				throw new IOException("Simulated failure");
+			}
+			if (failOn != null && entities.contains(failOn)) {
+				failOn = null;
+				throw new IOException("Simulated failure");
+			}
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			flushes++;
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link JsonFieldExtractor}. Every document is extracted
+ * both as bytes and as a string, results must be the same.
+ *
+ */
+public class JsonFieldExtractorTests {
+
+	private static final String DOC = "{ \"id\": 42, \"name\": \"caf\u00e9\", \"skip\": {\"a\": [1, {\"b\": \"}\"}]},"
+			+ " \"customer\": {\"region\": \"eu-west\", \"vip\": true, \"note\": null},"
+			+ " \"quoted\": \"a\\\"b\\\\c\\u0041\", \"neg\": -1.5e3 }";
+
+	@Test
+	public void testTopLevelFields() {
+		assertExtract(DOC, "id", "42");
+		assertExtract(DOC, "name", "caf\u00e9");
+		assertExtract(DOC, "neg", "-1.5e3");
+	}
+
+	@Test
+	public void testNestedFields() {
+		assertExtract(DOC, "customer.region", "eu-west");
+		assertExtract(DOC, "customer.vip", "true");
+	}
+
+	@Test
+	public void testEscapes() {
+		assertExtract(DOC, "quoted", "a\"b\\cA");
+	}
+
+	@Test
+	public void testNullsObjectsAndMissingFields() {
+		assertExtract(DOC, "customer.note", null);
+		assertExtract(DOC, "customer", null);
+		assertExtract(DOC, "skip.a", null);
+		assertExtract(DOC, "missing", null);
+		assertExtract(DOC, "id.nested", null);
+		// field names inside skipped values are not matched
+		assertExtract(DOC, "b", null);
+	}
+
+	@Test
+	public void testMalformedDocuments() {
+		assertExtract("", "id", null);
+		assertExtract("[1, 2]", "id", null);
+		assertExtract("{\"id\": ", "id", null);
+		assertExtract("{\"name\": \"unterminated", "name", null);
+		assertExtract("{\"a\" 1, \"id\": 2}", "id", null);
+		assertExtract("{\"id\": \"a\\u00zzb\"}", "id", null);
+		assertExtract("{\"id\": \"a\\u00\"}", "id", null);
+	}
+
+	@Test
+	public void testNonAsciiFieldName() {
+		assertExtract("{\"r\u00e9gion\": \"x\"}", "r\u00e9gion", "x");
+	}
+
+	private static void assertExtract(String json, String field, String expected) {
+		JsonFieldExtractor extractor = new JsonFieldExtractor(field);
+		if (expected == null) {
+			assertThat(extractor.extract(json), nullValue());
+			assertThat(extractor.extract(json.getBytes(StandardCharsets.UTF_8)), nullValue());
+		} else {
+			assertThat(extractor.extract(json), is(expected));
+			assertThat(extractor.extract(json.getBytes(StandardCharsets.UTF_8)), is(expected));
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * Tests for {@link LayoutPartitionStrategy} resolving segments
+ * without a value.
+ *
+ */
+public class LayoutPartitionStrategyTests {
+
+	@Test
+	public void testHeaderValue() {
+		assertThat(resolve("events/header(customer)", MessageBuilder.withPayload("{}")
+				.setHeader("customer", "acme").build()), is("events/acme"));
+	}
+
+	@Test
+	public void testMissingHeader() {
+		assertThat(resolve("events/header(customer)/data", MessageBuilder.withPayload("{}").build()),
+				is("events/" + LayoutPartitionStrategy.MISSING_VALUE + "/data"));
+	}
+
+	@Test
+	public void testMissingAndEmptyJsonField() {
+		assertThat(resolve("json(region)", MessageBuilder.withPayload("{\"id\": 1}").build()),
+				is(LayoutPartitionStrategy.MISSING_VALUE));
+		assertThat(resolve("json(region)/x", MessageBuilder.withPayload("{\"region\": \"\"}").build()),
+				is(LayoutPartitionStrategy.MISSING_VALUE + "/x"));
+	}
+
+	private static String resolve(String layout, Message<?> message) {
+		return new LayoutPartitionStrategy<Object>(layout).getPartitionResolver().resolvePath(message).toString();
+	}
+
+}
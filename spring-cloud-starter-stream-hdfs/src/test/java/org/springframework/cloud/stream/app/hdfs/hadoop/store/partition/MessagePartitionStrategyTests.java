@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.partition;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.messaging.support.MessageBuilder;
+
+/**
+ * Tests for {@link MessagePartitionStrategy} caching evaluations
+ * by declared header values.
+ *
+ */
+public class MessagePartitionStrategyTests {
+
+	@Test
+	public void testArrayHeadersMatchByContent() {
+		StandardEvaluationContext context = new StandardEvaluationContext();
+		AtomicInteger evaluations = new AtomicInteger();
+		context.setVariable("evaluations", evaluations);
+		MessagePartitionStrategy<Object> strategy = new MessagePartitionStrategy<Object>(
+				"'p' + #evaluations.incrementAndGet()", context);
+		strategy.setCacheSize(10);
+		strategy.setCacheKeyHeaders(Arrays.asList("customer"));
+
+		Path first = resolve(strategy, new byte[] { 1, 2 });
+		Path second = resolve(strategy, new byte[] { 1, 2 });
+		assertThat(evaluations.get(), is(1));
+		assertThat(second, is(first));
+		assertThat(resolve(strategy, new byte[] { 3 }).toString(), is("p2"));
+	}
+
+	private static Path resolve(MessagePartitionStrategy<Object> strategy, byte[] customer) {
+		return strategy.getPartitionResolver().resolvePath(MessageBuilder.withPayload("data")
+				.setHeader("customer", customer).build());
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BlockAlignedRolloverStrategy} thresholds and
+ * resolving a block size.
+ *
+ */
+public class BlockAlignedRolloverStrategyTests {
+
+	@Test
+	public void testUncompressedReservesOneWrite() {
+		BlockAlignedRolloverStrategy strategy = new BlockAlignedRolloverStrategy(1000, 2, false);
+		assertThat(strategy.hasRolled(), is(false));
+		strategy.setWritePosition(400);
+		strategy.setWritePosition(800);
+		strategy.setWritePosition(1200);
+		// next write of 400 ends at 1600
+		assertThat(strategy.hasRolled(), is(false));
+		strategy.setWritePosition(1600);
+		// next write of 400 would reach 2000
+		assertThat(strategy.hasRolled(), is(true));
+	}
+
+	@Test
+	public void testCompressedReservesTwoWrites() {
+		BlockAlignedRolloverStrategy strategy = new BlockAlignedRolloverStrategy(1000, 2, true);
+		strategy.setWritePosition(400);
+		strategy.setWritePosition(800);
+		assertThat(strategy.hasRolled(), is(false));
+		strategy.setWritePosition(1200);
+		// room for a write and a flush of a compressor is not left
+		assertThat(strategy.hasRolled(), is(true));
+	}
+
+	@Test
+	public void testIncrementKeptOverReset() {
+		BlockAlignedRolloverStrategy strategy = new BlockAlignedRolloverStrategy(1000, 1, false);
+		strategy.setWritePosition(600);
+		assertThat(strategy.hasRolled(), is(true));
+		strategy.reset();
+		assertThat(strategy.hasRolled(), is(false));
+		strategy.setWritePosition(100);
+		strategy.setWritePosition(400);
+		assertThat(strategy.hasRolled(), is(true));
+	}
+
+	@Test
+	public void testBlockSizeResolvedFromFileSystem() {
+		Configuration configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		configuration.setLong("fs.local.block.size", 1000);
+		BlockAlignedRolloverStrategy strategy = new BlockAlignedRolloverStrategy(configuration,
+				new Path("file:/tmp"), 1, false).createInstance();
+		strategy.setWritePosition(500);
+		assertThat(strategy.hasRolled(), is(true));
+	}
+
+	@Test
+	public void testBlockSizeResolvedLazily() {
+		Configuration configuration = new Configuration();
+		configuration.set("fs.file.impl", "does.not.Exist");
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		configuration.setLong("dfs.blocksize", 1000);
+		// nothing is resolved before a first check
+		BlockAlignedRolloverStrategy strategy = new BlockAlignedRolloverStrategy(configuration,
+				new Path("file:/tmp"), 1, false);
+		strategy.setWritePosition(400);
+		assertThat(strategy.hasRolled(), is(false));
+		strategy.setWritePosition(800);
+		// falls back to dfs.blocksize
+		assertThat(strategy.hasRolled(), is(true));
+	}
+
+}
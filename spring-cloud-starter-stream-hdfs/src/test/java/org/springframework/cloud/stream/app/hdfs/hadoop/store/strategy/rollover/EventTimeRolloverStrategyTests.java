@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.TextFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.ChainedFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.RollingFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.StaticFileNamingStrategy;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Tests for {@link EventTimeRolloverStrategy} and writers resolving
+ * an event time only if a rollover strategy uses it.
+ *
+ */
+public class EventTimeRolloverStrategyTests {
+
+	private static final long HOUR = 3600000L;
+
+	private static final long START = 1546300800000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration configuration;
+
+	private FileSystem fs;
+
+	private Path basePath;
+
+	@Before
+	public void setup() throws IOException {
+		configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		fs = FileSystem.get(URI.create("file:///"), configuration);
+		basePath = new Path("file:" + folder.getRoot().getAbsolutePath());
+	}
+
+	@Test
+	public void testRollsWhenEventTimeLeavesWindow() throws IOException {
+		TextFileWriter writer = createWriter(new EventTimeRolloverStrategy(HOUR, TimeZone.getTimeZone("UTC")));
+		writer.write("a", START + 10);
+		writer.write("b", START + 20);
+		// late records stay in a current file
+		writer.write("c", START - 10);
+		writer.write("d", START + HOUR);
+		writer.close();
+		assertThat(read("data-0.txt"), is("a\nb\nc\n"));
+		assertThat(read("data-1.txt"), is("d\n"));
+	}
+
+	@Test
+	public void testUsesEventTime() {
+		assertThat(new EventTimeRolloverStrategy(HOUR).usesEventTime(), is(true));
+		assertThat(new SizeRolloverStrategy(10).usesEventTime(), is(false));
+		assertThat(new ChainedRolloverStrategy(Arrays.asList(new SizeRolloverStrategy(10),
+				new EventTimeRolloverStrategy(HOUR))).usesEventTime(), is(true));
+		assertThat(new ChainedRolloverStrategy(Arrays.asList(new SizeRolloverStrategy(10),
+				new IntervalRolloverStrategy(HOUR))).usesEventTime(), is(false));
+	}
+
+	@Test
+	public void testEventTimeNotSetIfNotUsed() throws IOException {
+		RecordingStrategy strategy = new RecordingStrategy(false);
+		TextFileWriter writer = createWriter(strategy);
+		writer.write("a");
+		writer.writeAll(Arrays.asList("b", "c"));
+		writer.close();
+		assertThat(strategy.eventTimes, is(0));
+	}
+
+	@Test
+	public void testUnknownEventTimeUsesCurrentTime() throws IOException {
+		RecordingStrategy strategy = new RecordingStrategy(true);
+		TextFileWriter writer = createWriter(strategy);
+		long now = System.currentTimeMillis();
+		writer.write("a");
+		writer.close();
+		assertThat(strategy.eventTimes, is(1));
+		assertThat(strategy.eventTime, greaterThanOrEqualTo(now));
+	}
+
+	private TextFileWriter createWriter(RolloverStrategy rolloverStrategy) {
+		TextFileWriter writer = new TextFileWriter(configuration, basePath, null);
+		writer.setFileNamingStrategy(new ChainedFileNamingStrategy(Arrays.asList(
+				new StaticFileNamingStrategy("data"), new RollingFileNamingStrategy(),
+				new StaticFileNamingStrategy("txt", "."))));
+		writer.setRolloverStrategy(rolloverStrategy);
+		return writer;
+	}
+
+	private String read(String name) throws IOException {
+		InputStream in = fs.open(new Path(basePath, name));
+		try {
+			return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Strategy only implementing methods a {@link RolloverStrategy}
+	 * has no defaults for, recording event times given to it.
+	 */
+	private static class RecordingStrategy implements RolloverStrategy {
+
+		private final boolean usesEventTime;
+
+		private int eventTimes;
+
+		private long eventTime;
+
+		RecordingStrategy(boolean usesEventTime) {
+			this.usesEventTime = usesEventTime;
+		}
+
+		@Override
+		public boolean hasRolled() {
+			return false;
+		}
+
+		@Override
+		public void reset() {
+		}
+
+		@Override
+		public void setWritePosition(long position) {
+		}
+
+		@Override
+		public boolean usesEventTime() {
+			return usesEventTime;
+		}
+
+		@Override
+		public void setEventTime(long eventTime) {
+			this.eventTimes++;
+			this.eventTime = eventTime;
+		}
+
+		@Override
+		public RolloverStrategy createInstance() {
+			return this;
+		}
+
+	}
+
+}
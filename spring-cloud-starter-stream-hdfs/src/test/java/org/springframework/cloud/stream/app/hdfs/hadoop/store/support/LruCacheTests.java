@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LruCache}.
+ *
+ */
+public class LruCacheTests {
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		LruCache<String, String> cache = new LruCache<String, String>(3);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.put("c", "3");
+		assertThat(cache.get("a"), is("1"));
+		cache.put("d", "4");
+		assertThat(cache.size(), is(3));
+		assertThat(cache.get("b"), nullValue());
+		assertThat(cache.get("a"), is("1"));
+		assertThat(cache.get("c"), is("3"));
+		assertThat(cache.get("d"), is("4"));
+	}
+
+	@Test
+	public void testReplacesValue() {
+		LruCache<String, String> cache = new LruCache<String, String>(2);
+		cache.put("a", "1");
+		cache.put("a", "2");
+		assertThat(cache.size(), is(1));
+		assertThat(cache.get("a"), is("2"));
+	}
+
+	@Test
+	public void testStaysBounded() {
+		LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(100);
+		for (int i = 0; i < 10000; i++) {
+			cache.put(i, i);
+			// keep an early entry hot
+			assertThat(cache.get(0), is(0));
+		}
+		assertThat(cache.size(), lessThanOrEqualTo(100));
+		assertThat(cache.get(9999), is(9999));
+	}
+
+}
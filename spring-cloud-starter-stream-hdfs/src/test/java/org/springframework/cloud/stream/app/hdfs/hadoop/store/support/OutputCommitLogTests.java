@@ -0,0 +1,272 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.TextFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.ChainedFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.RollingFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.StaticFileNamingStrategy;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Tests for {@link OutputCommitLog} writing and crash recovery. Uses a raw
+ * local file system which, unlike a checksummed one, supports truncate.
+ *
+ */
+public class OutputCommitLogTests {
+
+	private static final String DEFAULT = OutputCommitLog.Commit.DEFAULT_PARTITION;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration configuration;
+
+	private FileSystem fs;
+
+	private Path basePath;
+
+	private Path logPath;
+
+	@Before
+	public void setup() throws IOException {
+		configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		fs = FileSystem.get(URI.create("file:///"), configuration);
+		basePath = new Path("file:" + folder.getRoot().getAbsolutePath());
+		logPath = new Path(basePath, ".commit");
+	}
+
+	@Test
+	public void testLastRecordWins() throws IOException {
+		Path file = new Path(basePath, "data-0.txt.tmp");
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		log.write(new OutputCommitLog.Commit(file, 0, watermark(4)));
+		log.write(new OutputCommitLog.Commit(file, 10, watermark(5)));
+		log.write(new OutputCommitLog.Commit(file, 20, watermark(7)));
+
+		// read while log is still open, like after a crash
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).read();
+		assertThat(commit.getPath(), is(file));
+		assertThat(commit.getLength(), is(20L));
+		assertThat(commit.getWatermark(DEFAULT), is(7L));
+		log.close();
+	}
+
+	@Test
+	public void testTornRecordIgnored() throws IOException {
+		Path file = new Path(basePath, "data-0.txt.tmp");
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		log.write(new OutputCommitLog.Commit(file, 20, watermark(7)));
+		log.close();
+		append(logPath, "30\t9\tfile:");
+
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).read();
+		assertThat(commit.getLength(), is(20L));
+		assertThat(commit.getWatermark(DEFAULT), is(7L));
+	}
+
+	@Test
+	public void testLogCompacted() throws IOException {
+		Path file = new Path(basePath, "data-0.txt.tmp");
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		for (int i = 0; i < 5000; i++) {
+			log.write(new OutputCommitLog.Commit(file, i, watermark(i)));
+		}
+		assertThat(fs.getFileStatus(logPath).getLen() < 64 * 1024, is(true));
+		assertThat(fs.exists(new Path(basePath, ".commit.tmp")), is(false));
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).read();
+		assertThat(commit.getLength(), is(4999L));
+		log.close();
+	}
+
+	@Test
+	public void testRecoverTruncatesAndRenames() throws IOException {
+		Path file = new Path(basePath, "data-0.txt.tmp");
+		create(file, "line1\nline2\nline3\n");
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		log.write(new OutputCommitLog.Commit(file, 12, watermark(3)));
+
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).recover(createWriter());
+		Path finalPath = new Path(basePath, "data-0.txt");
+		assertThat(commit.getPath(), nullValue());
+		assertThat(commit.getWatermark(DEFAULT), is(3L));
+		assertThat(commit.getLastPath().getName(), is("data-0.txt"));
+		assertThat(fs.exists(file), is(false));
+		assertThat(read(finalPath), is("line1\nline2\n"));
+
+		// log knows recovery is done
+		commit = new OutputCommitLog(fs, logPath).read();
+		assertThat(commit.getPath(), nullValue());
+		assertThat(commit.getWatermark(DEFAULT), is(3L));
+		log.close();
+	}
+
+	@Test
+	public void testRecoverMissingFileWasRenamed() throws IOException {
+		Path file = new Path(basePath, "data-0.txt.tmp");
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		log.write(new OutputCommitLog.Commit(file, 12, watermark(3)));
+		log.close();
+
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).recover(createWriter());
+		assertThat(commit.getPath(), nullValue());
+		assertThat(commit.getWatermark(DEFAULT), is(3L));
+		assertThat(commit.getLastPath().getName(), is("data-0.txt"));
+	}
+
+	@Test
+	public void testRecoverDeletesFileWithNothingCommitted() throws IOException {
+		Path file = new Path(basePath, "data-1.txt.tmp");
+		create(file, "line1\n");
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		log.write(new OutputCommitLog.Commit(file, 0, watermark(3), new Path(basePath, "data-0.txt")));
+		log.close();
+
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).recover(createWriter());
+		assertThat(commit.getPath(), nullValue());
+		assertThat(commit.getWatermark(DEFAULT), is(3L));
+		assertThat(fs.exists(file), is(false));
+		assertThat(fs.exists(new Path(basePath, "data-1.txt")), is(false));
+	}
+
+	@Test
+	public void testRecoverWithoutLog() throws IOException {
+		assertThat(new OutputCommitLog(fs, logPath).recover(createWriter()), nullValue());
+	}
+
+	@Test
+	public void testPathsWithSeparators() throws IOException {
+		Path file = new Path(basePath, "dir with\ttab/data 0.txt");
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		log.write(new OutputCommitLog.Commit(file, 1, watermark(2)));
+		log.close();
+		assertThat(new OutputCommitLog(fs, logPath).read().getPath(), is(file));
+	}
+
+	@Test
+	public void testWatermarksPerPartition() throws IOException {
+		Path file = new Path(basePath, "data-0.txt.tmp");
+		Map<String, Long> watermarks = new HashMap<String, Long>();
+		watermarks.put(DEFAULT, 1L);
+		watermarks.put("orders:0", 10L);
+		watermarks.put("a=b,c\td", 3L);
+		OutputCommitLog log = new OutputCommitLog(fs, logPath);
+		log.write(new OutputCommitLog.Commit(file, 5, watermarks));
+		log.close();
+
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).read();
+		assertThat(commit.getWatermarks(), is(watermarks));
+		assertThat(commit.getWatermark("orders:1"), is(-1L));
+	}
+
+	@Test
+	public void testSingleWatermarkRecord() throws IOException {
+		Path file = new Path(basePath, "data-0.txt.tmp");
+		create(logPath, "20\t7\t" + file.toUri() + "\t" + file.toUri() + "\n");
+		assertThat(new OutputCommitLog(fs, logPath).read().getWatermark(DEFAULT), is(7L));
+		create(logPath, "20\t-1\t" + file.toUri() + "\t" + file.toUri() + "\n");
+		assertThat(new OutputCommitLog(fs, logPath).read().getWatermarks().isEmpty(), is(true));
+	}
+
+	@Test
+	public void testWriterSkipsCommittedSequencesPerPartition() throws IOException {
+		TextFileWriter writer = createNamingWriter();
+		writer.write("a1", TextFileWriter.UNKNOWN_EVENT_TIME, "a", 10);
+		writer.write("b1", TextFileWriter.UNKNOWN_EVENT_TIME, "b", 3);
+		writer.close();
+
+		writer = createNamingWriter();
+		// replayed records are skipped, but a watermark of one partition
+		// never hides records of another partition
+		writer.write("a1", TextFileWriter.UNKNOWN_EVENT_TIME, "a", 10);
+		writer.write("b2", TextFileWriter.UNKNOWN_EVENT_TIME, "b", 4);
+		writer.write("c1", TextFileWriter.UNKNOWN_EVENT_TIME, 1);
+		writer.close();
+
+		assertThat(read(new Path(basePath, "data-0.txt")), is("a1\nb1\n"));
+		assertThat(read(new Path(basePath, "data-1.txt")), is("b2\nc1\n"));
+		OutputCommitLog.Commit commit = new OutputCommitLog(fs, logPath).read();
+		assertThat(commit.getWatermark("a"), is(10L));
+		assertThat(commit.getWatermark("b"), is(4L));
+		assertThat(commit.getWatermark(DEFAULT), is(1L));
+	}
+
+	private static Map<String, Long> watermark(long watermark) {
+		return Collections.singletonMap(DEFAULT, watermark);
+	}
+
+	private TextFileWriter createNamingWriter() {
+		TextFileWriter writer = createWriter();
+		writer.setCommitLogName(logPath.getName());
+		writer.setFileNamingStrategy(new ChainedFileNamingStrategy(Arrays.asList(
+				new StaticFileNamingStrategy("data"), new RollingFileNamingStrategy(),
+				new StaticFileNamingStrategy("txt", "."))));
+		return writer;
+	}
+
+	private TextFileWriter createWriter() {
+		TextFileWriter writer = new TextFileWriter(configuration, basePath, null);
+		writer.setInWritingSuffix(".tmp");
+		return writer;
+	}
+
+	private void create(Path path, String content) throws IOException {
+		FSDataOutputStream out = fs.create(path, true);
+		try {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+	}
+
+	private void append(Path path, String content) throws IOException {
+		create(path, read(path) + content);
+	}
+
+	private String read(Path path) throws IOException {
+		InputStream in = fs.open(path);
+		try {
+			return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+}
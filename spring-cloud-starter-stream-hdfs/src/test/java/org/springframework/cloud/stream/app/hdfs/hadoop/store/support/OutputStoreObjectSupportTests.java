@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.TextFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.ChainedFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.RollingFileNamingStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.StaticFileNamingStrategy;
+
+/**
+ * Tests for {@link OutputStoreObjectSupport} initializing file naming
+ * after a restart.
+ *
+ */
+public class OutputStoreObjectSupportTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration configuration;
+
+	private FileSystem fs;
+
+	private Path basePath;
+
+	@Before
+	public void setup() throws IOException {
+		configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		fs = FileSystem.get(URI.create("file:///"), configuration);
+		basePath = new Path("file:" + folder.getRoot().getAbsolutePath());
+	}
+
+	@Test
+	public void testInitFromListing() throws IOException {
+		writeFile(null, "a");
+		writeFile(null, "b");
+		writeFile(null, "c");
+		assertThat(fs.exists(new Path(basePath, "data-2.txt")), is(true));
+	}
+
+	@Test
+	public void testInitFromLastFileMarker() throws IOException {
+		writeFile(".last", "a");
+		writeFile(".last", "b");
+		assertThat(fs.exists(new Path(basePath, "data-1.txt")), is(true));
+		// a file unknown to a marker is not listed
+		fs.create(new Path(basePath, "data-5.txt")).close();
+		writeFile(".last", "c");
+		assertThat(fs.exists(new Path(basePath, "data-2.txt")), is(true));
+		assertThat(fs.exists(new Path(basePath, "data-6.txt")), is(false));
+	}
+
+	@Test
+	public void testMissingMarkerFallsBackToListing() throws IOException {
+		writeFile(".last", "a");
+		fs.delete(new Path(basePath, ".last"), false);
+		writeFile(".last", "b");
+		assertThat(fs.exists(new Path(basePath, "data-1.txt")), is(true));
+	}
+
+	private void writeFile(String lastFileMarkerName, String content) throws IOException {
+		TextFileWriter writer = new TextFileWriter(configuration, basePath, null);
+		writer.setInWritingSuffix(".tmp");
+		writer.setLastFileMarkerName(lastFileMarkerName);
+		writer.setFileNamingStrategy(new ChainedFileNamingStrategy(Arrays.asList(
+				new StaticFileNamingStrategy("data"), new RollingFileNamingStrategy(),
+				new StaticFileNamingStrategy("txt", "."))));
+		writer.write(content);
+		writer.close();
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.TextFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.StaticFileNamingStrategy;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Tests for {@link StoreObjectSupport} tracking timeouts of a writer
+ * not given a shared timeout wheel.
+ *
+ */
+public class StoreObjectSupportTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Configuration configuration;
+
+	private FileSystem fs;
+
+	private Path basePath;
+
+	private ThreadPoolTaskScheduler taskScheduler;
+
+	@Before
+	public void setup() throws IOException {
+		configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		fs = FileSystem.get(URI.create("file:///"), configuration);
+		basePath = new Path("file:" + folder.getRoot().getAbsolutePath());
+		taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.initialize();
+	}
+
+	@After
+	public void clean() {
+		taskScheduler.shutdown();
+	}
+
+	@Test
+	public void testIdleTimeoutWithOwnWheel() throws Exception {
+		TextFileWriter writer = new TextFileWriter(configuration, basePath, null);
+		writer.setInWritingSuffix(".tmp");
+		writer.setFileNamingStrategy(new StaticFileNamingStrategy("data"));
+		writer.setIdleTimeout(200);
+		writer.setTaskScheduler(taskScheduler);
+		writer.setTaskExecutor(new SyncTaskExecutor());
+		writer.afterPropertiesSet();
+		writer.start();
+		try {
+			long before = System.currentTimeMillis();
+			writer.write("a");
+			// coarse clock lags behind a system clock by at most a tick
+			assertThat(writer.getLastActivity() > before - 2 * TimeoutWheel.DEFAULT_TICK_DURATION, is(true));
+			Path file = new Path(basePath, "data");
+			for (int i = 0; i < 100 && !fs.exists(file); i++) {
+				Thread.sleep(50);
+			}
+			assertThat(fs.exists(file), is(true));
+			assertThat(fs.exists(new Path(basePath, "data.tmp")), is(false));
+		} finally {
+			writer.stop();
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.hadoop.store.support;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+
+/**
+ * Tests for {@link TimeoutWheel}. Ticks are driven by tests
+ * instead of a scheduler.
+ *
+ */
+public class TimeoutWheelTests {
+
+	private TimeoutWheel wheel;
+
+	private AtomicInteger expired;
+
+	private Runnable task;
+
+	@Before
+	public void setup() {
+		wheel = new TimeoutWheel(10, 8);
+		wheel.setTaskExecutor(new SyncTaskExecutor());
+		expired = new AtomicInteger();
+		task = new Runnable() {
+
+			@Override
+			public void run() {
+				expired.incrementAndGet();
+			}
+		};
+	}
+
+	@Test
+	public void testExpiresAfterDeadline() throws Exception {
+		TimeoutWheel.Timeout timeout = wheel.newTimeout(task);
+		timeout.reschedule(System.currentTimeMillis() + 30);
+		assertThat(wheel.getPendingTimeouts(), is(1));
+		wheel.tick();
+		assertThat(expired.get(), is(0));
+		Thread.sleep(60);
+		wheel.tick();
+		assertThat(expired.get(), is(1));
+		assertThat(wheel.getPendingTimeouts(), is(0));
+		// expired timeout is not run again until rescheduled
+		Thread.sleep(30);
+		wheel.tick();
+		assertThat(expired.get(), is(1));
+		timeout.reschedule(System.currentTimeMillis());
+		Thread.sleep(30);
+		wheel.tick();
+		assertThat(expired.get(), is(2));
+	}
+
+	@Test
+	public void testRescheduleExtendsDeadline() throws Exception {
+		TimeoutWheel.Timeout timeout = wheel.newTimeout(task);
+		timeout.reschedule(System.currentTimeMillis() + 20);
+		timeout.reschedule(System.currentTimeMillis() + 10000);
+		Thread.sleep(50);
+		wheel.tick();
+		assertThat(expired.get(), is(0));
+		assertThat(wheel.getPendingTimeouts(), is(1));
+	}
+
+	@Test
+	public void testDeadlineBeyondOneRound() throws Exception {
+		// wheel of 8 buckets of 10ms covers 80ms per round, timeout
+		// is passed over on earlier rounds
+		TimeoutWheel.Timeout timeout = wheel.newTimeout(task);
+		timeout.reschedule(System.currentTimeMillis() + 500);
+		for (int i = 0; i < 10; i++) {
+			Thread.sleep(10);
+			wheel.tick();
+		}
+		assertThat(expired.get(), is(0));
+		Thread.sleep(500);
+		wheel.tick();
+		assertThat(expired.get(), is(1));
+	}
+
+	@Test
+	public void testCancelled() throws Exception {
+		TimeoutWheel.Timeout timeout = wheel.newTimeout(task);
+		timeout.reschedule(System.currentTimeMillis() + 10);
+		timeout.cancel();
+		assertThat(wheel.getPendingTimeouts(), is(0));
+		Thread.sleep(30);
+		wheel.tick();
+		assertThat(expired.get(), is(0));
+		// cancelled timeout stays cancelled
+		timeout.reschedule(System.currentTimeMillis());
+		assertThat(wheel.getPendingTimeouts(), is(0));
+	}
+
+	@Test
+	public void testTickAdvancesClock() throws Exception {
+		long before = wheel.currentTimeMillis();
+		Thread.sleep(20);
+		wheel.tick();
+		assertThat(wheel.currentTimeMillis(), greaterThanOrEqualTo(before + 20));
+	}
+
+}
@@ -28,21 +28,36 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.PartitionDataStoreWriter;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.CodecInfo;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.Codecs;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.PartitionTextFileWriter;
-import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.TextFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.ByteArrayFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.GroupCommitFlusher;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.PartitionByteArrayFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.SequenceResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.WriteBehindDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.LayoutPartitionStrategy;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.MessagePartitionStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionExpressionMetrics;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionStrategy;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.naming.*;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.BlockAlignedRolloverStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.ChainedRolloverStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.EventTimeResolver;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.EventTimeRolloverStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.IntervalRolloverStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.RecordCountRolloverStrategy;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.RolloverStrategy;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.strategy.rollover.SizeRolloverStrategy;
 import org.springframework.context.Lifecycle;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.StringUtils;
 
@@ -52,19 +67,23 @@ import java.util.List;
 
 /**
  * A {@link FactoryBean} creating a {@link DataStoreWriter}. Created writer will be either
- * {@link PartitionTextFileWriter} or {@link TextFileWriter} depending whether partition
- * path expression is set.
+ * {@link PartitionByteArrayFileWriter} or {@link ByteArrayFileWriter} depending whether partition
+ * path expression or layout is set, optionally wrapped into a {@link WriteBehindDataStoreWriter}.
+ * <p>
+ * Created writer takes {@code byte[]} entities. Earlier versions created a
+ * {@code DataStoreWriter<String>}, code injecting or replacing a writer bean of
+ * that type needs to be changed to pass {@code UTF-8} encoded bytes instead.
  *
  * @author Thomas Risberg
  * @author Janne Valkealahti
  * @author Gary Russell
  */
-public class DataStoreWriterFactoryBean implements InitializingBean, DisposableBean, FactoryBean<DataStoreWriter<String>>,
+public class DataStoreWriterFactoryBean implements InitializingBean, DisposableBean, FactoryBean<DataStoreWriter<byte[]>>,
 		BeanFactoryAware, SmartLifecycle {
 
 	private HdfsSinkProperties properties;
 
-	private volatile DataStoreWriter<String> storeWriter;
+	private volatile DataStoreWriter<byte[]> storeWriter;
 
 	private volatile Configuration configuration;
 
@@ -74,6 +93,10 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 
 	private TaskExecutor taskExecutor;
 
+	private GroupCommitFlusher groupCommitFlusher;
+
+	private volatile PartitionExpressionMetrics partitionExpressionMetrics;
+
 	private volatile int phase;
 
 	private volatile boolean autoStartup = true;
@@ -84,10 +107,19 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 	}
 
 	@Override
-	public DataStoreWriter<String> getObject() throws Exception {
+	public DataStoreWriter<byte[]> getObject() throws Exception {
 		return storeWriter;
 	}
 
+	/**
+	 * Gets the evaluation metrics of a partition path expression.
+	 *
+	 * @return the partition expression metrics, null if partition path is not set
+	 */
+	public PartitionExpressionMetrics getPartitionExpressionMetrics() {
+		return partitionExpressionMetrics;
+	}
+
 	@Override
 	public Class<?> getObjectType() {
 		return DataStoreWriter.class;
@@ -125,14 +157,47 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 		}
 		ChainedFileNamingStrategy fileNamingStrategy = new ChainedFileNamingStrategy();
 		fileNamingStrategy.setStrategies(strategies);
-		RolloverStrategy rolloverStrategy = new SizeRolloverStrategy(properties.getRollover());
+		Path basePath = new Path(properties.getDirectory());
+		RolloverStrategy rolloverStrategy = createRolloverStrategy(configurationToUse, basePath, codec != null);
 		String partitionExpression = null;
 		if (StringUtils.hasText(properties.getPartitionPath())) {
 			partitionExpression = properties.getPartitionPath();
 		}
-		Path basePath = new Path(properties.getDirectory());
-		if (StringUtils.isEmpty(partitionExpression)) {
-			TextFileWriter writer = new TextFileWriter(configurationToUse, basePath, codec);
+		String partitionLayout = null;
+		if (StringUtils.hasText(properties.getPartitionLayout())) {
+			partitionLayout = properties.getPartitionLayout();
+		}
+		if (partitionExpression != null && partitionLayout != null) {
+			throw new IllegalStateException("Only one of partition path or partition layout can be set");
+		}
+		GroupCommitFlusher flusher = null;
+		if (groupCommitFlusher != null && groupCommitFlusher.isEnabled()) {
+			// commit syncs raw streams, compressed data is only durable when a file is closed
+			if (codec != null || properties.isWriteBehind()) {
+				throw new IllegalStateException("Group commit can't be used with codec or write behind");
+			}
+			flusher = groupCommitFlusher;
+		}
+		String commitLogName = null;
+		if (StringUtils.hasText(properties.getCommitLogName())) {
+			// committed lengths are only meaningful for uncompressed files written in place
+			if (codec != null || properties.isWriteBehind()) {
+				throw new IllegalStateException("Commit log can't be used with codec or write behind");
+			}
+			// lengths are only recorded when data is synced, otherwise
+			// a log would only know files being opened and closed
+			if (flusher == null && !(properties.isEnableSync() && properties.getFlushTimeout() > 0)) {
+				throw new IllegalStateException(
+						"Commit log requires group commit or enable sync together with flush timeout");
+			}
+			commitLogName = properties.getCommitLogName();
+		}
+		String lastFileMarkerName = null;
+		if (StringUtils.hasText(properties.getLastFileMarkerName())) {
+			lastFileMarkerName = properties.getLastFileMarkerName();
+		}
+		if (partitionExpression == null && partitionLayout == null) {
+			ByteArrayFileWriter writer = new ByteArrayFileWriter(configurationToUse, basePath, codec);
 			writer.setIdleTimeout(properties.getIdleTimeout());
 			writer.setCloseTimeout(properties.getCloseTimeout());
 			writer.setSyncable(properties.isEnableSync());
@@ -146,6 +211,11 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 			writer.setOverwrite(properties.isOverwrite());
 			writer.setFileNamingStrategy(fileNamingStrategy);
 			writer.setRolloverStrategy(rolloverStrategy);
+			if (flusher != null) {
+				writer.setGroupCommitFlusher(flusher);
+			}
+			writer.setCommitLogName(commitLogName);
+			writer.setLastFileMarkerName(lastFileMarkerName);
 			if (beanFactory != null) {
 				writer.setBeanFactory(beanFactory);
 			}
@@ -157,13 +227,32 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 			storeWriter = writer;
 		}
 		else {
-			if (!(evaluationContext instanceof StandardEvaluationContext)) {
-				throw new RuntimeException("Expecting evaluationContext of type StandardEvaluationContext but was "
-						+ evaluationContext);
+			PartitionStrategy<byte[], Message<?>> partitionStrategy;
+			if (partitionLayout != null) {
+				LayoutPartitionStrategy<byte[]> layoutStrategy = new LayoutPartitionStrategy<byte[]>(partitionLayout);
+				layoutStrategy.setCacheSize(properties.getPartitionCacheSize());
+				partitionStrategy = layoutStrategy;
 			}
-			MessagePartitionStrategy<String> partitionStrategy = new MessagePartitionStrategy<String>(
-					partitionExpression, (StandardEvaluationContext) evaluationContext);
-			PartitionTextFileWriter<Message<?>> writer = new PartitionTextFileWriter<Message<?>>(configurationToUse,
+			else {
+				if (!(evaluationContext instanceof StandardEvaluationContext)) {
+					throw new RuntimeException("Expecting evaluationContext of type StandardEvaluationContext but was "
+							+ evaluationContext);
+				}
+				MessagePartitionStrategy<byte[]> expressionStrategy = new MessagePartitionStrategy<byte[]>(
+						partitionExpression, (StandardEvaluationContext) evaluationContext);
+				expressionStrategy.setCacheSize(properties.getPartitionCacheSize());
+				expressionStrategy.setCacheKeyHeaders(properties.getPartitionCacheHeaders());
+				expressionStrategy.setCacheKeyTimeBucket(properties.getPartitionCacheTimeBucket());
+				expressionStrategy.setCompilerMode(properties.getPartitionCompilerMode());
+				if (properties.getPartitionCompilerMode() == SpelCompilerMode.IMMEDIATE
+						|| !properties.getPartitionSampleHeaders().isEmpty()) {
+					expressionStrategy.warmUp(MessageBuilder.withPayload(new byte[0])
+							.copyHeaders(properties.getPartitionSampleHeaders()).build());
+				}
+				partitionExpressionMetrics = expressionStrategy.getMetrics();
+				partitionStrategy = expressionStrategy;
+			}
+			PartitionByteArrayFileWriter<Message<?>> writer = new PartitionByteArrayFileWriter<Message<?>>(configurationToUse,
 					basePath,
 					codec,
 					partitionStrategy);
@@ -171,6 +260,9 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 			writer.setCloseTimeout(properties.getCloseTimeout());
 			writer.setSyncable(properties.isEnableSync());
 			writer.setFlushTimeout(properties.getFlushTimeout());
+			writer.setCloseParallelism(properties.getCloseParallelism());
+			writer.setCloseDeadline(properties.getCloseDeadline());
+			writer.setMaxOpenWriters(properties.getMaxOpenWriters());
 			if (StringUtils.hasText(properties.getInUsePrefix())) {
 				writer.setInWritingPrefix(properties.getInUsePrefix());
 			}
@@ -180,6 +272,13 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 			writer.setOverwrite(properties.isOverwrite());
 			writer.setFileNamingStrategyFactory(fileNamingStrategy);
 			writer.setRolloverStrategyFactory(rolloverStrategy);
+			if (flusher != null) {
+				writer.setGroupCommitFlusher(flusher);
+			}
+			writer.setCommitLogName(commitLogName);
+			writer.setLastFileMarkerName(lastFileMarkerName);
+			writer.setSequenceResolver(createSequenceResolver());
+			writer.setEventTimeResolver(createEventTimeResolver());
 			if (beanFactory != null) {
 				writer.setBeanFactory(beanFactory);
 			}
@@ -193,6 +292,83 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 		if (storeWriter instanceof InitializingBean) {
 			((InitializingBean) storeWriter).afterPropertiesSet();
 		}
+		if (properties.isWriteBehind()) {
+			WriteBehindDataStoreWriter<byte[], Message<?>> writer = new WriteBehindDataStoreWriter<byte[], Message<?>>(storeWriter,
+					properties.getWriteBehindCapacity(), properties.getWriteBehindBatchSize());
+			writer.setBackpressure(properties.getWriteBehindBackpressure());
+			if (!(storeWriter instanceof PartitionDataStoreWriter)) {
+				// partition writer resolves these from keys itself
+				writer.setSequenceResolver(createSequenceResolver());
+				writer.setEventTimeResolver(createEventTimeResolver());
+			}
+			if (beanFactory != null) {
+				writer.setBeanFactory(beanFactory);
+			}
+			writer.setTaskExecutor(taskExecutor);
+			writer.setTaskScheduler(taskScheduler);
+			writer.afterPropertiesSet();
+			storeWriter = writer;
+		}
+	}
+
+	private SequenceResolver<Message<?>> createSequenceResolver() {
+		if (!StringUtils.hasText(properties.getSequenceHeader())) {
+			return null;
+		}
+		final String sequenceHeader = properties.getSequenceHeader();
+		final List<String> sequencePartitionHeaders = properties.getSequencePartitionHeaders();
+		return new SequenceResolver<Message<?>>() {
+
+			@Override
+			public long resolveSequence(Message<?> message) {
+				return HdfsSinkConfiguration.resolveSequence(message, sequenceHeader);
+			}
+
+			@Override
+			public String resolveSequencePartition(Message<?> message) {
+				return HdfsSinkConfiguration.resolveSequencePartition(message, sequencePartitionHeaders);
+			}
+		};
+	}
+
+	private EventTimeResolver<Message<?>> createEventTimeResolver() {
+		if (properties.getRolloverEventTimeWindow() <= 0) {
+			return null;
+		}
+		return new EventTimeResolver<Message<?>>() {
+
+			@Override
+			public long resolveEventTime(Message<?> message) {
+				return HdfsSinkConfiguration.resolveEventTime(message);
+			}
+		};
+	}
+
+	private RolloverStrategy createRolloverStrategy(Configuration configuration, Path basePath, boolean compressed) {
+		List<RolloverStrategy> strategies = new ArrayList<>();
+		if (properties.getRolloverBlocks() > 0) {
+			// block size is resolved from a file system on a first write
+			strategies.add(new BlockAlignedRolloverStrategy(configuration, basePath, properties.getRolloverBlocks(),
+					compressed));
+		}
+		else {
+			SizeRolloverStrategy sizeStrategy = new SizeRolloverStrategy(properties.getRollover());
+			sizeStrategy.setUncompressed(properties.isRolloverUncompressed());
+			strategies.add(sizeStrategy);
+		}
+		if (properties.getRolloverInterval() > 0) {
+			strategies.add(new IntervalRolloverStrategy(properties.getRolloverInterval()));
+		}
+		if (properties.getRolloverRecords() > 0) {
+			strategies.add(new RecordCountRolloverStrategy(properties.getRolloverRecords()));
+		}
+		if (properties.getRolloverEventTimeWindow() > 0) {
+			strategies.add(new EventTimeRolloverStrategy(properties.getRolloverEventTimeWindow()));
+		}
+		if (strategies.size() == 1) {
+			return strategies.get(0);
+		}
+		return new ChainedRolloverStrategy(strategies);
 	}
 
 	@Autowired
@@ -215,6 +391,11 @@ public class DataStoreWriterFactoryBean implements InitializingBean, DisposableB
 		this.taskExecutor = taskExecutor;
 	}
 
+	@Autowired(required = false)
+	public void setGroupCommitFlusher(GroupCommitFlusher groupCommitFlusher) {
+		this.groupCommitFlusher = groupCommitFlusher;
+	}
+
 	public void setPhase(int phase) {
 		this.phase = phase;
 	}
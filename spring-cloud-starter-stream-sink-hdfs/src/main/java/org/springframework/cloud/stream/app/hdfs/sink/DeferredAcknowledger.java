@@ -0,0 +1,294 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.sink;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.GroupCommitFlusher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Acknowledges messages received with manual acknowledgment only after a
+ * group commit covering their data has completed, so that a binder
+ * doesn't commit offsets or ack deliveries for data which is not durable.
+ * <p>
+ * Acknowledgments are collected per commit of a {@link GroupCommitFlusher}
+ * and released in bulk when its commit future completes. Binder classes
+ * are not on the sink classpath so acknowledgment headers are handled
+ * reflectively. A Rabbit delivery is rejected and requeued if a commit
+ * fails.
+ * <p>
+ * Kafka offsets are cumulative, acknowledging any later message would
+ * commit an offset past messages of a failed commit. Once a commit of
+ * Kafka messages fails, no Kafka message is acknowledged again and new
+ * ones are rejected before they are written, so that a restarted sink
+ * gets all unwritten messages redelivered from a last acknowledged offset.
+ *
+ */
+class DeferredAcknowledger {
+
+	private final static Log log = LogFactory.getLog(DeferredAcknowledger.class);
+
+	/** Kafka binder header with manual acknowledgment */
+	static final String KAFKA_ACKNOWLEDGMENT_HEADER = "kafka_acknowledgment";
+
+	/** Rabbit binder header with a channel for manual acknowledgment */
+	static final String AMQP_CHANNEL_HEADER = "amqp_channel";
+
+	/** Rabbit binder header with a delivery tag */
+	static final String AMQP_DELIVERY_TAG_HEADER = "amqp_deliveryTag";
+
+	private final GroupCommitFlusher flusher;
+
+	private final Object lock = new Object();
+
+	/** Future of a batch collecting acknowledgments, guarded by lock */
+	private CompletableFuture<Void> batchFuture;
+
+	/** Batch collecting acknowledgments, guarded by lock */
+	private Batch batch;
+
+	/** Failure of a first failed commit of cumulative acknowledgments */
+	private volatile Throwable cumulativeFailure;
+
+	/**
+	 * Instantiates a new deferred acknowledger.
+	 *
+	 * @param flusher the group commit flusher
+	 */
+	DeferredAcknowledger(GroupCommitFlusher flusher) {
+		this.flusher = flusher;
+	}
+
+	/**
+	 * Checks if a message was received with a manual acknowledgment
+	 * which can be deferred.
+	 *
+	 * @param message the message
+	 * @return true, if message has a manual acknowledgment
+	 */
+	boolean canDefer(Message<?> message) {
+		return resolve(message.getHeaders()) != null;
+	}
+
+	/**
+	 * Checks that a message can still be acknowledged. Fails for messages
+	 * with a cumulative acknowledgment once a commit of such messages failed.
+	 *
+	 * @param message the message
+	 * @throws IllegalStateException if message can't be acknowledged
+	 */
+	void checkAcknowledgeable(Message<?> message) {
+		Throwable failure = cumulativeFailure;
+		if (failure != null && message.getHeaders().containsKey(KAFKA_ACKNOWLEDGMENT_HEADER)) {
+			throw new IllegalStateException("Group commit failed, offsets are no longer acknowledged "
+					+ "and unwritten messages are redelivered after a restart", failure);
+		}
+	}
+
+	/**
+	 * Defers an acknowledgment of a message written before this call
+	 * until its group commit completes.
+	 *
+	 * @param message the message
+	 * @return true, if message had a manual acknowledgment which was deferred
+	 */
+	boolean defer(Message<?> message) {
+		Acknowledgment acknowledgment = resolve(message.getHeaders());
+		if (acknowledgment == null) {
+			return false;
+		}
+		CompletableFuture<Void> future = flusher.getCommitFuture();
+		synchronized (lock) {
+			if (future != batchFuture) {
+				batchFuture = future;
+				batch = new Batch();
+				// runs immediately if commit already completed
+				future.whenComplete(batch);
+			}
+			if (!batch.done) {
+				batch.acknowledgments.add(acknowledgment);
+				return true;
+			}
+		}
+		Throwable failure = null;
+		try {
+			future.join();
+		} catch (RuntimeException e) {
+			failure = e.getCause() != null ? e.getCause() : e;
+		}
+		complete(acknowledgment, failure);
+		return true;
+	}
+
+	/**
+	 * Completes an acknowledgment. Commits complete in order, so a failure
+	 * is known before any later cumulative acknowledgment completes.
+	 */
+	private void complete(Acknowledgment acknowledgment, Throwable failure) {
+		if (acknowledgment.isCumulative()) {
+			if (failure != null && cumulativeFailure == null) {
+				cumulativeFailure = failure;
+			}
+			if (cumulativeFailure != null) {
+				// never acknowledge past messages of a failed commit
+				return;
+			}
+		}
+		acknowledgment.complete(failure == null);
+	}
+
+	private static Acknowledgment resolve(MessageHeaders headers) {
+		Object kafka = headers.get(KAFKA_ACKNOWLEDGMENT_HEADER);
+		if (kafka != null) {
+			Method acknowledge = ReflectionUtils.findMethod(kafka.getClass(), "acknowledge");
+			if (acknowledge != null) {
+				// implementations may be private classes
+				ReflectionUtils.makeAccessible(acknowledge);
+				return new KafkaAcknowledgment(kafka, acknowledge);
+			}
+		}
+		Object channel = headers.get(AMQP_CHANNEL_HEADER);
+		Object deliveryTag = headers.get(AMQP_DELIVERY_TAG_HEADER);
+		if (channel != null && deliveryTag instanceof Long) {
+			Method basicAck = ReflectionUtils.findMethod(channel.getClass(), "basicAck", long.class, boolean.class);
+			Method basicNack = ReflectionUtils.findMethod(channel.getClass(), "basicNack", long.class, boolean.class,
+					boolean.class);
+			if (basicAck != null && basicNack != null) {
+				ReflectionUtils.makeAccessible(basicAck);
+				ReflectionUtils.makeAccessible(basicNack);
+				return new RabbitAcknowledgment(channel, (Long) deliveryTag, basicAck, basicNack);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Acknowledgments deferred until a commit future completes.
+	 */
+	private class Batch implements BiConsumer<Void, Throwable> {
+
+		private final List<Acknowledgment> acknowledgments = new ArrayList<Acknowledgment>();
+
+		private boolean done;
+
+		@Override
+		public void accept(Void result, Throwable throwable) {
+			List<Acknowledgment> completed;
+			synchronized (lock) {
+				done = true;
+				completed = new ArrayList<Acknowledgment>(acknowledgments);
+				acknowledgments.clear();
+			}
+			if (throwable != null) {
+				log.error("Group commit failed, not acknowledging " + completed.size() + " messages", throwable);
+			}
+			for (Acknowledgment acknowledgment : completed) {
+				complete(acknowledgment, throwable);
+			}
+		}
+	}
+
+	private static abstract class Acknowledgment {
+
+		void complete(boolean success) {
+			try {
+				if (success) {
+					ack();
+				} else {
+					nack();
+				}
+			} catch (RuntimeException e) {
+				log.error("Error completing acknowledgment", e);
+			}
+		}
+
+		/**
+		 * Tells if acknowledging also acknowledges all earlier messages.
+		 */
+		boolean isCumulative() {
+			return false;
+		}
+
+		abstract void ack();
+
+		abstract void nack();
+	}
+
+	private static class KafkaAcknowledgment extends Acknowledgment {
+
+		private final Object acknowledgment;
+
+		private final Method acknowledge;
+
+		KafkaAcknowledgment(Object acknowledgment, Method acknowledge) {
+			this.acknowledgment = acknowledgment;
+			this.acknowledge = acknowledge;
+		}
+
+		@Override
+		boolean isCumulative() {
+			return true;
+		}
+
+		@Override
+		void ack() {
+			ReflectionUtils.invokeMethod(acknowledge, acknowledgment);
+		}
+
+		@Override
+		void nack() {
+			// not called for cumulative acknowledgments
+		}
+	}
+
+	private static class RabbitAcknowledgment extends Acknowledgment {
+
+		private final Object channel;
+
+		private final long deliveryTag;
+
+		private final Method basicAck;
+
+		private final Method basicNack;
+
+		RabbitAcknowledgment(Object channel, long deliveryTag, Method basicAck, Method basicNack) {
+			this.channel = channel;
+			this.deliveryTag = deliveryTag;
+			this.basicAck = basicAck;
+			this.basicNack = basicNack;
+		}
+
+		@Override
+		void ack() {
+			ReflectionUtils.invokeMethod(basicAck, channel, deliveryTag, false);
+		}
+
+		@Override
+		void nack() {
+			ReflectionUtils.invokeMethod(basicNack, channel, deliveryTag, false, true);
+		}
+	}
+
+}
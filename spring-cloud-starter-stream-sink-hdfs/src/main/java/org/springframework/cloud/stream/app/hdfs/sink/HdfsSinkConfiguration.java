@@ -17,19 +17,34 @@
 package org.springframework.cloud.stream.app.hdfs.sink;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.PartitionDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.AbstractDelimitedStreamWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.GroupCommitFlusher;
 import org.springframework.cloud.stream.messaging.Sink;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.annotation.ServiceActivator;
-import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.Message;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.StringUtils;
 
 /**
  * Configuration class for the HdfsSink. Delegates to a {@link DataStoreWriterFactoryBean} for
@@ -38,6 +53,25 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
  * The configuration contains the property 'fsUri' to configure a connection to HDFS as well as the
  * additional properties for the sink like directory, fileName, codec etc. You can also use the
  * standard 'spring.hadoop.fsUri' property for specifying the HDFS connection.
+ * <p>
+ * A message with a {@link Collection} payload, either of plain payloads or of
+ * {@link Message}s, is handled as a batch and handed to the writer as a single unit.
+ * <p>
+ * Payloads are written as raw bytes. {@code byte[]} and {@link ByteBuffer} payloads
+ * are passed to the writer without copying or charset conversion, any other payload
+ * is written as its {@code UTF-8} encoded {@code toString()} value.
+ * <p>
+ * With group commit enabled, a message is acknowledged only after a
+ * {@link GroupCommitFlusher} has made its data durable. Messages received with a
+ * manual acknowledgment, i.e. from a Kafka binder with {@code autoCommitOffset}
+ * disabled or a Rabbit binder with {@code MANUAL} acknowledge mode, are not
+ * waited for. Their acknowledgment is deferred until data is durable and
+ * released in bulk for all messages of a commit. A batch with a {@link Collection}
+ * payload is waited for once per batch. Any other message is rejected, as waiting
+ * for a commit per message would limit a consumer to one message per interval.
+ * <p>
+ * With Micrometer on a classpath, metrics of the writer are bound to a meter
+ * registry by a {@link HdfsSinkMetrics}.
  *
  * @author Thomas Risberg
  */
@@ -48,7 +82,17 @@ public class HdfsSinkConfiguration {
 	public static final String TASK_SCHEDULER_BEAN = "hdfsSinkTaskScheduler";
 	public static final String TASK_EXECUTOR_BEAN = "TASK_EXECUTOR_BEAN";
 
-	private DataStoreWriter<String> dataStoreWriter;
+	private DataStoreWriter<byte[]> dataStoreWriter;
+
+	private GroupCommitFlusher groupCommitFlusher;
+
+	private DeferredAcknowledger deferredAcknowledger;
+
+	private String sequenceHeader;
+
+	private List<String> sequencePartitionHeaders;
+
+	private boolean eventTimeRollover;
 
 	@Bean(TASK_SCHEDULER_BEAN)
 	public TaskScheduler taskScheduler() {
@@ -56,8 +100,26 @@ public class HdfsSinkConfiguration {
 	}
 
 	@Bean(TASK_EXECUTOR_BEAN)
-	public TaskExecutor taskExecutor() {
-		return new ThreadPoolTaskExecutor();
+	public TaskExecutor taskExecutor(HdfsSinkProperties properties) {
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		// enough threads to flush, sync and close partition writers in parallel
+		taskExecutor.setCorePoolSize(Math.max(1,
+				Math.max(properties.getCloseParallelism(), properties.getGroupCommitParallelism())));
+		return taskExecutor;
+	}
+
+	@Bean
+	public GroupCommitFlusher groupCommitFlusher(HdfsSinkProperties properties,
+			@Qualifier(TASK_SCHEDULER_BEAN) TaskScheduler taskScheduler,
+			@Qualifier(TASK_EXECUTOR_BEAN) TaskExecutor taskExecutor) {
+		GroupCommitFlusher flusher = new GroupCommitFlusher();
+		flusher.setInterval(properties.getGroupCommitInterval());
+		flusher.setBytesThreshold(properties.getGroupCommitBytes());
+		flusher.setHsync(properties.isGroupCommitSync());
+		flusher.setParallelism(Math.max(1, properties.getGroupCommitParallelism()));
+		flusher.setTaskScheduler(taskScheduler);
+		flusher.setTaskExecutor(taskExecutor);
+		return flusher;
 	}
 
 	@Bean
@@ -66,16 +128,199 @@ public class HdfsSinkConfiguration {
 	}
 
 	@Autowired
-	public void setDataStoreWriter(DataStoreWriter<String> dataStoreWriter) {
+	public void setDataStoreWriter(DataStoreWriter<byte[]> dataStoreWriter) {
 		this.dataStoreWriter = dataStoreWriter;
 	}
 
+	@Autowired
+	public void setProperties(HdfsSinkProperties properties) {
+		this.sequenceHeader = StringUtils.hasText(properties.getSequenceHeader()) ? properties.getSequenceHeader() : null;
+		this.sequencePartitionHeaders = properties.getSequencePartitionHeaders();
+		this.eventTimeRollover = properties.getRolloverEventTimeWindow() > 0;
+	}
+
+	@Autowired
+	public void setGroupCommitFlusher(GroupCommitFlusher groupCommitFlusher) {
+		this.groupCommitFlusher = groupCommitFlusher;
+		this.deferredAcknowledger = new DeferredAcknowledger(groupCommitFlusher);
+	}
+
+	@SuppressWarnings("unchecked")
 	@ServiceActivator(inputChannel=Sink.INPUT)
-	public void hdfsSink(@Payload String payload) {
+	public void hdfsSink(Message<?> message) {
+		Object payload = message.getPayload();
+		boolean groupCommit = groupCommitFlusher != null && groupCommitFlusher.isEnabled();
+		if (groupCommit && !(payload instanceof Collection) && !deferredAcknowledger.canDefer(message)) {
+			throw new IllegalStateException("Group commit requires Collection payloads or manual acknowledgment, "
+					+ "waiting for a commit per message would allow one message per commit interval");
+		}
+		if (groupCommit) {
+			// rejected before writing, as it could never be acknowledged
+			deferredAcknowledger.checkAcknowledgeable(message);
+		}
 		try {
-			dataStoreWriter.write(payload);
+			if (dataStoreWriter instanceof PartitionDataStoreWriter) {
+				writePartitioned(message, payload);
+			}
+			else if (payload instanceof Collection && (sequenceHeader != null || eventTimeRollover)
+					&& dataStoreWriter instanceof AbstractDelimitedStreamWriter) {
+				// event times or sequences are known per item, write them one by one
+				// so that rollover can happen and committed items are skipped
+				// between any two items, same as a partitioned writer does
+				AbstractDelimitedStreamWriter<byte[]> writer = (AbstractDelimitedStreamWriter<byte[]>) dataStoreWriter;
+				for (Object item : (Collection<?>) payload) {
+					writeSequenced(writer, toEntity(item), item instanceof Message ? (Message<?>) item : message);
+				}
+			}
+			else if (payload instanceof Collection) {
+				Collection<?> batch = (Collection<?>) payload;
+				List<byte[]> entities = new ArrayList<>(batch.size());
+				for (Object item : batch) {
+					entities.add(toEntity(item));
+				}
+				dataStoreWriter.writeAll(entities);
+			}
+			else if ((sequenceHeader != null || eventTimeRollover) && dataStoreWriter instanceof AbstractDelimitedStreamWriter) {
+				writeSequenced((AbstractDelimitedStreamWriter<byte[]>) dataStoreWriter, toEntity(payload), message);
+			}
+			else {
+				dataStoreWriter.write(toEntity(payload));
+			}
 		} catch (IOException e) {
 			throw new IllegalStateException("Error while writing", e);
 		}
+		if (groupCommit && !deferredAcknowledger.defer(message)) {
+			// one wait per batch
+			awaitCommit();
+		}
+	}
+
+	private void writeSequenced(AbstractDelimitedStreamWriter<byte[]> writer, byte[] entity, Message<?> source)
+			throws IOException {
+		if (sequenceHeader != null) {
+			writer.write(entity, resolveEventTime(source), resolveSequencePartition(source, sequencePartitionHeaders),
+					resolveSequence(source, sequenceHeader));
+		}
+		else {
+			writer.write(entity, resolveEventTime(source));
+		}
+	}
+
+	private void awaitCommit() {
+		try {
+			groupCommitFlusher.getCommitFuture().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for group commit", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error while committing", e.getCause());
+		}
+	}
+
+	/**
+	 * Writes using the inbound message as a partition key so that partition
+	 * expressions see the real headers and no message is built per record.
+	 * Batch items which are messages themselves are their own partition keys.
+	 * A write-behind writer also takes this path, resolving event times and
+	 * sequences from keys for a non-partitioned writer it delegates to.
+	 */
+	@SuppressWarnings("unchecked")
+	private void writePartitioned(Message<?> message, Object payload) throws IOException {
+		PartitionDataStoreWriter<byte[], Message<?>> writer =
+				(PartitionDataStoreWriter<byte[], Message<?>>) dataStoreWriter;
+		if (payload instanceof Collection) {
+			Collection<?> batch = (Collection<?>) payload;
+			List<byte[]> entities = new ArrayList<>(batch.size());
+			List<Message<?>> partitionKeys = new ArrayList<>(batch.size());
+			for (Object item : batch) {
+				entities.add(toEntity(item));
+				partitionKeys.add(item instanceof Message ? (Message<?>) item : message);
+			}
+			writer.writeAll(entities, partitionKeys);
+		}
+		else {
+			writer.write(toEntity(payload), message);
+		}
+	}
+
+	/**
+	 * Resolves a record event time from a message timestamp.
+	 *
+	 * @return the event time or an unknown event time if message has no timestamp,
+	 * in which case a writer uses a current time
+	 */
+	static long resolveEventTime(Message<?> message) {
+		Long timestamp = message.getHeaders().getTimestamp();
+		return timestamp != null ? timestamp : AbstractDelimitedStreamWriter.UNKNOWN_EVENT_TIME;
+	}
+
+	/**
+	 * Resolves a record sequence from a numeric header.
+	 *
+	 * @return the sequence or -1 if header is not set
+	 */
+	static long resolveSequence(Message<?> message, String sequenceHeader) {
+		Object sequence = message.getHeaders().get(sequenceHeader);
+		return sequence instanceof Number ? ((Number) sequence).longValue() : -1;
+	}
+
+	/**
+	 * Resolves a record sequence partition by joining values of partition
+	 * headers, like a topic and a partition a record was received from.
+	 *
+	 * @return the sequence partition or null if message has none of the headers
+	 */
+	static String resolveSequencePartition(Message<?> message, List<String> sequencePartitionHeaders) {
+		if (sequencePartitionHeaders == null) {
+			return null;
+		}
+		StringBuilder buf = new StringBuilder();
+		boolean found = false;
+		for (int i = 0; i < sequencePartitionHeaders.size(); i++) {
+			Object value = message.getHeaders().get(sequencePartitionHeaders.get(i));
+			if (i > 0) {
+				buf.append(':');
+			}
+			if (value != null) {
+				buf.append(value);
+				found = true;
+			}
+		}
+		return found ? buf.toString() : null;
+	}
+
+	private static byte[] toEntity(Object payload) {
+		if (payload instanceof Message) {
+			payload = ((Message<?>) payload).getPayload();
+		}
+		if (payload instanceof byte[]) {
+			return (byte[]) payload;
+		}
+		if (payload instanceof ByteBuffer) {
+			ByteBuffer buffer = (ByteBuffer) payload;
+			// use backing array as is if buffer covers all of it
+			if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+					&& buffer.remaining() == buffer.array().length) {
+				return buffer.array();
+			}
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.duplicate().get(bytes);
+			return bytes;
+		}
+		return payload.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Binds metrics of the writer to a meter registry when Micrometer is present.
+	 */
+	@Configuration
+	@ConditionalOnClass(MeterBinder.class)
+	static class HdfsSinkMetricsConfiguration {
+
+		@Bean
+		public HdfsSinkMetrics hdfsSinkMetrics(DataStoreWriter<byte[]> dataStoreWriter,
+				DataStoreWriterFactoryBean dataStoreWriterFactoryBean) {
+			return new HdfsSinkMetrics(dataStoreWriter, dataStoreWriterFactoryBean.getPartitionExpressionMetrics());
+		}
 	}
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.app.hdfs.sink;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.DataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.AbstractDataStreamWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.AbstractPartitionDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.PartitionWriterMetrics;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.WriteBehindDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.PartitionExpressionMetrics;
+
+/**
+ * A {@link MeterBinder} exposing metrics of the sink's writer. Meters are
+ * only registered for metrics a configured writer keeps, i.e. partition
+ * expression meters require a partition path and partition writer meters
+ * require a partition path or layout.
+ * <p>
+ * Byte meters count bytes written before compression and bytes stored
+ * after compression, of closed files and of files currently written.
+ *
+ */
+public class HdfsSinkMetrics implements MeterBinder {
+
+	private static final String PREFIX = "hdfs.sink.";
+
+	private final DataStoreWriter<?> dataStoreWriter;
+
+	private final PartitionExpressionMetrics partitionExpressionMetrics;
+
+	/**
+	 * Instantiates a new hdfs sink metrics.
+	 *
+	 * @param dataStoreWriter the writer of the sink
+	 * @param partitionExpressionMetrics the partition expression metrics, may be null
+	 */
+	public HdfsSinkMetrics(DataStoreWriter<?> dataStoreWriter, PartitionExpressionMetrics partitionExpressionMetrics) {
+		this.dataStoreWriter = dataStoreWriter;
+		this.partitionExpressionMetrics = partitionExpressionMetrics;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		DataStoreWriter<?> writer = dataStoreWriter;
+		if (writer instanceof WriteBehindDataStoreWriter) {
+			writer = ((WriteBehindDataStoreWriter<?, ?>) writer).getWriter();
+		}
+		if (writer instanceof AbstractDataStreamWriter) {
+			bindByteMeters(registry, (AbstractDataStreamWriter) writer);
+		}
+		else if (writer instanceof AbstractPartitionDataStoreWriter) {
+			bindByteMeters(registry, (AbstractPartitionDataStoreWriter<?, ?>) writer);
+			bindPartitionWriterMetrics(registry, ((AbstractPartitionDataStoreWriter<?, ?>) writer).getMetrics());
+		}
+		if (partitionExpressionMetrics != null) {
+			bindPartitionExpressionMetrics(registry, partitionExpressionMetrics);
+		}
+	}
+
+	private static void bindByteMeters(MeterRegistry registry, AbstractDataStreamWriter writer) {
+		FunctionCounter.builder(PREFIX + "bytes.written", writer, new ToDoubleFunction<AbstractDataStreamWriter>() {
+
+			@Override
+			public double applyAsDouble(AbstractDataStreamWriter value) {
+				return value.getUncompressedBytes();
+			}
+		}).baseUnit("bytes").description("Bytes written before compression").register(registry);
+		FunctionCounter.builder(PREFIX + "bytes.stored", writer, new ToDoubleFunction<AbstractDataStreamWriter>() {
+
+			@Override
+			public double applyAsDouble(AbstractDataStreamWriter value) {
+				return value.getCompressedBytes();
+			}
+		}).baseUnit("bytes").description("Bytes stored after compression").register(registry);
+	}
+
+	private static void bindByteMeters(MeterRegistry registry, AbstractPartitionDataStoreWriter<?, ?> writer) {
+		FunctionCounter.builder(PREFIX + "bytes.written", writer,
+				new ToDoubleFunction<AbstractPartitionDataStoreWriter<?, ?>>() {
+
+					@Override
+					public double applyAsDouble(AbstractPartitionDataStoreWriter<?, ?> value) {
+						return value.getUncompressedBytes();
+					}
+				}).baseUnit("bytes").description("Bytes written before compression").register(registry);
+		FunctionCounter.builder(PREFIX + "bytes.stored", writer,
+				new ToDoubleFunction<AbstractPartitionDataStoreWriter<?, ?>>() {
+
+					@Override
+					public double applyAsDouble(AbstractPartitionDataStoreWriter<?, ?> value) {
+						return value.getCompressedBytes();
+					}
+				}).baseUnit("bytes").description("Bytes stored after compression").register(registry);
+	}
+
+	private static void bindPartitionWriterMetrics(MeterRegistry registry, PartitionWriterMetrics metrics) {
+		FunctionCounter.builder(PREFIX + "writers.created", metrics, new ToDoubleFunction<PartitionWriterMetrics>() {
+
+			@Override
+			public double applyAsDouble(PartitionWriterMetrics value) {
+				return value.getCreatedWriters();
+			}
+		}).description("Partition writers created").register(registry);
+		FunctionCounter.builder(PREFIX + "writers.evicted", metrics, new ToDoubleFunction<PartitionWriterMetrics>() {
+
+			@Override
+			public double applyAsDouble(PartitionWriterMetrics value) {
+				return value.getEvictedWriters();
+			}
+		}).description("Partition writers closed by reaching max open writers").register(registry);
+		Gauge.builder(PREFIX + "writers.open", metrics, new ToDoubleFunction<PartitionWriterMetrics>() {
+
+			@Override
+			public double applyAsDouble(PartitionWriterMetrics value) {
+				return value.getOpenWriters();
+			}
+		}).description("Partition writers currently open").register(registry);
+		Gauge.builder(PREFIX + "writers.memory", metrics, new ToDoubleFunction<PartitionWriterMetrics>() {
+
+			@Override
+			public double applyAsDouble(PartitionWriterMetrics value) {
+				return value.getOpenWritersMemoryEstimate();
+			}
+		}).baseUnit("bytes").description("Estimated buffer memory of open partition writers").register(registry);
+	}
+
+	private static void bindPartitionExpressionMetrics(MeterRegistry registry, PartitionExpressionMetrics metrics) {
+		FunctionTimer.builder(PREFIX + "partition.evaluation", metrics,
+				new ToLongFunction<PartitionExpressionMetrics>() {
+
+					@Override
+					public long applyAsLong(PartitionExpressionMetrics value) {
+						return value.getCompiledEvaluations() + value.getInterpretedEvaluations();
+					}
+				}, new ToDoubleFunction<PartitionExpressionMetrics>() {
+
+					@Override
+					public double applyAsDouble(PartitionExpressionMetrics value) {
+						return value.getEvaluationTime();
+					}
+				}, TimeUnit.NANOSECONDS)
+				.description("Evaluations of a partition path expression")
+				.register(registry);
+		FunctionCounter.builder(PREFIX + "partition.evaluations", metrics,
+				new ToDoubleFunction<PartitionExpressionMetrics>() {
+
+					@Override
+					public double applyAsDouble(PartitionExpressionMetrics value) {
+						return value.getCompiledEvaluations();
+					}
+				})
+				.tag("mode", "compiled")
+				.description("Evaluations of a partition path expression by compiler mode")
+				.register(registry);
+		FunctionCounter.builder(PREFIX + "partition.evaluations", metrics,
+				new ToDoubleFunction<PartitionExpressionMetrics>() {
+
+					@Override
+					public double applyAsDouble(PartitionExpressionMetrics value) {
+						return value.getInterpretedEvaluations();
+					}
+				})
+				.tag("mode", "interpreted")
+				.description("Evaluations of a partition path expression by compiler mode")
+				.register(registry);
+		FunctionCounter.builder(PREFIX + "partition.compile.failures", metrics,
+				new ToDoubleFunction<PartitionExpressionMetrics>() {
+
+					@Override
+					public double applyAsDouble(PartitionExpressionMetrics value) {
+						return value.getCompileFailures();
+					}
+				})
+				.description("Failed compilations of a partition path expression")
+				.register(registry);
+		Gauge.builder(PREFIX + "partition.compiled", metrics,
+				new ToDoubleFunction<PartitionExpressionMetrics>() {
+
+					@Override
+					public double applyAsDouble(PartitionExpressionMetrics value) {
+						return value.isCompiled() ? 1 : 0;
+					}
+				})
+				.description("Whether a partition path expression is currently compiled")
+				.register(registry);
+	}
+
+}
@@ -18,10 +18,19 @@ package org.springframework.cloud.stream.app.hdfs.sink;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.WriteBehindDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.WriteBehindDataStoreWriter.Backpressure;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.constraints.Pattern;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Used to configure those Hdfs Sink module options that are related to connecting to Hdfs.
  *
@@ -74,6 +83,32 @@ public class HdfsSinkProperties {
 	 */
 	private int rollover = 1000000000;
 
+	/**
+	 * Whether rollover size is compared against bytes written before compression instead of the estimated compressed file size.
+	 */
+	private boolean rolloverUncompressed = false;
+
+	/**
+	 * Number of HDFS blocks after which file will be rolled over just before the block boundary, replaces size based rollover, 0 disables it.
+	 */
+	private int rolloverBlocks = 0;
+
+	/**
+	 * Wall clock interval in ms, aligned to the local time zone, after which file will be rolled over, 0 disables it.
+	 */
+	private long rolloverInterval = 0L;
+
+	/**
+	 * Number of records after which file will be rolled over, 0 disables it.
+	 */
+	private long rolloverRecords = 0L;
+
+	/**
+	 * Event time window in ms, aligned to the local time zone, after which file will be rolled over, 0 disables it.
+	 * Event time is the message timestamp, or current time if a message has none.
+	 */
+	private long rolloverEventTimeWindow = 0L;
+
 	/**
 	 * Whether writer will sync to datanode when flush is called, setting this to 'true' could impact throughput.
 	 */
@@ -94,6 +129,36 @@ public class HdfsSinkProperties {
 	 */
 	private long flushTimeout = 0L;
 
+	/**
+	 * Maximum number of partition writers flushed or closed concurrently.
+	 */
+	private int closeParallelism = 1;
+
+	/**
+	 * Deadline in ms for flushing or closing all partition writers, 0 waits until all are done.
+	 */
+	private long closeDeadline = 0L;
+
+	/**
+	 * Interval in ms of group commits making written data durable, a message is acknowledged only after its data is committed, 0 disables group commit. Requires manual acknowledgment or Collection payloads.
+	 */
+	private long groupCommitInterval = 0L;
+
+	/**
+	 * Number of bytes written after which a group commit starts before the interval elapses, 0 disables the threshold.
+	 */
+	private long groupCommitBytes = 0L;
+
+	/**
+	 * Whether group commit uses hsync instead of hflush, persisting data to datanode disks.
+	 */
+	private boolean groupCommitSync = false;
+
+	/**
+	 * Maximum number of writers synced concurrently in a group commit.
+	 */
+	private int groupCommitParallelism = 1;
+
 	/**
 	 * Prefix for files currently being written.
 	 */
@@ -104,6 +169,26 @@ public class HdfsSinkProperties {
 	 */
 	private String inUseSuffix;
 
+	/**
+	 * Name of a commit log file recording committed file lengths, sequence watermark and last file written, enables recovery of files in use and initialization without a directory listing after a restart. Requires group commit, or enable sync together with a flush timeout.
+	 */
+	private String commitLogName;
+
+	/**
+	 * Name of a marker file recording the last file closed, enables initialization without a directory listing after a restart when a commit log is not used.
+	 */
+	private String lastFileMarkerName;
+
+	/**
+	 * Name of a numeric header holding a record sequence increasing within a sequence partition, records at or below a recovered watermark of their partition are skipped.
+	 */
+	private String sequenceHeader;
+
+	/**
+	 * Header names identifying a sequence partition, like a topic and a partition a record was received from, every partition has its own watermark. Records without these headers share one watermark.
+	 */
+	private List<String> sequencePartitionHeaders = new ArrayList<>(Arrays.asList("kafka_receivedTopic", "kafka_receivedPartitionId"));
+
 	/**
 	 * Maximum number of file open attempts to find a path.
 	 */
@@ -114,6 +199,61 @@ public class HdfsSinkProperties {
 	 */
 	private String partitionPath;
 
+	/**
+	 * A declarative partition path layout used instead of a partition path expression, i.e. 'time(yyyy/MM/dd)/hash(header(id),8)'.
+	 */
+	private String partitionLayout;
+
+	/**
+	 * Maximum number of cached partition paths, 0 disables partition path caching.
+	 */
+	private int partitionCacheSize = 0;
+
+	/**
+	 * Maximum number of open partition writers, least recently written ones are closed when exceeded, 0 disables the limit.
+	 */
+	private int maxOpenWriters = 0;
+
+	/**
+	 * Header names the partition path expression solely depends on, enables caching of evaluation results.
+	 */
+	private List<String> partitionCacheHeaders = new ArrayList<>();
+
+	/**
+	 * Time bucket in ms of message timestamp the partition path expression depends on, enables caching of evaluation results.
+	 */
+	private long partitionCacheTimeBucket = 0L;
+
+	/**
+	 * SpEL compiler mode for the partition path expression, IMMEDIATE fails startup if the expression cannot be compiled.
+	 */
+	private SpelCompilerMode partitionCompilerMode = SpelCompilerMode.MIXED;
+
+	/**
+	 * Headers of a sample message the partition path expression is warmed up and compiled against on startup.
+	 */
+	private Map<String, String> partitionSampleHeaders = new HashMap<>();
+
+	/**
+	 * Whether records are written asynchronously through a bounded write-behind queue.
+	 */
+	private boolean writeBehind = false;
+
+	/**
+	 * Capacity of the write-behind queue.
+	 */
+	private int writeBehindCapacity = WriteBehindDataStoreWriter.DEFAULT_CAPACITY;
+
+	/**
+	 * Maximum number of records written from the write-behind queue at once.
+	 */
+	private int writeBehindBatchSize = WriteBehindDataStoreWriter.DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Behaviour when the write-behind queue is full, either block the caller or fail the message.
+	 */
+	private Backpressure writeBehindBackpressure = Backpressure.BLOCK;
+
 	public String getFsUri() {
 		return fsUri;
 	}
@@ -180,6 +320,46 @@ public class HdfsSinkProperties {
 		this.rollover = rollover;
 	}
 
+	public boolean isRolloverUncompressed() {
+		return rolloverUncompressed;
+	}
+
+	public void setRolloverUncompressed(boolean rolloverUncompressed) {
+		this.rolloverUncompressed = rolloverUncompressed;
+	}
+
+	public int getRolloverBlocks() {
+		return rolloverBlocks;
+	}
+
+	public void setRolloverBlocks(int rolloverBlocks) {
+		this.rolloverBlocks = rolloverBlocks;
+	}
+
+	public long getRolloverInterval() {
+		return rolloverInterval;
+	}
+
+	public void setRolloverInterval(long rolloverInterval) {
+		this.rolloverInterval = rolloverInterval;
+	}
+
+	public long getRolloverRecords() {
+		return rolloverRecords;
+	}
+
+	public void setRolloverRecords(long rolloverRecords) {
+		this.rolloverRecords = rolloverRecords;
+	}
+
+	public long getRolloverEventTimeWindow() {
+		return rolloverEventTimeWindow;
+	}
+
+	public void setRolloverEventTimeWindow(long rolloverEventTimeWindow) {
+		this.rolloverEventTimeWindow = rolloverEventTimeWindow;
+	}
+
 	public boolean isEnableSync() {
 		return enableSync;
 	}
@@ -212,6 +392,54 @@ public class HdfsSinkProperties {
 		this.flushTimeout = flushTimeout;
 	}
 
+	public int getCloseParallelism() {
+		return closeParallelism;
+	}
+
+	public void setCloseParallelism(int closeParallelism) {
+		this.closeParallelism = closeParallelism;
+	}
+
+	public long getCloseDeadline() {
+		return closeDeadline;
+	}
+
+	public void setCloseDeadline(long closeDeadline) {
+		this.closeDeadline = closeDeadline;
+	}
+
+	public long getGroupCommitInterval() {
+		return groupCommitInterval;
+	}
+
+	public void setGroupCommitInterval(long groupCommitInterval) {
+		this.groupCommitInterval = groupCommitInterval;
+	}
+
+	public long getGroupCommitBytes() {
+		return groupCommitBytes;
+	}
+
+	public void setGroupCommitBytes(long groupCommitBytes) {
+		this.groupCommitBytes = groupCommitBytes;
+	}
+
+	public boolean isGroupCommitSync() {
+		return groupCommitSync;
+	}
+
+	public void setGroupCommitSync(boolean groupCommitSync) {
+		this.groupCommitSync = groupCommitSync;
+	}
+
+	public int getGroupCommitParallelism() {
+		return groupCommitParallelism;
+	}
+
+	public void setGroupCommitParallelism(int groupCommitParallelism) {
+		this.groupCommitParallelism = groupCommitParallelism;
+	}
+
 	public String getInUsePrefix() {
 		return inUsePrefix;
 	}
@@ -228,6 +456,38 @@ public class HdfsSinkProperties {
 		this.inUseSuffix = inUseSuffix;
 	}
 
+	public String getCommitLogName() {
+		return commitLogName;
+	}
+
+	public void setCommitLogName(String commitLogName) {
+		this.commitLogName = commitLogName;
+	}
+
+	public String getLastFileMarkerName() {
+		return lastFileMarkerName;
+	}
+
+	public void setLastFileMarkerName(String lastFileMarkerName) {
+		this.lastFileMarkerName = lastFileMarkerName;
+	}
+
+	public String getSequenceHeader() {
+		return sequenceHeader;
+	}
+
+	public void setSequenceHeader(String sequenceHeader) {
+		this.sequenceHeader = sequenceHeader;
+	}
+
+	public List<String> getSequencePartitionHeaders() {
+		return sequencePartitionHeaders;
+	}
+
+	public void setSequencePartitionHeaders(List<String> sequencePartitionHeaders) {
+		this.sequencePartitionHeaders = sequencePartitionHeaders;
+	}
+
 	public int getFileOpenAttempts() {
 		return fileOpenAttempts;
 	}
@@ -243,4 +503,92 @@ public class HdfsSinkProperties {
 	public void setPartitionPath(String partitionPath) {
 		this.partitionPath = partitionPath;
 	}
-}
\ No newline at end of file
+
+	public String getPartitionLayout() {
+		return partitionLayout;
+	}
+
+	public void setPartitionLayout(String partitionLayout) {
+		this.partitionLayout = partitionLayout;
+	}
+
+	public int getPartitionCacheSize() {
+		return partitionCacheSize;
+	}
+
+	public void setPartitionCacheSize(int partitionCacheSize) {
+		this.partitionCacheSize = partitionCacheSize;
+	}
+
+	public int getMaxOpenWriters() {
+		return maxOpenWriters;
+	}
+
+	public void setMaxOpenWriters(int maxOpenWriters) {
+		this.maxOpenWriters = maxOpenWriters;
+	}
+
+	public List<String> getPartitionCacheHeaders() {
+		return partitionCacheHeaders;
+	}
+
+	public void setPartitionCacheHeaders(List<String> partitionCacheHeaders) {
+		this.partitionCacheHeaders = partitionCacheHeaders;
+	}
+
+	public long getPartitionCacheTimeBucket() {
+		return partitionCacheTimeBucket;
+	}
+
+	public void setPartitionCacheTimeBucket(long partitionCacheTimeBucket) {
+		this.partitionCacheTimeBucket = partitionCacheTimeBucket;
+	}
+
+	public SpelCompilerMode getPartitionCompilerMode() {
+		return partitionCompilerMode;
+	}
+
+	public void setPartitionCompilerMode(SpelCompilerMode partitionCompilerMode) {
+		this.partitionCompilerMode = partitionCompilerMode;
+	}
+
+	public Map<String, String> getPartitionSampleHeaders() {
+		return partitionSampleHeaders;
+	}
+
+	public void setPartitionSampleHeaders(Map<String, String> partitionSampleHeaders) {
+		this.partitionSampleHeaders = partitionSampleHeaders;
+	}
+
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	public void setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+	}
+
+	public int getWriteBehindCapacity() {
+		return writeBehindCapacity;
+	}
+
+	public void setWriteBehindCapacity(int writeBehindCapacity) {
+		this.writeBehindCapacity = writeBehindCapacity;
+	}
+
+	public int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
+
+	public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
+
+	public Backpressure getWriteBehindBackpressure() {
+		return writeBehindBackpressure;
+	}
+
+	public void setWriteBehindBackpressure(Backpressure writeBehindBackpressure) {
+		this.writeBehindBackpressure = writeBehindBackpressure;
+	}
+}
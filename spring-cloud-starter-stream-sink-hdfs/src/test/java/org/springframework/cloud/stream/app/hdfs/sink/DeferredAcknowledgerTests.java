@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.sink;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.GroupCommitFlusher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DeferredAcknowledger} using binder acknowledgments
+ * faked with classes having same method signatures.
+ *
+ */
+public class DeferredAcknowledgerTests {
+
+	private volatile CompletableFuture<Void> commitFuture = new CompletableFuture<Void>();
+
+	private final DeferredAcknowledger acknowledger = new DeferredAcknowledger(new GroupCommitFlusher() {
+
+		@Override
+		public CompletableFuture<Void> getCommitFuture() {
+			return commitFuture;
+		}
+	});
+
+	@Test
+	public void testKafkaAcknowledgedAfterCommit() {
+		KafkaAcknowledgment first = new KafkaAcknowledgment();
+		KafkaAcknowledgment second = new KafkaAcknowledgment();
+		assertThat(acknowledger.defer(kafkaMessage(first)), equalTo(true));
+		assertThat(acknowledger.defer(kafkaMessage(second)), equalTo(true));
+		assertThat(first.acks, equalTo(0));
+		commitFuture.complete(null);
+		assertThat(first.acks, equalTo(1));
+		assertThat(second.acks, equalTo(1));
+	}
+
+	@Test
+	public void testKafkaNotAcknowledgedAfterFailedCommit() {
+		CompletableFuture<Void> failedFuture = commitFuture;
+		KafkaAcknowledgment failed = new KafkaAcknowledgment();
+		acknowledger.defer(kafkaMessage(failed));
+		// a next commit is open before a previous one fails
+		commitFuture = new CompletableFuture<Void>();
+		KafkaAcknowledgment later = new KafkaAcknowledgment();
+		acknowledger.defer(kafkaMessage(later));
+
+		failedFuture.completeExceptionally(new IOException("Simulated"));
+		commitFuture.complete(null);
+		assertThat(failed.acks, equalTo(0));
+		// acknowledging a later message would commit an offset past a failed one
+		assertThat(later.acks, equalTo(0));
+
+		KafkaAcknowledgment next = new KafkaAcknowledgment();
+		Message<?> message = kafkaMessage(next);
+		try {
+			acknowledger.checkAcknowledgeable(message);
+			throw new AssertionError("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertThat(e.getCause().getMessage(), equalTo("Simulated"));
+		}
+		acknowledger.defer(message);
+		assertThat(next.acks, equalTo(0));
+	}
+
+	@Test
+	public void testRabbitRequeuedAfterFailedCommit() {
+		RabbitChannel channel = new RabbitChannel();
+		acknowledger.defer(rabbitMessage(channel, 1));
+		commitFuture.completeExceptionally(new IOException("Simulated"));
+		assertThat(channel.nacked, equalTo(1L));
+
+		// deliveries are acknowledged one by one, so later ones still are
+		commitFuture = new CompletableFuture<Void>();
+		Message<?> message = rabbitMessage(channel, 2);
+		acknowledger.checkAcknowledgeable(message);
+		acknowledger.defer(message);
+		commitFuture.complete(null);
+		assertThat(channel.acked, equalTo(2L));
+	}
+
+	@Test
+	public void testAcknowledgedImmediatelyIfCommitCompleted() {
+		commitFuture.complete(null);
+		KafkaAcknowledgment acknowledgment = new KafkaAcknowledgment();
+		acknowledger.defer(kafkaMessage(acknowledgment));
+		assertThat(acknowledgment.acks, equalTo(1));
+	}
+
+	private static Message<?> kafkaMessage(KafkaAcknowledgment acknowledgment) {
+		return MessageBuilder.withPayload("data")
+				.setHeader(DeferredAcknowledger.KAFKA_ACKNOWLEDGMENT_HEADER, acknowledgment).build();
+	}
+
+	private static Message<?> rabbitMessage(RabbitChannel channel, long deliveryTag) {
+		return MessageBuilder.withPayload("data")
+				.setHeader(DeferredAcknowledger.AMQP_CHANNEL_HEADER, channel)
+				.setHeader(DeferredAcknowledger.AMQP_DELIVERY_TAG_HEADER, deliveryTag).build();
+	}
+
+	private static class KafkaAcknowledgment {
+
+		private int acks;
+
+		public void acknowledge() {
+			acks++;
+		}
+	}
+
+	private static class RabbitChannel {
+
+		private long acked;
+
+		private long nacked;
+
+		public void basicAck(long deliveryTag, boolean multiple) {
+			acked = deliveryTag;
+		}
+
+		public void basicNack(long deliveryTag, boolean multiple, boolean requeue) {
+			if (requeue) {
+				nacked = deliveryTag;
+			}
+		}
+	}
+
+}
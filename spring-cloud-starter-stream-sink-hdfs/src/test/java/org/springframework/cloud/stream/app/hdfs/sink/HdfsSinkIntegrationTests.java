@@ -19,9 +19,12 @@ package org.springframework.cloud.stream.app.hdfs.sink;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -83,6 +86,18 @@ public class HdfsSinkIntegrationTests {
 		sink.input().send(new GenericMessage<>("Baz"));
 	}
 
+	@Test
+	public void testWritingBatch() throws IOException {
+		sink.input().send(new GenericMessage<>(Arrays.asList("Foo", "Bar", "Baz")));
+	}
+
+	@Test
+	public void testWritingBytes() throws IOException {
+		sink.input().send(new GenericMessage<>("Foo".getBytes(StandardCharsets.UTF_8)));
+		sink.input().send(new GenericMessage<>(ByteBuffer.wrap("Bar".getBytes(StandardCharsets.UTF_8))));
+		sink.input().send(new GenericMessage<>("Baz".getBytes(StandardCharsets.UTF_8)));
+	}
+
 	@After
 	public void checkFilesClosedOK() throws IOException {
 		context.close();
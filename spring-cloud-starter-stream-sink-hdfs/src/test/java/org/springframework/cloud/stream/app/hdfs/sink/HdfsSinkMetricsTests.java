@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.app.hdfs.sink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.ByteArrayFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.PartitionByteArrayFileWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.WriteBehindDataStoreWriter;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.LayoutPartitionStrategy;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.partition.MessagePartitionStrategy;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link HdfsSinkMetrics} binding meters of writer metrics.
+ *
+ */
+public class HdfsSinkMetricsTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	public void testByteMetersOfWrappedWriter() throws IOException {
+		Configuration configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		ByteArrayFileWriter writer = new ByteArrayFileWriter(configuration,
+				new Path("file:" + folder.getRoot().getAbsolutePath()), null);
+		new HdfsSinkMetrics(new WriteBehindDataStoreWriter<byte[], Object>(writer, 10, 10), null).bindTo(registry);
+		writer.write("abc".getBytes(StandardCharsets.UTF_8));
+		assertThat(registry.get("hdfs.sink.bytes.written").functionCounter().count(), equalTo(4d));
+		writer.close();
+		assertThat(registry.get("hdfs.sink.bytes.written").functionCounter().count(), equalTo(4d));
+		assertThat(registry.get("hdfs.sink.bytes.stored").functionCounter().count(), equalTo(4d));
+	}
+
+	@Test
+	public void testPartitionWriterMeters() throws IOException {
+		Configuration configuration = new Configuration();
+		configuration.set("fs.file.impl", RawLocalFileSystem.class.getName());
+		configuration.setBoolean("fs.file.impl.disable.cache", true);
+		PartitionByteArrayFileWriter<Message<?>> writer = new PartitionByteArrayFileWriter<Message<?>>(configuration,
+				new Path("file:" + folder.getRoot().getAbsolutePath()), null,
+				new LayoutPartitionStrategy<byte[]>("header(customer)"));
+		writer.setMaxOpenWriters(1);
+		writer.afterPropertiesSet();
+		writer.start();
+		new HdfsSinkMetrics(writer, null).bindTo(registry);
+		writer.write("abc".getBytes(StandardCharsets.UTF_8), MessageBuilder.withPayload("")
+				.setHeader("customer", "a").build());
+		writer.write("de".getBytes(StandardCharsets.UTF_8), MessageBuilder.withPayload("")
+				.setHeader("customer", "b").build());
+		assertThat(registry.get("hdfs.sink.writers.created").functionCounter().count(), equalTo(2d));
+		assertThat(registry.get("hdfs.sink.writers.evicted").functionCounter().count(), equalTo(1d));
+		assertThat(registry.get("hdfs.sink.writers.open").gauge().value(), equalTo(1d));
+		writer.close();
+		assertThat(registry.get("hdfs.sink.bytes.written").functionCounter().count(), equalTo(7d));
+	}
+
+	@Test
+	public void testPartitionExpressionMeters() {
+		MessagePartitionStrategy<Object> strategy = new MessagePartitionStrategy<Object>("'p'",
+				new StandardEvaluationContext());
+		new HdfsSinkMetrics(null, strategy.getMetrics()).bindTo(registry);
+		strategy.getPartitionResolver().resolvePath(MessageBuilder.withPayload("data").build());
+		strategy.getPartitionResolver().resolvePath(MessageBuilder.withPayload("data").build());
+
+		assertThat(registry.get("hdfs.sink.partition.evaluation").functionTimer().count(), equalTo(2d));
+		double compiled = registry.get("hdfs.sink.partition.evaluations").tag("mode", "compiled")
+				.functionCounter().count();
+		double interpreted = registry.get("hdfs.sink.partition.evaluations").tag("mode", "interpreted")
+				.functionCounter().count();
+		assertThat(compiled + interpreted, equalTo(2d));
+	}
+
+	@Test
+	public void testNoPartitionExpressionMeters() {
+		new HdfsSinkMetrics(null, null).bindTo(registry);
+		assertThat(registry.find("hdfs.sink.partition.evaluation").functionTimer(), nullValue());
+	}
+
+}
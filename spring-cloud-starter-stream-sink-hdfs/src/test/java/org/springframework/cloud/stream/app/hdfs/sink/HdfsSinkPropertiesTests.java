@@ -15,12 +15,16 @@
 
 package org.springframework.cloud.stream.app.hdfs.sink;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.cloud.stream.app.hdfs.hadoop.store.codec.Codecs;
+import org.springframework.cloud.stream.app.hdfs.hadoop.store.output.WriteBehindDataStoreWriter.Backpressure;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.expression.spel.SpelCompilerMode;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -110,6 +114,56 @@ public class HdfsSinkPropertiesTests {
 		assertThat(properties.getRollover(), equalTo(5555555));
 	}
 
+	@Test
+	public void rolloverUncompressedCanBeEnabled() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.rolloverUncompressed=true").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.isRolloverUncompressed(), equalTo(true));
+	}
+
+	@Test
+	public void rolloverBlocksCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.rolloverBlocks=2").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getRolloverBlocks(), equalTo(2));
+	}
+
+	@Test
+	public void rolloverIntervalCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.rolloverInterval=3600000").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getRolloverInterval(), equalTo(3600000L));
+	}
+
+	@Test
+	public void rolloverRecordsCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.rolloverRecords=10000").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getRolloverRecords(), equalTo(10000L));
+	}
+
+	@Test
+	public void rolloverEventTimeWindowCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.rolloverEventTimeWindow=60000").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getRolloverEventTimeWindow(), equalTo(60000L));
+	}
+
 	@Test
 	public void idleTimeoutCanBeCustomized() {
 		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
@@ -130,6 +184,17 @@ public class HdfsSinkPropertiesTests {
 		assertThat(properties.getCloseTimeout(), equalTo(12345L));
 	}
 
+	@Test
+	public void closeParallelismCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.closeParallelism=8", "hdfs.closeDeadline=25000").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getCloseParallelism(), equalTo(8));
+		assertThat(properties.getCloseDeadline(), equalTo(25000L));
+	}
+
 	@Test
 	public void enableSyncCanBeCustomized() {
 		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
@@ -190,6 +255,112 @@ public class HdfsSinkPropertiesTests {
 		assertThat(properties.getPartitionPath(), equalTo("dateFormat('yyyy/MM/dd')"));
 	}
 
+	@Test
+	public void partitionLayoutCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.partitionLayout=time(yyyy/MM/dd)/hash(header(id),8)").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getPartitionLayout(), equalTo("time(yyyy/MM/dd)/hash(header(id),8)"));
+	}
+
+	@Test
+	public void maxOpenWritersCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.maxOpenWriters=500").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getMaxOpenWriters(), equalTo(500));
+	}
+
+	@Test
+	public void groupCommitCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.groupCommitInterval=200", "hdfs.groupCommitBytes=1048576",
+				"hdfs.groupCommitSync=true", "hdfs.groupCommitParallelism=4").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getGroupCommitInterval(), equalTo(200L));
+		assertThat(properties.getGroupCommitBytes(), equalTo(1048576L));
+		assertThat(properties.isGroupCommitSync(), equalTo(true));
+		assertThat(properties.getGroupCommitParallelism(), equalTo(4));
+	}
+
+	@Test
+	public void commitLogCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.commitLogName=.commit", "hdfs.sequenceHeader=seq",
+				"hdfs.sequencePartitionHeaders=source,shard").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getCommitLogName(), equalTo(".commit"));
+		assertThat(properties.getSequenceHeader(), equalTo("seq"));
+		assertThat(properties.getSequencePartitionHeaders(), equalTo(Arrays.asList("source", "shard")));
+	}
+
+	@Test
+	public void sequencePartitionHeadersDefaultToKafkaPartition() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getSequencePartitionHeaders(),
+				equalTo(Arrays.asList("kafka_receivedTopic", "kafka_receivedPartitionId")));
+	}
+
+	@Test
+	public void lastFileMarkerCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.lastFileMarkerName=.last").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getLastFileMarkerName(), equalTo(".last"));
+	}
+
+	@Test
+	public void partitionCacheCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.partitionCacheSize=100", "hdfs.partitionCacheHeaders=type,region",
+				"hdfs.partitionCacheTimeBucket=3600000").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getPartitionCacheSize(), equalTo(100));
+		assertThat(properties.getPartitionCacheHeaders(), equalTo(Arrays.asList("type", "region")));
+		assertThat(properties.getPartitionCacheTimeBucket(), equalTo(3600000L));
+	}
+
+	@Test
+	public void partitionCompilerModeCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.partitionCompilerMode=immediate", "hdfs.partitionSampleHeaders.type=foo")
+				.applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.getPartitionCompilerMode(), equalTo(SpelCompilerMode.IMMEDIATE));
+		assertThat(properties.getPartitionSampleHeaders().get("type"), equalTo("foo"));
+	}
+
+	@Test
+	public void writeBehindCanBeCustomized() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		TestPropertyValues.of("hdfs.writeBehind=true", "hdfs.writeBehindCapacity=4096",
+				"hdfs.writeBehindBatchSize=500", "hdfs.writeBehindBackpressure=fail").applyTo(context);
+		context.register(Conf.class);
+		context.refresh();
+		HdfsSinkProperties properties = context.getBean(HdfsSinkProperties.class);
+		assertThat(properties.isWriteBehind(), equalTo(true));
+		assertThat(properties.getWriteBehindCapacity(), equalTo(4096));
+		assertThat(properties.getWriteBehindBatchSize(), equalTo(500));
+		assertThat(properties.getWriteBehindBackpressure(), equalTo(Backpressure.FAIL));
+	}
+
 	@Configuration
 	@EnableConfigurationProperties(HdfsSinkProperties.class)
 	static class Conf {